@@ -0,0 +1,203 @@
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Load test for {@link ApiServer}: starts the server in-process on a free port,
+ * seeds a semester, and runs closed-loop HTTP clients (no think time, keep-alive
+ * connections) against it. Each client repeatedly picks a request from a fixed mix:
+ * <pre>
+ * 35%  GET    /api/semesters/{sem}/students/{id}/schedule
+ * 15%  GET    /api/semesters/{sem}/classes
+ * 15%  GET    /api/semesters/{sem}/classes/{course}/roster
+ * 25%  POST   /api/semesters/{sem}/students/{id}/schedule
+ * 10%  DELETE /api/semesters/{sem}/students/{id}/schedule/{course}
+ * </pre>
+ * Reports requests per second and latency percentiles per request type, measured
+ * at the client, plus the number of responses per status code.
+ *
+ * Usage (see the "apiload" target in build.xml):
+ * <pre>
+ * java -cp ... ApiLoadTest --clients=64 --seconds=20 --warmup=5 --students=5000 --classes=100
+ *      --seats=30 --poolSize=16 [--db=memory|disk]
+ * </pre>
+ */
+public class ApiLoadTest {
+
+    private static final String SEMESTER = "API";
+
+    private final int clients;
+    private final int students;
+    private final int classes;
+    private final int seats;
+
+    private final Map<String, LatencyHistogram> latency = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> statuses = new ConcurrentHashMap<>();
+    private volatile boolean recording;
+
+    ApiLoadTest(BenchOptions options) {
+        this.clients = options.getInt("clients", 64);
+        this.students = options.getInt("students", 5000);
+        this.classes = options.getInt("classes", 100);
+        this.seats = options.getInt("seats", 30);
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchOptions options = new BenchOptions(args);
+        if (System.getProperty("scheduler.pool.maxSize") == null) {
+            System.setProperty("scheduler.pool.maxSize", options.get("poolSize", "16"));
+        }
+        // Keep-alive connections per client, well above the JDK default of 5
+        if (System.getProperty("http.maxConnections") == null) {
+            System.setProperty("http.maxConnections", String.valueOf(options.getInt("clients", 64)));
+        }
+        String url = BenchOptions.configureDatabase(options.get("db", "memory"), "schedulerapi");
+        ApiLoadTest test = new ApiLoadTest(options);
+        System.out.println("API load test database: " + url);
+        ApiServer server = null;
+        try {
+            DBInitializer.initializeDatabase();
+            test.seed();
+            server = new ApiServer(0);
+            server.start();
+            test.run("http://localhost:" + server.getPort() + "/api/semesters/" + SEMESTER,
+                    options.getInt("warmup", 5), options.getInt("seconds", 20));
+            System.out.println("Connection pool: " + DBConnection.getPool());
+        } finally {
+            if (server != null) {
+                server.stop(1);
+            }
+            DBConnection.closeConnection();
+        }
+        System.exit(0);
+    }
+
+    private void seed() throws SQLException {
+        long start = System.nanoTime();
+        SemesterQueries.addSemester(SEMESTER);
+        for (int c = 0; c < classes; c++) {
+            SemesterQueries.addCourse("A" + c, "API course " + c);
+            SemesterQueries.addClass(SEMESTER, "A" + c, seats);
+        }
+        for (int s = 0; s < students; s++) {
+            SemesterQueries.addStudent("P" + s, "Student", "Api" + s);
+        }
+        System.out.printf("Seeded %d classes x %d seats and %d students in %.1f s%n",
+                classes, seats, students, (System.nanoTime() - start) / 1e9);
+    }
+
+    private void run(String base, int warmupSeconds, int seconds) throws InterruptedException {
+        System.out.printf("Running %d clients: %d s warmup, %d s measured...%n", clients, warmupSeconds, seconds);
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(warmupSeconds);
+        long deadline = warmupEnd + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int c = 0; c < clients; c++) {
+            final int client = c;
+            Thread thread = new Thread(() -> {
+                try {
+                    runClient(client, base, deadline);
+                } finally {
+                    done.countDown();
+                }
+            }, "api-client-" + c);
+            thread.setDaemon(true);
+            thread.start();
+        }
+        TimeUnit.NANOSECONDS.sleep(Math.max(0, warmupEnd - System.nanoTime()));
+        recording = true;
+        long measureStart = System.nanoTime();
+        done.await();
+        double elapsed = (System.nanoTime() - measureStart) / 1e9;
+        report(elapsed);
+    }
+
+    /**
+     * Each client owns the students whose index is congruent to it modulo the client
+     * count and remembers their registrations, so it only registers a student for a
+     * class once and only drops classes the student is in.
+     */
+    private void runClient(int client, String base, long deadline) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int owned = Math.max(1, (students - client + clients - 1) / clients);
+        List<String> registered = new ArrayList<>();
+        Set<String> registeredSet = new HashSet<>();
+        while (System.nanoTime() < deadline) {
+            String student = "P" + (client + clients * random.nextInt(owned));
+            String course = "A" + random.nextInt(classes);
+            int pick = random.nextInt(100);
+            if (pick < 35) {
+                call("GET schedule", "GET", base + "/students/" + student + "/schedule");
+            } else if (pick < 50) {
+                call("GET classes", "GET", base + "/classes");
+            } else if (pick < 65) {
+                call("GET roster", "GET", base + "/classes/" + course + "/roster");
+            } else if (pick < 90 || registered.isEmpty()) {
+                if (registeredSet.add(student + "/schedule/" + course)) {
+                    registered.add(student + "/schedule/" + course);
+                    call("POST schedule", "POST", base + "/students/" + student + "/schedule?courseCode=" + course);
+                }
+            } else {
+                String enrollment = registered.remove(random.nextInt(registered.size()));
+                registeredSet.remove(enrollment);
+                call("DELETE schedule", "DELETE", base + "/students/" + enrollment);
+            }
+        }
+    }
+
+    private void call(String name, String method, String url) {
+        long start = System.nanoTime();
+        String outcome;
+        try {
+            HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setRequestMethod(method);
+            int status = conn.getResponseCode();
+            // Read the body to the end so the connection is reused
+            try (InputStream in = status < 400 ? conn.getInputStream() : conn.getErrorStream()) {
+                if (in != null) {
+                    byte[] buffer = new byte[8192];
+                    while (in.read(buffer) >= 0) {
+                        // discard
+                    }
+                }
+            }
+            outcome = String.valueOf(status);
+        } catch (IOException e) {
+            outcome = "I/O error";
+        }
+        if (recording) {
+            latency.computeIfAbsent(name, k -> new LatencyHistogram()).record(System.nanoTime() - start);
+            statuses.computeIfAbsent(outcome, k -> new LongAdder()).increment();
+        }
+    }
+
+    private void report(double seconds) {
+        System.out.printf("%n%-18s %10s %10s %10s %10s %10s %10s%n",
+                "Request", "req/s", "mean(us)", "p50(us)", "p90(us)", "p99(us)", "max(us)");
+        long total = 0;
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(latency).entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            total += h.getCount();
+            System.out.printf("%-18s %10.1f %10.1f %10d %10d %10d %10d%n",
+                    entry.getKey(), h.getCount() / seconds, h.getMeanNanos() / 1000.0,
+                    TimeUnit.NANOSECONDS.toMicros(h.getPercentileNanos(50.0)),
+                    TimeUnit.NANOSECONDS.toMicros(h.getPercentileNanos(90.0)),
+                    TimeUnit.NANOSECONDS.toMicros(h.getPercentileNanos(99.0)),
+                    TimeUnit.NANOSECONDS.toMicros(h.getMaxNanos()));
+        }
+        System.out.printf("%-18s %10.1f%n", "total", total / seconds);
+        System.out.println("Responses: " + new TreeMap<>(statuses));
+    }
+}
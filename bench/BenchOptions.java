@@ -0,0 +1,90 @@
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Minimal {@code --key=value} command line parsing shared by the benchmark tools.
+ */
+public class BenchOptions {
+
+    private final Map<String, String> values = new HashMap<>();
+
+    public BenchOptions(String[] args) {
+        for (String arg : args) {
+            if (!arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unrecognized argument: " + arg + " (expected --key=value)");
+            }
+            int eq = arg.indexOf('=');
+            if (eq < 0) {
+                values.put(arg.substring(2), "true");
+            } else {
+                values.put(arg.substring(2, eq), arg.substring(eq + 1));
+            }
+        }
+    }
+
+    public String get(String key, String defaultValue) {
+        String value = values.get(key);
+        return value == null || value.isEmpty() ? defaultValue : value;
+    }
+
+    public int getInt(String key, int defaultValue) {
+        return Integer.parseInt(get(key, String.valueOf(defaultValue)));
+    }
+
+    public double getDouble(String key, double defaultValue) {
+        return Double.parseDouble(get(key, String.valueOf(defaultValue)));
+    }
+
+    public boolean has(String key) {
+        return values.containsKey(key);
+    }
+
+    public int[] getIntList(String key, String defaultValue) {
+        String[] parts = get(key, defaultValue).split(",");
+        int[] result = new int[parts.length];
+        for (int i = 0; i < parts.length; i++) {
+            result[i] = Integer.parseInt(parts[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * Points {@link DBConnection} at an in-memory, on-disk or networked benchmark database.
+     * Must run before DBConnection is first used. "network" starts a Derby network
+     * server in this process on a free loopback port and connects through the client
+     * driver to an on-disk database, so comparing it with "disk" shows the cost of
+     * the network protocol for the same work. The server stops with
+     * {@link DBConnection#closeConnection()}.
+     *
+     * @param mode "memory", "disk" or "network".
+     * @param name Database name, unique per tool so runs do not collide.
+     * @return The JDBC URL that was configured.
+     */
+    public static String configureDatabase(String mode, String name) {
+        String url;
+        String dir = System.getProperty("java.io.tmpdir") + java.io.File.separator
+                + name + "-" + System.currentTimeMillis();
+        if ("memory".equals(mode)) {
+            url = "jdbc:derby:memory:" + name + ";create=true";
+        } else if ("disk".equals(mode)) {
+            url = "jdbc:derby:" + dir + ";create=true";
+        } else if ("network".equals(mode)) {
+            int port;
+            try (java.net.ServerSocket socket = new java.net.ServerSocket(0)) {
+                port = socket.getLocalPort();
+            } catch (java.io.IOException e) {
+                throw new IllegalStateException("No free port for the network server", e);
+            }
+            System.setProperty("scheduler.db.mode", "server");
+            System.setProperty("scheduler.db.host", "localhost");
+            System.setProperty("scheduler.db.port", String.valueOf(port));
+            url = "jdbc:derby://localhost:" + port + "/" + dir + ";create=true";
+        } else {
+            throw new IllegalArgumentException("Unknown database mode: " + mode + " (expected memory, disk or network)");
+        }
+        if (System.getProperty("scheduler.db.url") == null) {
+            System.setProperty("scheduler.db.url", url);
+        }
+        return System.getProperty("scheduler.db.url");
+    }
+}
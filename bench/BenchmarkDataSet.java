@@ -0,0 +1,179 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.sql.Types;
+
+/**
+ * Seeds a Course Scheduler database with a deterministic synthetic data set.
+ * Keys are derived from indexes, so benchmarks can address seeded rows
+ * (for example "the i-th schedule row") without reading them back first.
+ *
+ * Layout:
+ * - one semester, {@link #SEMESTER}, with {@code classes} class offerings C0..Cn,
+ *   plus an empty {@link #SPARE_SEMESTER} for benchmarks that add classes
+ * - {@code students} enrolled students S0..Sn, each holding about
+ *   scheduleRows / students schedule rows spread evenly over the classes
+ * - {@code freeStudents} students F0..Fn with no schedule rows, for enrollment benchmarks
+ * - seats per class sized so roughly 10% of each class ends up waitlisted
+ */
+public class BenchmarkDataSet {
+
+    public static final String SEMESTER = "BENCH";
+    public static final String SPARE_SEMESTER = "BENCH-SPARE";
+    private static final int BATCH_SIZE = 1000;
+
+    public final int students;
+    public final int classes;
+    public final int scheduleRows;
+    public final int freeStudents;
+    public final int rowsPerStudent;
+    public final int seatsPerClass;
+
+    public BenchmarkDataSet(int students, int classes, int scheduleRows, int freeStudents) {
+        if (students < 1 || classes < 1) {
+            throw new IllegalArgumentException("students and classes must be positive");
+        }
+        this.students = students;
+        this.classes = classes;
+        this.rowsPerStudent = Math.max(0, Math.min(classes, (scheduleRows + students - 1) / students));
+        this.scheduleRows = Math.min(scheduleRows, students * rowsPerStudent);
+        this.freeStudents = freeStudents;
+        int perClass = (this.scheduleRows + classes - 1) / classes;
+        this.seatsPerClass = Math.max(1, (int) Math.ceil(perClass * 0.9));
+    }
+
+    public static String studentId(int index) {
+        return "S" + index;
+    }
+
+    public static String freeStudentId(int index) {
+        return "F" + index;
+    }
+
+    public static String courseCode(int index) {
+        return "C" + index;
+    }
+
+    /** Class index of the k-th schedule row of a seeded student. */
+    public int classOf(int studentIndex, int k) {
+        int step = Math.max(1, classes / Math.max(1, rowsPerStudent));
+        return (int) (((long) studentIndex * 37 + (long) k * step) % classes);
+    }
+
+    /** Student index of the i-th seeded schedule row. */
+    public int studentOfRow(int row) {
+        return row / rowsPerStudent;
+    }
+
+    /** Class index of the i-th seeded schedule row. */
+    public int classOfRow(int row) {
+        return classOf(row / rowsPerStudent, row % rowsPerStudent);
+    }
+
+    /**
+     * Loads the data set into the database behind {@link DBConnection}.
+     * The schema must already exist (see {@link DBInitializer#initializeDatabase()}).
+     */
+    public void seed() throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = DBConnection.getConnection();
+        try {
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO app.semester (semester) VALUES (?)")) {
+                ps.setString(1, SEMESTER);
+                ps.executeUpdate();
+                ps.setString(1, SPARE_SEMESTER);
+                ps.executeUpdate();
+            }
+
+            try (PreparedStatement courses = conn.prepareStatement("INSERT INTO app.courses (coursecode, description) VALUES (?, ?)");
+                 PreparedStatement offerings = conn.prepareStatement("INSERT INTO app.classes (semester, coursecode, seats) VALUES (?, ?, ?)")) {
+                for (int c = 0; c < classes; c++) {
+                    courses.setString(1, courseCode(c));
+                    courses.setString(2, "Benchmark course " + c);
+                    courses.addBatch();
+                    offerings.setString(1, SEMESTER);
+                    offerings.setString(2, courseCode(c));
+                    offerings.setInt(3, seatsPerClass);
+                    offerings.addBatch();
+                    if ((c + 1) % BATCH_SIZE == 0) {
+                        courses.executeBatch();
+                        offerings.executeBatch();
+                        conn.commit();
+                    }
+                }
+                courses.executeBatch();
+                offerings.executeBatch();
+                conn.commit();
+            }
+
+            try (PreparedStatement ps = conn.prepareStatement("INSERT INTO app.students (studentid, firstname, lastname) VALUES (?, ?, ?)")) {
+                int total = students + freeStudents;
+                for (int i = 0; i < total; i++) {
+                    ps.setString(1, i < students ? studentId(i) : freeStudentId(i - students));
+                    ps.setString(2, "First" + (i % 997));
+                    ps.setString(3, "Last" + (i % 4999));
+                    ps.addBatch();
+                    if ((i + 1) % BATCH_SIZE == 0) {
+                        ps.executeBatch();
+                        conn.commit();
+                    }
+                }
+                ps.executeBatch();
+                conn.commit();
+            }
+
+            int[] perClass = new int[classes];
+            long baseTime = System.currentTimeMillis() - scheduleRows;
+            // Waitlisted rows are numbered 1, 2, ... in row order within each class, as Waitlist.nextNumber would
+            String insertSql = "INSERT INTO app.schedule (semester, studentid, coursecode, status, timestamp, waitseq) " +
+                               "VALUES (?, ?, ?, ?, ?, ?)";
+            try (PreparedStatement ps = conn.prepareStatement(insertSql)) {
+                for (int row = 0; row < scheduleRows; row++) {
+                    int c = classOfRow(row);
+                    boolean seated = perClass[c]++ < seatsPerClass;
+                    ps.setString(1, SEMESTER);
+                    ps.setString(2, studentId(studentOfRow(row)));
+                    ps.setString(3, courseCode(c));
+                    ps.setString(4, seated ? "scheduled" : "waitlisted");
+                    ps.setTimestamp(5, new Timestamp(baseTime + row));
+                    if (seated) {
+                        ps.setNull(6, Types.BIGINT);
+                    } else {
+                        ps.setLong(6, perClass[c] - seatsPerClass);
+                    }
+                    ps.addBatch();
+                    if ((row + 1) % BATCH_SIZE == 0) {
+                        ps.executeBatch();
+                        conn.commit();
+                    }
+                }
+                ps.executeBatch();
+                conn.commit();
+            }
+
+            try (Statement stmt = conn.createStatement()) {
+                stmt.executeUpdate("UPDATE app.classes c SET enrolled = " +
+                                   "(SELECT COUNT(*) FROM app.schedule s " +
+                                   "WHERE s.semester = c.semester AND s.coursecode = c.coursecode " +
+                                   "AND s.status = 'scheduled')");
+                conn.commit();
+                for (String table : new String[]{"CLASSES", "STUDENTS", "SCHEDULE"}) {
+                    stmt.execute("CALL SYSCS_UTIL.SYSCS_UPDATE_STATISTICS('APP', '" + table + "', NULL)");
+                }
+                conn.commit();
+            }
+        } finally {
+            DBConnection.release(conn);
+        }
+        System.out.printf("Seeded %s in %.1f s%n", this, (System.nanoTime() - start) / 1e9);
+    }
+
+    @Override
+    public String toString() {
+        return "BenchmarkDataSet[students=" + students + ", freeStudents=" + freeStudents
+                + ", classes=" + classes + ", scheduleRows=" + scheduleRows
+                + ", seatsPerClass=" + seatsPerClass + "]";
+    }
+}
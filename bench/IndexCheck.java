@@ -0,0 +1,149 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that the hot lookups on APP.SCHEDULE, APP.STUDENTS and APP.CLASSES are
+ * answered from the indexes DBInitializer creates, so a later migration or query
+ * rewrite that loses an index path fails the build instead of slowing down
+ * registration as the tables grow.
+ *
+ * Seeds a synthetic database (see {@link BenchmarkDataSet}), refreshes the
+ * optimizer statistics, then runs each statement with
+ * SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1) and reads its plan back with
+ * SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS(). A statement passes if its plan has an
+ * index scan and no table scan or sort. The statements are the application's own
+ * SQL constants, not copies:
+ * - getAllStudents: students in name order (IDX_STUDENTS_NAME)
+ * - dropStudent: the student's classes and schedule rows (IDX_SCHEDULE_STUDENT)
+ * - waitlist promotion: the head of a class's waitlist (IDX_SCHEDULE_WAITLIST)
+ * - waitlist length and the class's last waitlist number (IDX_SCHEDULE_WAITLIST)
+ * - class rosters, scheduled rows first, then the waitlist in order (IDX_SCHEDULE_WAITLIST)
+ * - getScheduledStudentCount: served by {@link SeatLedger}, which reads the
+ *   APP.CLASSES enrollment counters of one class or one semester (primary key)
+ *
+ * The process exits with status 1 if any statement fails the check; its plan is
+ * printed. --verbose prints every plan.
+ *
+ * Usage (see the "indexcheck" target in build.xml):
+ * <pre>
+ * java -cp ... IndexCheck --students=5000 --classes=200 --schedule=25000 [--db=disk] [--verbose]
+ * </pre>
+ */
+public class IndexCheck {
+
+    private static final Pattern INDEX_USED = Pattern.compile("for (\\S+) using (index|constraint) (\\S+)");
+
+    /** One statement to check, with the parameters to run it with. */
+    private static final class Check {
+        final String name;
+        final String sql;
+        final boolean updatable;
+        final Object[] params;
+
+        Check(String name, String sql, boolean updatable, Object... params) {
+            this.name = name;
+            this.sql = sql;
+            this.updatable = updatable;
+            this.params = params;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchOptions options = new BenchOptions(args);
+        if (System.getProperty("scheduler.ledger.reconcileSeconds") == null) {
+            System.setProperty("scheduler.ledger.reconcileSeconds", "0");
+        }
+        String url = BenchOptions.configureDatabase(options.get("db", "memory"), "schedulerindexcheck");
+        BenchmarkDataSet data = new BenchmarkDataSet(options.getInt("students", 5000),
+                options.getInt("classes", 200), options.getInt("schedule", 25000), 0);
+        boolean verbose = options.has("verbose");
+
+        String semester = BenchmarkDataSet.SEMESTER;
+        String student = BenchmarkDataSet.studentId(0);
+        String course = BenchmarkDataSet.courseCode(data.classOf(0, 0));
+        List<Check> checks = new ArrayList<>();
+        checks.add(new Check("getAllStudents", SemesterQueries.STUDENTS_BY_NAME_SQL, false));
+        checks.add(new Check("dropStudent: classes", SemesterQueries.STUDENT_CLASSES_SQL, false, student));
+        checks.add(new Check("dropStudent: schedule rows", SemesterQueries.STUDENT_SCHEDULE_SQL, true, student));
+        checks.add(new Check("waitlist head", Waitlist.HEAD_SQL, false, semester, course, 5));
+        checks.add(new Check("waitlist length", Waitlist.LENGTH_SQL, false, semester, course));
+        checks.add(new Check("waitlist last number", Waitlist.LAST_NUMBER_SQL, false, semester, course));
+        checks.add(new Check("class roster", SemesterQueries.ROSTER_SQL, false, semester, course));
+        checks.add(new Check("scheduled count: class", SeatLedger.CLASS_SQL, false, semester, course));
+        checks.add(new Check("scheduled count: semester", SeatLedger.SEMESTER_SQL, false, semester));
+
+        System.out.println("Index check database: " + url);
+        int failures = 0;
+        try {
+            DBInitializer.initializeDatabase();
+            data.seed();
+            Connection conn = DBConnection.getConnection();
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(1)");
+                for (Check check : checks) {
+                    String plan = plan(conn, stmt, check);
+                    String problem = plan.contains("Table Scan ResultSet") ? "table scan"
+                            : plan.contains("Sort ResultSet") ? "sort"
+                            : !plan.contains("Index Scan ResultSet") ? "no index scan"
+                            : null;
+                    System.out.printf("%-28s %-6s %s%n", check.name, problem == null ? "ok" : "FAIL",
+                            problem == null ? indexesUsed(plan) : problem);
+                    if (problem != null) {
+                        failures++;
+                    }
+                    if (problem != null || verbose) {
+                        System.out.println(plan);
+                    }
+                }
+                stmt.execute("CALL SYSCS_UTIL.SYSCS_SET_RUNTIMESTATISTICS(0)");
+            } finally {
+                conn.rollback(); // Drops the FOR UPDATE locks
+                DBConnection.release(conn);
+            }
+        } finally {
+            DBConnection.closeConnection();
+        }
+        System.out.println(failures == 0 ? "All statements use an index."
+                : failures + " statement(s) scan a table or sort.");
+        System.exit(failures == 0 ? 0 : 1);
+    }
+
+    /** Runs the statement to completion and returns Derby's runtime statistics for it. */
+    private static String plan(Connection conn, Statement stmt, Check check) throws SQLException {
+        try (PreparedStatement pstmt = check.updatable
+                ? conn.prepareStatement(check.sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE)
+                : conn.prepareStatement(check.sql)) {
+            for (int i = 0; i < check.params.length; i++) {
+                pstmt.setObject(i + 1, check.params[i]);
+            }
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    // Statistics are complete once every row has been read
+                }
+            }
+        }
+        try (ResultSet rs = stmt.executeQuery("VALUES SYSCS_UTIL.SYSCS_GET_RUNTIMESTATISTICS()")) {
+            return rs.next() ? rs.getString(1) : "";
+        }
+    }
+
+    private static String indexesUsed(String plan) {
+        Set<String> indexes = new LinkedHashSet<>();
+        Matcher m = INDEX_USED.matcher(plan);
+        while (m.find()) {
+            // Constraint indexes have generated names (SQL0000...); name the table instead
+            indexes.add(m.group(2).equals("constraint") && m.group(3).startsWith("SQL")
+                    ? m.group(1) + " key" : m.group(3));
+        }
+        return String.join(", ", indexes);
+    }
+}
@@ -0,0 +1,249 @@
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Throughput and latency benchmark for every {@link SemesterQueries} operation.
+ *
+ * Seeds an in-memory or on-disk Derby database, then runs each operation for a
+ * fixed time at each requested thread count and reports ops/s plus latency
+ * percentiles. Operations that consume data (drops, enrollments) draw unique
+ * keys from a per-operation counter and stop early if the seeded supply runs out.
+ *
+ * Usage (see the "bench" target in build.xml):
+ * <pre>
+ * java -cp ... QueryBenchmark --db=memory --students=50000 --classes=3000 --schedule=500000
+ *      --threads=1,4,16 --warmup=2 --seconds=5 [--only=scheduleClass,getAllStudents] [--csv=results.csv]
+ * </pre>
+ */
+public class QueryBenchmark {
+
+    /** Students per scheduleClasses call. */
+    private static final int COHORT_SIZE = 100;
+
+    /** One benchmarked call. {@code n} is a unique, increasing invocation number for the operation. */
+    private interface Operation {
+        void run(long n) throws SQLException;
+    }
+
+    private static final class Benchmark {
+        final String name;
+        final long keySupply;
+        final Operation operation;
+        final AtomicLong nextKey = new AtomicLong();
+
+        Benchmark(String name, long keySupply, Operation operation) {
+            this.name = name;
+            this.keySupply = keySupply;
+            this.operation = operation;
+        }
+    }
+
+    private static final class Result {
+        final LatencyHistogram latency = new LatencyHistogram();
+        final AtomicLong errors = new AtomicLong();
+        final AtomicBoolean exhausted = new AtomicBoolean();
+        volatile String firstError;
+        long elapsedNanos;
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchOptions options = new BenchOptions(args);
+        String dbMode = options.get("db", "memory");
+        int[] threadCounts = options.getIntList("threads", "1,4,16");
+        int maxThreads = 1;
+        for (int t : threadCounts) {
+            maxThreads = Math.max(maxThreads, t);
+        }
+        if (System.getProperty("scheduler.pool.maxSize") == null) {
+            System.setProperty("scheduler.pool.maxSize", String.valueOf(maxThreads));
+        }
+        String url = BenchOptions.configureDatabase(dbMode, "schedulerbench");
+
+        BenchmarkDataSet data = new BenchmarkDataSet(
+                options.getInt("students", 50000),
+                options.getInt("classes", 3000),
+                options.getInt("schedule", 500000),
+                options.getInt("freeStudents", 10000));
+        int warmupSeconds = options.getInt("warmup", 2);
+        int measureSeconds = options.getInt("seconds", 5);
+        String only = options.get("only", "");
+        String csvPath = options.get("csv", null);
+
+        System.out.println("Benchmark database: " + url);
+        DBInitializer.initializeDatabase();
+        data.seed();
+
+        List<Benchmark> benchmarks = createBenchmarks(data);
+        PrintWriter csv = csvPath == null ? null : new PrintWriter(new FileWriter(csvPath, true));
+        try {
+            if (csv != null) {
+                csv.println("db,benchmark,threads,ops_per_sec,mean_us,p50_us,p99_us,max_us,errors");
+            }
+            System.out.printf("%n%-30s %7s %12s %10s %10s %10s %10s %7s%n",
+                    "Benchmark", "Threads", "ops/s", "mean(us)", "p50(us)", "p99(us)", "max(us)", "errors");
+            for (Benchmark benchmark : benchmarks) {
+                if (!only.isEmpty() && !("," + only + ",").contains("," + benchmark.name + ",")) {
+                    continue;
+                }
+                for (int threads : threadCounts) {
+                    // Warmup may use at most a tenth of the remaining keys of a finite supply
+                    long remaining = benchmark.keySupply - benchmark.nextKey.get();
+                    long warmupLimit = benchmark.keySupply == Long.MAX_VALUE
+                            ? Long.MAX_VALUE : benchmark.nextKey.get() + remaining / 10;
+                    run(benchmark, threads, warmupSeconds, warmupLimit, false);
+                    Result result = run(benchmark, threads, measureSeconds, benchmark.keySupply, true);
+                    report(dbMode, benchmark, threads, result, csv);
+                    if (result.exhausted.get()) {
+                        System.out.println("  (" + benchmark.name + " used up its seeded keys; later thread counts skipped)");
+                        break;
+                    }
+                }
+            }
+            // Reference reads are cached; run with -Dscheduler.cache.maxEntries=0 to measure the database
+            System.out.println("Reference cache: " + SemesterQueries.getReferenceCache());
+        } finally {
+            if (csv != null) {
+                csv.close();
+            }
+            DBConnection.closeConnection();
+        }
+    }
+
+    private static List<Benchmark> createBenchmarks(BenchmarkDataSet data) {
+        final String sem = BenchmarkDataSet.SEMESTER;
+        List<Benchmark> list = new ArrayList<>();
+        // Reads
+        list.add(new Benchmark("getSemesterList", Long.MAX_VALUE, n -> SemesterQueries.getSemesterList()));
+        list.add(new Benchmark("getAllCourseCodes", Long.MAX_VALUE, n -> SemesterQueries.getAllCourseCodes()));
+        list.add(new Benchmark("getCourseDescription", Long.MAX_VALUE,
+                n -> SemesterQueries.getCourseDescription(randomCourse(data))));
+        list.add(new Benchmark("getAllCourseCodesBySemester", Long.MAX_VALUE,
+                n -> SemesterQueries.getAllCourseCodesBySemester(sem)));
+        list.add(new Benchmark("getClassSeats", Long.MAX_VALUE,
+                n -> SemesterQueries.getClassSeats(sem, randomCourse(data))));
+        list.add(new Benchmark("getScheduledStudentCount", Long.MAX_VALUE,
+                n -> SemesterQueries.getScheduledStudentCount(sem, randomCourse(data))));
+        list.add(new Benchmark("getWaitlistPosition", Long.MAX_VALUE, n -> {
+            int row = ThreadLocalRandom.current().nextInt(Math.max(1, data.scheduleRows));
+            SemesterQueries.getWaitlistPosition(sem, BenchmarkDataSet.studentId(data.studentOfRow(row)),
+                    BenchmarkDataSet.courseCode(data.classOfRow(row)));
+        }));
+        list.add(new Benchmark("getAllStudents", Long.MAX_VALUE, n -> SemesterQueries.getAllStudents()));
+        list.add(new Benchmark("getClassesBySemester", Long.MAX_VALUE, n -> SemesterQueries.getClassesBySemester(sem)));
+        list.add(new Benchmark("getScheduleByStudent", Long.MAX_VALUE,
+                n -> SemesterQueries.getScheduleByStudent(sem,
+                        BenchmarkDataSet.studentId(ThreadLocalRandom.current().nextInt(data.students)))));
+        list.add(new Benchmark("getStudentsInClass", Long.MAX_VALUE,
+                n -> SemesterQueries.getStudentsInClass(sem, randomCourse(data))));
+        // Streaming variants of the three table queries; rows are consumed, not kept
+        list.add(new Benchmark("forEachClassInSemester", Long.MAX_VALUE,
+                n -> SemesterQueries.forEachClassInSemester(sem, row -> { })));
+        list.add(new Benchmark("forEachScheduleEntry", Long.MAX_VALUE,
+                n -> SemesterQueries.forEachScheduleEntry(sem,
+                        BenchmarkDataSet.studentId(ThreadLocalRandom.current().nextInt(data.students)), row -> { })));
+        list.add(new Benchmark("forEachStudentInClass", Long.MAX_VALUE,
+                n -> SemesterQueries.forEachStudentInClass(sem, randomCourse(data), row -> { })));
+        // Inserts
+        list.add(new Benchmark("addSemester", Long.MAX_VALUE, n -> SemesterQueries.addSemester("BS" + n)));
+        list.add(new Benchmark("addCourse", Long.MAX_VALUE, n -> SemesterQueries.addCourse("N" + n, "New course " + n)));
+        list.add(new Benchmark("addStudent", Long.MAX_VALUE, n -> SemesterQueries.addStudent("N" + n, "New", "Student" + n)));
+        // addClass reuses seeded courses in an empty semester, one offering per course
+        list.add(new Benchmark("addClass", data.classes, n ->
+                SemesterQueries.addClass(BenchmarkDataSet.SPARE_SEMESTER, BenchmarkDataSet.courseCode((int) n), 30)));
+        // Copies every seeded class into a new semester per call
+        list.add(new Benchmark("cloneSemester", Long.MAX_VALUE, n -> SemesterQueries.cloneSemester(sem, "BC" + n, 1.1)));
+        // Enrollment writes
+        list.add(new Benchmark("scheduleClass", (long) data.freeStudents * data.classes, n -> SemesterQueries.scheduleClass(sem,
+                BenchmarkDataSet.freeStudentId((int) (n % data.freeStudents)),
+                BenchmarkDataSet.courseCode((int) ((n / data.freeStudents) % data.classes)))));
+        // Cohorts of COHORT_SIZE free students, into classes from the last one down so
+        // they do not collide with the students scheduleClass enrolled from class 0 up
+        final int cohorts = Math.max(1, data.freeStudents / COHORT_SIZE);
+        list.add(new Benchmark("scheduleClasses", (long) cohorts * data.classes, n -> {
+            int first = (int) (n % cohorts) * COHORT_SIZE;
+            List<String> cohort = new ArrayList<>(COHORT_SIZE);
+            for (int i = first; i < Math.min(data.freeStudents, first + COHORT_SIZE); i++) {
+                cohort.add(BenchmarkDataSet.freeStudentId(i));
+            }
+            SemesterQueries.scheduleClasses(sem,
+                    BenchmarkDataSet.courseCode(data.classes - 1 - (int) ((n / cohorts) % data.classes)), cohort);
+        }));
+        list.add(new Benchmark("studentDropClass", data.scheduleRows, n -> SemesterQueries.studentDropClass(sem,
+                BenchmarkDataSet.studentId(data.studentOfRow((int) n)),
+                BenchmarkDataSet.courseCode(data.classOfRow((int) n)))));
+        // Destructive operations run last; each consumes seeded entities
+        list.add(new Benchmark("dropStudent", data.students,
+                n -> SemesterQueries.dropStudent(BenchmarkDataSet.studentId(data.students - 1 - (int) n))));
+        list.add(new Benchmark("dropClass", data.classes,
+                n -> SemesterQueries.dropClass(sem, BenchmarkDataSet.courseCode((int) n))));
+        return list;
+    }
+
+    private static String randomCourse(BenchmarkDataSet data) {
+        return BenchmarkDataSet.courseCode(ThreadLocalRandom.current().nextInt(data.classes));
+    }
+
+    private static Result run(Benchmark benchmark, int threads, int seconds, long keyLimit,
+                              boolean measure) throws InterruptedException {
+        Result result = new Result();
+        long startNanos = System.nanoTime();
+        long deadline = startNanos + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    while (System.nanoTime() < deadline && !result.exhausted.get()) {
+                        long n = benchmark.nextKey.getAndIncrement();
+                        if (n >= keyLimit) {
+                            benchmark.nextKey.decrementAndGet();
+                            result.exhausted.set(keyLimit >= benchmark.keySupply);
+                            break;
+                        }
+                        long start = System.nanoTime();
+                        try {
+                            benchmark.operation.run(n);
+                            if (measure) {
+                                result.latency.record(System.nanoTime() - start);
+                            }
+                        } catch (SQLException e) {
+                            if (result.errors.incrementAndGet() == 1) {
+                                result.firstError = e.getSQLState() + ": " + e.getMessage();
+                            }
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            }, benchmark.name + "-" + t);
+            worker.start();
+        }
+        done.await();
+        result.elapsedNanos = System.nanoTime() - startNanos;
+        return result;
+    }
+
+    private static void report(String dbMode, Benchmark benchmark, int threads, Result result, PrintWriter csv) {
+        LatencyHistogram h = result.latency;
+        double opsPerSec = result.elapsedNanos == 0 ? 0 : h.getCount() / (result.elapsedNanos / 1e9);
+        long p50 = h.getPercentileNanos(50) / 1000;
+        long p99 = h.getPercentileNanos(99) / 1000;
+        long max = h.getMaxNanos() / 1000;
+        System.out.printf("%-30s %7d %12.1f %10.1f %10d %10d %10d %7d%n",
+                benchmark.name, threads, opsPerSec, h.getMeanNanos() / 1000.0, p50, p99, max, result.errors.get());
+        if (result.firstError != null) {
+            System.out.println("  first error: " + result.firstError);
+        }
+        if (csv != null) {
+            csv.printf("%s,%s,%d,%.1f,%.1f,%d,%d,%d,%d%n",
+                    dbMode, benchmark.name, threads, opsPerSec, h.getMeanNanos() / 1000.0, p50, p99, max, result.errors.get());
+        }
+    }
+}
@@ -0,0 +1,413 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Simulates the opening minutes of a registration window and checks that
+ * enrollment stayed consistent under the load.
+ *
+ * Hundreds of client threads each own a slice of the students and hammer
+ * {@link SemesterQueries#scheduleClass}, {@link SemesterQueries#studentDropClass}
+ * and {@link SemesterQueries#dropStudent} with no think time. Class popularity
+ * follows a Zipf distribution, so a handful of classes take most of the traffic
+ * and their waitlists churn constantly. Latency is recorded per operation.
+ *
+ * While the clients run, and once more after they stop, the invariants are
+ * checked for every class:
+ * - scheduled students never exceed seats
+ * - the enrolled counter equals the number of scheduled rows
+ * - nobody is left waitlisted while a seat is free
+ * - waitlist promotion respects timestamp order: no scheduled student registered
+ *   later than a student who is still waitlisted
+ * - every waitlisted student holds a distinct waitlist sequence number
+ * - after the run, the in-memory seat ledger agrees with the database (periodic
+ *   ledger reconciliation is off unless -Dscheduler.ledger.reconcileSeconds is set,
+ *   so this checks that the write paths alone kept it in sync)
+ *
+ * The process exits with status 1 if any check fails.
+ *
+ * Usage (see the "rush" target in build.xml):
+ * <pre>
+ * java -cp ... RegistrationRush --clients=300 --students=6000 --classes=60 --seats=40
+ *      --zipf=1.1 --seconds=30 --dropPercent=25 --dropStudentPercent=2 --poolSize=16
+ * </pre>
+ */
+public class RegistrationRush {
+
+    private static final String SEMESTER = "RUSH";
+
+    private final int clients;
+    private final int students;
+    private final int classes;
+    private final int seats;
+    private final int maxClassesPerStudent;
+    private final int dropPercent;
+    private final int dropStudentPercent;
+    private final double[] popularity;
+
+    private final Map<String, LatencyHistogram> latency = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final LongAdder scheduled = new LongAdder();
+    private final LongAdder waitlisted = new LongAdder();
+    private final AtomicBoolean running = new AtomicBoolean(true);
+    private final AtomicLong violations = new AtomicLong();
+
+    RegistrationRush(BenchOptions options) {
+        this.clients = options.getInt("clients", 300);
+        this.students = Math.max(clients, options.getInt("students", 6000));
+        this.classes = options.getInt("classes", 60);
+        this.seats = options.getInt("seats", 40);
+        this.maxClassesPerStudent = Math.min(classes, options.getInt("maxClassesPerStudent", 5));
+        this.dropPercent = options.getInt("dropPercent", 25);
+        this.dropStudentPercent = options.getInt("dropStudentPercent", 2);
+        this.popularity = zipfCumulative(classes, options.getDouble("zipf", 1.1));
+    }
+
+    public static void main(String[] args) throws Exception {
+        BenchOptions options = new BenchOptions(args);
+        if (System.getProperty("scheduler.pool.maxSize") == null) {
+            System.setProperty("scheduler.pool.maxSize", options.get("poolSize", "16"));
+        }
+        if (System.getProperty("scheduler.ledger.reconcileSeconds") == null) {
+            System.setProperty("scheduler.ledger.reconcileSeconds", "0");
+        }
+        String url = BenchOptions.configureDatabase(options.get("db", "memory"), "schedulerrush");
+        RegistrationRush rush = new RegistrationRush(options);
+        int seconds = options.getInt("seconds", 30);
+        int checkSeconds = options.getInt("checkEvery", 5);
+
+        System.out.println("Registration rush database: " + url);
+        boolean ok;
+        try {
+            DBInitializer.initializeDatabase();
+            rush.seed();
+            rush.run(seconds, checkSeconds);
+            rush.report();
+            System.out.println("Final invariant check:");
+            ok = rush.checkInvariants(true) && rush.violations.get() == 0;
+            System.out.println("Connection pool: " + DBConnection.getPool());
+            System.out.println("Seat ledger: " + SemesterQueries.getSeatLedger());
+        } finally {
+            DBConnection.closeConnection();
+        }
+        System.out.println(ok ? "All invariants held." : "INVARIANT VIOLATIONS DETECTED.");
+        System.exit(ok ? 0 : 1);
+    }
+
+    private static String studentId(int index) {
+        return "U" + index;
+    }
+
+    private static String courseCode(int index) {
+        return "R" + index;
+    }
+
+    /** Cumulative Zipf distribution over class ranks; rank 0 is the most popular class. */
+    private static double[] zipfCumulative(int n, double exponent) {
+        double[] cumulative = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, exponent);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            cumulative[i] /= sum;
+        }
+        return cumulative;
+    }
+
+    private int randomClass() {
+        double u = ThreadLocalRandom.current().nextDouble();
+        int lo = 0;
+        int hi = popularity.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (popularity[mid] < u) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private void seed() throws SQLException {
+        long start = System.nanoTime();
+        SemesterQueries.addSemester(SEMESTER);
+        for (int c = 0; c < classes; c++) {
+            SemesterQueries.addCourse(courseCode(c), "Rush course " + c);
+            SemesterQueries.addClass(SEMESTER, courseCode(c), seats);
+        }
+        for (int s = 0; s < students; s++) {
+            SemesterQueries.addStudent(studentId(s), "Student", "Rush" + s);
+        }
+        // Load the seat ledger now so every enrollment during the run has to keep it in sync
+        SemesterQueries.getClassesWithOpenSeats(SEMESTER);
+        System.out.printf("Seeded %d classes x %d seats and %d students in %.1f s%n",
+                classes, seats, students, (System.nanoTime() - start) / 1e9);
+    }
+
+    // --- Load generation ---
+
+    private void run(int seconds, int checkSeconds) throws InterruptedException {
+        System.out.printf("Running %d clients for %d s (drop %d%%, dropStudent %d%%)...%n",
+                clients, seconds, dropPercent, dropStudentPercent);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        CountDownLatch done = new CountDownLatch(clients);
+        for (int c = 0; c < clients; c++) {
+            final int client = c;
+            Thread thread = new Thread(() -> {
+                try {
+                    runClient(client, deadline);
+                } finally {
+                    done.countDown();
+                }
+            }, "rush-client-" + c);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        Thread checker = new Thread(() -> {
+            while (running.get()) {
+                try {
+                    TimeUnit.SECONDS.sleep(checkSeconds);
+                    if (running.get() && !checkInvariants(false)) {
+                        System.out.println("  invariant violation detected during the run");
+                    }
+                } catch (InterruptedException e) {
+                    return;
+                } catch (SQLException e) {
+                    System.err.println("Invariant check failed: " + e.getMessage());
+                }
+            }
+        }, "rush-invariant-checker");
+        checker.setDaemon(true);
+        if (checkSeconds > 0) {
+            checker.start();
+        }
+
+        done.await();
+        running.set(false);
+        checker.interrupt();
+        checker.join();
+    }
+
+    /**
+     * One client: owns students client, client + clients, ... and tracks their
+     * enrollments locally, so it never drops a class a student does not hold.
+     */
+    private void runClient(int client, long deadline) {
+        List<Integer> owned = new ArrayList<>();
+        for (int s = client; s < students; s += clients) {
+            owned.add(s);
+        }
+        List<Set<Integer>> enrolled = new ArrayList<>();
+        for (int i = 0; i < owned.size(); i++) {
+            enrolled.add(new HashSet<>());
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        while (System.nanoTime() < deadline) {
+            int slot = random.nextInt(owned.size());
+            String student = studentId(owned.get(slot));
+            Set<Integer> held = enrolled.get(slot);
+            int roll = random.nextInt(100);
+
+            if (roll < dropStudentPercent) {
+                if (measure("dropStudent", () -> SemesterQueries.dropStudent(student))) {
+                    held.clear();
+                    // The student immediately re-registers with the registrar
+                    measure("addStudent", () -> SemesterQueries.addStudent(student, "Student", "Readmitted"));
+                }
+            } else if (!held.isEmpty() && (roll < dropStudentPercent + dropPercent || held.size() >= maxClassesPerStudent)) {
+                int course = pick(held, random);
+                if (measure("studentDropClass", () -> SemesterQueries.studentDropClass(SEMESTER, student, courseCode(course)))) {
+                    held.remove(course);
+                }
+            } else {
+                int course = randomClass();
+                if (held.contains(course)) {
+                    continue;
+                }
+                // Students look at the open seats before registering
+                measure("getOpenSeats", () -> SemesterQueries.getOpenSeats(SEMESTER, courseCode(course)));
+                String[] status = new String[1];
+                if (measure("scheduleClass", () -> status[0] = SemesterQueries.scheduleClass(SEMESTER, student, courseCode(course)))) {
+                    held.add(course);
+                    if ("scheduled".equals(status[0])) {
+                        scheduled.increment();
+                    } else {
+                        waitlisted.increment();
+                        measure("getWaitlistPosition",
+                                () -> SemesterQueries.getWaitlistPosition(SEMESTER, student, courseCode(course)));
+                    }
+                }
+            }
+        }
+    }
+
+    private static int pick(Set<Integer> set, ThreadLocalRandom random) {
+        int skip = random.nextInt(set.size());
+        for (int value : set) {
+            if (skip-- == 0) {
+                return value;
+            }
+        }
+        throw new IllegalStateException("empty set");
+    }
+
+    private interface Call {
+        void run() throws SQLException;
+    }
+
+    /** Runs and times one call. Failed calls are counted per operation and SQLState, not timed. */
+    private boolean measure(String operation, Call call) {
+        long start = System.nanoTime();
+        try {
+            call.run();
+            latency.computeIfAbsent(operation, k -> new LatencyHistogram()).record(System.nanoTime() - start);
+            return true;
+        } catch (SQLException e) {
+            errors.computeIfAbsent(operation + " " + e.getSQLState(), k -> new LongAdder()).increment();
+            return false;
+        }
+    }
+
+    private void report() {
+        System.out.printf("%n%-20s %9s %10s %10s %10s %10s%n", "Operation", "count", "mean(us)", "p50(us)", "p99(us)", "max(us)");
+        for (Map.Entry<String, LatencyHistogram> entry : new TreeMap<>(latency).entrySet()) {
+            LatencyHistogram h = entry.getValue();
+            System.out.printf("%-20s %9d %10.1f %10d %10d %10d%n", entry.getKey(), h.getCount(),
+                    h.getMeanNanos() / 1000.0, h.getPercentileNanos(50) / 1000,
+                    h.getPercentileNanos(99) / 1000, h.getMaxNanos() / 1000);
+        }
+        System.out.printf("Registrations: %d scheduled, %d waitlisted%n", scheduled.sum(), waitlisted.sum());
+        if (!errors.isEmpty()) {
+            System.out.println("Errors by operation and SQLState:");
+            for (Map.Entry<String, LongAdder> entry : new TreeMap<>(errors).entrySet()) {
+                System.out.println("  " + entry.getKey() + ": " + entry.getValue().sum());
+            }
+        }
+    }
+
+    // --- Invariants ---
+
+    /**
+     * Checks every class of the rush semester, one short transaction per class.
+     * Each transaction first takes the class row's exclusive lock, the same lock
+     * every enrollment write takes before touching schedule rows, so the rows
+     * read afterwards are a consistent snapshot of that class.
+     * @param verbose Print a summary line for each of the ten most popular classes.
+     *                Also compares the seat ledger with the database, so only pass true
+     *                once no enrollment writes are running.
+     * @return true if all invariants hold
+     */
+    private boolean checkInvariants(boolean verbose) throws SQLException {
+        String sqlLock = "UPDATE app.classes SET enrolled = enrolled WHERE semester = ? AND coursecode = ?";
+        String sqlClass = "SELECT seats, enrolled FROM app.classes WHERE semester = ? AND coursecode = ?";
+        String sqlRows = "SELECT status, COUNT(*) AS total, COUNT(DISTINCT waitseq) AS sequenced, " +
+                         "MIN(timestamp) AS first_ts, MAX(timestamp) AS last_ts " +
+                         "FROM app.schedule WHERE semester = ? AND coursecode = ? GROUP BY status";
+        List<String> problems = new ArrayList<>();
+        Connection conn = DBConnection.getConnection();
+        try (PreparedStatement lock = conn.prepareStatement(sqlLock);
+             PreparedStatement classRow = conn.prepareStatement(sqlClass);
+             PreparedStatement rows = conn.prepareStatement(sqlRows)) {
+            for (int c = 0; c < classes; c++) {
+                String course = courseCode(c);
+                lock.setString(1, SEMESTER);
+                lock.setString(2, course);
+                lock.executeUpdate();
+
+                int classSeats = 0;
+                int counter = 0;
+                classRow.setString(1, SEMESTER);
+                classRow.setString(2, course);
+                try (ResultSet rs = classRow.executeQuery()) {
+                    if (rs.next()) {
+                        classSeats = rs.getInt("seats");
+                        counter = rs.getInt("enrolled");
+                    }
+                }
+
+                int scheduledRows = 0;
+                int waitlistedRows = 0;
+                int sequencedRows = 0;
+                Timestamp lastScheduled = null;
+                Timestamp firstWaitlisted = null;
+                rows.setString(1, SEMESTER);
+                rows.setString(2, course);
+                try (ResultSet rs = rows.executeQuery()) {
+                    while (rs.next()) {
+                        if ("scheduled".equals(rs.getString("status"))) {
+                            scheduledRows = rs.getInt("total");
+                            lastScheduled = rs.getTimestamp("last_ts");
+                        } else if ("waitlisted".equals(rs.getString("status"))) {
+                            waitlistedRows = rs.getInt("total");
+                            sequencedRows = rs.getInt("sequenced");
+                            firstWaitlisted = rs.getTimestamp("first_ts");
+                        }
+                    }
+                }
+                conn.commit();
+
+                if (scheduledRows > classSeats) {
+                    problems.add(course + ": overbooked, " + scheduledRows + " scheduled for " + classSeats + " seats");
+                }
+                if (counter != scheduledRows) {
+                    problems.add(course + ": enrolled counter is " + counter + " but " + scheduledRows + " rows are scheduled");
+                }
+                if (scheduledRows < classSeats && waitlistedRows > 0) {
+                    problems.add(course + ": " + waitlistedRows + " waitlisted with " + (classSeats - scheduledRows) + " seats free");
+                }
+                if (sequencedRows != waitlistedRows) {
+                    problems.add(course + ": " + waitlistedRows + " waitlisted but only " + sequencedRows
+                            + " distinct waitlist sequence numbers");
+                }
+                if (lastScheduled != null && firstWaitlisted != null && lastScheduled.after(firstWaitlisted)) {
+                    problems.add(course + ": scheduled student registered at " + lastScheduled
+                            + " ahead of waitlisted student registered at " + firstWaitlisted);
+                }
+                if (verbose) {
+                    SeatLedger ledger = SemesterQueries.getSeatLedger();
+                    int ledgerSeats = ledger.getSeats(SEMESTER, course);
+                    int ledgerScheduled = ledger.getScheduledCount(SEMESTER, course);
+                    if (ledgerSeats != classSeats || ledgerScheduled != counter) {
+                        problems.add(course + ": seat ledger has " + ledgerScheduled + "/" + ledgerSeats
+                                + " but the database has " + counter + "/" + classSeats);
+                    }
+                }
+                if (verbose && c < 10) {
+                    System.out.printf("  %-4s seats=%d scheduled=%d waitlisted=%d%n",
+                            course, classSeats, scheduledRows, waitlistedRows);
+                }
+            }
+        } catch (SQLException e) {
+            conn.rollback();
+            throw e;
+        } finally {
+            DBConnection.release(conn);
+        }
+
+        for (String problem : problems) {
+            System.out.println("  VIOLATION " + problem);
+        }
+        violations.addAndGet(problems.size());
+        return problems.isEmpty();
+    }
+}
@@ -0,0 +1,757 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLTransientException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless HTTP/JSON front end to SemesterQueries, for the help desk and kiosks,
+ * built on the JDK's com.sun.net.httpserver.
+ *
+ * Each request runs on its own virtual thread when the JVM has them (Java 21+),
+ * otherwise on a fixed pool of -Dscheduler.http.threads platform threads (default 64).
+ * Database work goes through the shared connection pool, so at most
+ * scheduler.pool.maxSize requests touch the database at once and the rest wait
+ * for a connection; a request that cannot get one in time gets 503.
+ *
+ * Parameters come from the query string or an application/x-www-form-urlencoded
+ * body. Responses are JSON. Errors are {"error": "..."} with status 400 (bad
+ * parameters, or a value the database rejects, such as a name too long for its
+ * column), 404 (no such semester, class, student or enrollment), 409 (already
+ * exists), 503 (database busy) or 500.
+ * <pre>
+ * GET    /api/semesters                                       ["Fall 2024", ...]
+ * POST   /api/semesters                  name
+ * POST   /api/semesters/{sem}/clone      target, [seatFactor=1]  {"copied": n}
+ * GET    /api/courses                                         [{"courseCode", "description"}]
+ * POST   /api/courses                    courseCode, description
+ * GET    /api/students                                        [{"studentId", "firstName", "lastName"}]
+ * POST   /api/students                   studentId, firstName, lastName
+ * DELETE /api/students/{id}
+ * GET    /api/semesters/{sem}/classes                         [{"courseCode", "description", "seats", "openSeats"}]
+ * POST   /api/semesters/{sem}/classes    courseCode, seats
+ * PUT    /api/semesters/{sem}/classes/{course}   seats        {"seats", "promoted": [studentId, ...]}
+ * DELETE /api/semesters/{sem}/classes/{course}                {"dropped": [roster entries]}
+ * GET    /api/semesters/{sem}/classes/{course}/roster         [{"lastName", "firstName", "status"}]
+ * GET    /api/semesters/{sem}/classes/{course}/waitlist       {"length": n}
+ * GET    /api/semesters/{sem}/students/{id}/schedule          [{"courseCode", "status"}]
+ * POST   /api/semesters/{sem}/students/{id}/schedule  courseCode  {"status", "waitlistPosition"}
+ * DELETE /api/semesters/{sem}/students/{id}/schedule/{course}
+ * POST   /api/semesters/{sem}/enrollments  courseCode=A,B  studentId=X,Y,Z  [{"studentId", "courseCode", "status", "error"}]
+ * </pre>
+ *
+ * There is no authentication, and the routes can delete students and classes, so
+ * the server listens on the loopback address unless --host (or
+ * -Dscheduler.http.host) names another, e.g. --host=0.0.0.0 for all interfaces.
+ * With --metricsPort=N, Prometheus metrics are also served on that port; see
+ * {@link MetricsExporter}.
+ *
+ * Usage (see the "api" target in build.xml):
+ * <pre>
+ * java -cp ... ApiServer [--host=localhost] [--port=8080] [--metricsPort=N]
+ * </pre>
+ */
+public class ApiServer {
+
+    /** Largest form body accepted, in bytes. */
+    private static final int MAX_BODY_BYTES = 1 << 20;
+
+    private interface Handler {
+        void handle(Call call) throws IOException, SQLException;
+    }
+
+    private static final class Route {
+        final String method;
+        final String[] segments; // "{}" matches any one segment
+        final Handler handler;
+
+        Route(String method, String path, Handler handler) {
+            this.method = method;
+            this.segments = path.substring(1).split("/");
+            this.handler = handler;
+        }
+
+        /** @return The values of the "{}" segments, or null if the path does not match. */
+        String[] match(String[] path) {
+            if (path.length != segments.length) {
+                return null;
+            }
+            List<String> values = new ArrayList<>();
+            for (int i = 0; i < path.length; i++) {
+                if (segments[i].equals("{}")) {
+                    values.add(path[i]);
+                } else if (!segments[i].equals(path[i])) {
+                    return null;
+                }
+            }
+            return values.toArray(new String[0]);
+        }
+    }
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final List<Route> routes = new ArrayList<>();
+
+    /**
+     * Listens on the loopback address.
+     * @param port Port to listen on, or 0 for any free port.
+     */
+    public ApiServer(int port) throws IOException, SQLException {
+        this(InetAddress.getLoopbackAddress().getHostAddress(), port);
+    }
+
+    /**
+     * @param host Address to listen on, e.g. localhost, or 0.0.0.0 for all interfaces.
+     * @param port Port to listen on, or 0 for any free port.
+     */
+    public ApiServer(String host, int port) throws IOException, SQLException {
+        // Headers and body go out in separate writes; with Nagle's algorithm on, the
+        // body waits for the client's delayed ACK (about 40 ms per response)
+        if (System.getProperty("sun.net.httpserver.nodelay") == null) {
+            System.setProperty("sun.net.httpserver.nodelay", "true");
+        }
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        executor = newRequestExecutor(DBConnection.getPool().getMaxSize());
+        server.setExecutor(executor);
+        server.createContext("/api/", this::dispatch);
+        registerRoutes();
+    }
+
+    /**
+     * One virtual thread per request when the JVM supports them. Looked up
+     * reflectively because the application still compiles for Java 8.
+     *
+     * Derby waits for row locks inside synchronized blocks, which pins a virtual
+     * thread to its carrier thread. Unless there are at least as many carriers as
+     * pooled connections, pinned waiters can take every carrier while the lock
+     * holder is unmounted and cannot finish. The scheduler is sized accordingly
+     * unless -Djdk.virtualThreadScheduler.parallelism is set; this only takes effect
+     * if no virtual thread has been started yet.
+     */
+    private static ExecutorService newRequestExecutor(int poolSize) {
+        if (!Boolean.parseBoolean(System.getProperty("scheduler.http.virtualThreads", "true"))) {
+            return Executors.newFixedThreadPool(Integer.getInteger("scheduler.http.threads", 64));
+        }
+        if (System.getProperty("jdk.virtualThreadScheduler.parallelism") == null) {
+            System.setProperty("jdk.virtualThreadScheduler.parallelism",
+                    String.valueOf(Math.max(Runtime.getRuntime().availableProcessors(), poolSize + 1)));
+        }
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Integer.getInteger("scheduler.http.threads", 64));
+        }
+    }
+
+    public void start() {
+        server.start();
+        System.out.println("API server listening on " + server.getAddress().getHostString() + ":" + getPort()
+                + (executor.getClass().getName().contains("ThreadPerTask") ? " (virtual threads)" : ""));
+    }
+
+    /** Stops accepting requests and waits up to delaySeconds for running ones to finish. */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    // --- Routes ---
+
+    private void registerRoutes() {
+        route("GET", "/api/semesters", call -> call.stringArray(SemesterQueries.getSemesterList()));
+        route("POST", "/api/semesters", call -> {
+            SemesterQueries.addSemester(call.param("name"));
+            call.created();
+        });
+        route("POST", "/api/semesters/{}/clone", call -> {
+            int copied = SemesterQueries.cloneSemester(call.path(0), call.param("target"),
+                    call.doubleParam("seatFactor", 1.0));
+            call.json.beginObject().name("copied").value(copied).endObject();
+        });
+
+        route("GET", "/api/courses", call -> {
+            call.json.beginArray();
+            for (String courseCode : SemesterQueries.getAllCourseCodes()) {
+                call.json.beginObject()
+                        .name("courseCode").value(courseCode)
+                        .name("description").value(SemesterQueries.getCourseDescription(courseCode))
+                        .endObject();
+            }
+            call.json.endArray();
+        });
+        route("POST", "/api/courses", call -> {
+            SemesterQueries.addCourse(call.param("courseCode"), call.param("description"));
+            call.created();
+        });
+
+        route("GET", "/api/students", call -> {
+            List<Student> students = SemesterQueries.getAllStudents();
+            call.json.beginArray();
+            for (Student student : students) {
+                call.json.beginObject()
+                        .name("studentId").value(student.getStudentId())
+                        .name("firstName").value(student.getFirstName())
+                        .name("lastName").value(student.getLastName())
+                        .endObject();
+            }
+            call.json.endArray();
+        });
+        route("POST", "/api/students", call -> {
+            SemesterQueries.addStudent(call.param("studentId"), call.param("firstName"), call.param("lastName"));
+            call.created();
+        });
+        route("DELETE", "/api/students/{}", call -> {
+            SemesterQueries.dropStudent(call.path(0));
+            call.noContent();
+        });
+
+        route("GET", "/api/semesters/{}/classes", call -> {
+            String semester = call.path(0);
+            List<ClassOffering> classes = SemesterQueries.getClassesBySemester(semester);
+            call.json.beginArray();
+            for (ClassOffering offering : classes) {
+                call.json.beginObject()
+                        .name("courseCode").value(offering.getCourseCode())
+                        .name("description").value(offering.getDescription())
+                        .name("seats").value(offering.getSeats())
+                        .name("openSeats").value(SemesterQueries.getOpenSeats(semester, offering.getCourseCode()))
+                        .endObject();
+            }
+            call.json.endArray();
+        });
+        route("POST", "/api/semesters/{}/classes", call -> {
+            SemesterQueries.addClass(call.path(0), call.param("courseCode"), call.intParam("seats"));
+            call.created();
+        });
+        route("PUT", "/api/semesters/{}/classes/{}", call -> {
+            int seats = call.intParam("seats");
+            List<String> promoted = SemesterQueries.setClassSeats(call.path(0), call.path(1), seats);
+            call.json.beginObject().name("seats").value(seats).name("promoted");
+            call.stringArray(promoted);
+            call.json.endObject();
+        });
+        route("DELETE", "/api/semesters/{}/classes/{}", call -> {
+            List<RosterEntry> dropped = SemesterQueries.dropClass(call.path(0), call.path(1));
+            call.json.beginObject().name("dropped").beginArray();
+            for (RosterEntry entry : dropped) {
+                call.rosterEntry(entry);
+            }
+            call.json.endArray().endObject();
+        });
+        route("GET", "/api/semesters/{}/classes/{}/roster", call -> {
+            List<RosterEntry> roster = SemesterQueries.getStudentsInClass(call.path(0), call.path(1));
+            call.json.beginArray();
+            for (RosterEntry entry : roster) {
+                call.rosterEntry(entry);
+            }
+            call.json.endArray();
+        });
+        route("GET", "/api/semesters/{}/classes/{}/waitlist", call -> call.json.beginObject()
+                .name("length").value(SemesterQueries.getWaitlistLength(call.path(0), call.path(1)))
+                .endObject());
+
+        route("GET", "/api/semesters/{}/students/{}/schedule", call -> {
+            List<ScheduleEntry> schedule = SemesterQueries.getScheduleByStudent(call.path(0), call.path(1));
+            call.json.beginArray();
+            for (ScheduleEntry entry : schedule) {
+                call.json.beginObject()
+                        .name("courseCode").value(entry.getCourseCode())
+                        .name("status").value(entry.getStatus())
+                        .endObject();
+            }
+            call.json.endArray();
+        });
+        route("POST", "/api/semesters/{}/students/{}/schedule", call -> {
+            String semester = call.path(0);
+            String studentId = call.path(1);
+            String courseCode = call.param("courseCode");
+            String status = SemesterQueries.scheduleClass(semester, studentId, courseCode);
+            call.status = 201;
+            call.json.beginObject().name("status").value(status);
+            if ("waitlisted".equals(status)) {
+                call.json.name("waitlistPosition").value(SemesterQueries.getWaitlistPosition(semester, studentId, courseCode));
+            }
+            call.json.endObject();
+        });
+        route("DELETE", "/api/semesters/{}/students/{}/schedule/{}", call -> {
+            SemesterQueries.studentDropClass(call.path(0), call.path(1), call.path(2));
+            call.noContent();
+        });
+        route("POST", "/api/semesters/{}/enrollments", call -> {
+            List<EnrollmentOutcome> outcomes = SemesterQueries.scheduleClasses(call.path(0),
+                    call.listParam("courseCode"), call.listParam("studentId"));
+            call.json.beginArray();
+            for (EnrollmentOutcome outcome : outcomes) {
+                call.json.beginObject()
+                        .name("studentId").value(outcome.getStudentId())
+                        .name("courseCode").value(outcome.getCourseCode())
+                        .name("status").value(outcome.getStatus())
+                        .name("error").value(outcome.getError())
+                        .endObject();
+            }
+            call.json.endArray();
+        });
+    }
+
+    private void route(String method, String path, Handler handler) {
+        routes.add(new Route(method, path, handler));
+    }
+
+    private void dispatch(HttpExchange exchange) {
+        Call call = new Call(exchange);
+        try {
+            String[] path = exchange.getRequestURI().getPath().substring(1).split("/");
+            boolean pathMatched = false;
+            for (Route route : routes) {
+                String[] values = route.match(path);
+                if (values != null) {
+                    pathMatched = true;
+                    if (route.method.equals(exchange.getRequestMethod())) {
+                        call.pathValues = values;
+                        route.handler.handle(call);
+                        call.finish();
+                        return;
+                    }
+                }
+            }
+            call.error(pathMatched ? 405 : 404, pathMatched ? "Method not allowed" : "No such resource");
+        } catch (SQLTransientException e) {
+            call.error(503, e.getMessage()); // Pool or lock timeout; retrying may succeed
+        } catch (SQLIntegrityConstraintViolationException e) {
+            call.error("23505".equals(e.getSQLState()) ? 409 : 404, "23505".equals(e.getSQLState())
+                    ? "Already exists"
+                    : "Refers to a semester, course or student that does not exist");
+        } catch (SQLException e) {
+            String state = e.getSQLState();
+            if (SemesterQueries.NOT_FOUND_STATE.equals(state)) {
+                call.error(404, e.getMessage());
+            } else if (state != null && state.startsWith("22")) {
+                call.error(400, e.getMessage()); // Data exception, e.g. a value too long for its column
+            } else {
+                System.err.println("Error handling " + exchange.getRequestMethod() + " "
+                        + exchange.getRequestURI() + ": " + e);
+                call.error(500, e.getMessage());
+            }
+        } catch (IllegalArgumentException e) {
+            call.error(400, e.getMessage());
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Error handling " + exchange.getRequestMethod() + " "
+                    + exchange.getRequestURI() + ": " + e);
+            call.error(500, "Internal error");
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // --- Requests and responses ---
+
+    /** One request: its parameters, and the response being written. */
+    private static final class Call {
+        final HttpExchange exchange;
+        final Response response;
+        final Json json;
+        String[] pathValues;
+        Map<String, String> params;
+        int status = 200;
+
+        Call(HttpExchange exchange) {
+            this.exchange = exchange;
+            this.response = new Response(this);
+            this.json = new Json(response);
+        }
+
+        String path(int index) {
+            return pathValues[index];
+        }
+
+        String param(String name) throws IOException {
+            String value = optionalParam(name);
+            if (value == null) {
+                throw new IllegalArgumentException("Missing parameter: " + name);
+            }
+            return value;
+        }
+
+        /** @return The trimmed parameter, or null if it is missing or blank. */
+        String optionalParam(String name) throws IOException {
+            if (params == null) {
+                params = new HashMap<>();
+                parseParams(exchange.getRequestURI().getRawQuery());
+                String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+                if (contentType != null && contentType.startsWith("application/x-www-form-urlencoded")) {
+                    parseParams(readBody(exchange.getRequestBody()));
+                }
+            }
+            String value = params.get(name);
+            return value == null || value.trim().isEmpty() ? null : value.trim();
+        }
+
+        int intParam(String name) throws IOException {
+            try {
+                return Integer.parseInt(param(name));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " must be a whole number");
+            }
+        }
+
+        double doubleParam(String name, double defaultValue) throws IOException {
+            String value = optionalParam(name);
+            try {
+                return value == null ? defaultValue : Double.parseDouble(value);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(name + " must be a number");
+            }
+        }
+
+        /** A comma-separated parameter. */
+        List<String> listParam(String name) throws IOException {
+            List<String> values = new ArrayList<>();
+            for (String value : param(name).split(",")) {
+                if (!value.trim().isEmpty()) {
+                    values.add(value.trim());
+                }
+            }
+            return values;
+        }
+
+        private void parseParams(String encoded) throws UnsupportedEncodingException {
+            if (encoded == null || encoded.isEmpty()) {
+                return;
+            }
+            for (String pair : encoded.split("&")) {
+                int eq = pair.indexOf('=');
+                String name = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+                params.put(name, eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8"));
+            }
+        }
+
+        private static String readBody(InputStream in) throws IOException {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                body.write(buffer, 0, n);
+                if (body.size() > MAX_BODY_BYTES) {
+                    throw new IllegalArgumentException("Request body too large");
+                }
+            }
+            return new String(body.toByteArray(), StandardCharsets.UTF_8);
+        }
+
+        void stringArray(List<String> values) {
+            json.beginArray();
+            for (String value : values) {
+                json.value(value);
+            }
+            json.endArray();
+        }
+
+        void rosterEntry(RosterEntry entry) {
+            json.beginObject()
+                    .name("lastName").value(entry.getLastName())
+                    .name("firstName").value(entry.getFirstName())
+                    .name("status").value(entry.getStatus())
+                    .endObject();
+        }
+
+        void created() {
+            status = 201;
+            json.beginObject().name("created").value(true).endObject();
+        }
+
+        void noContent() {
+            status = 204;
+        }
+
+        void finish() throws IOException {
+            response.close();
+        }
+
+        /** Replaces the response with an error, unless part of it has already been sent. */
+        void error(int errorStatus, String message) {
+            try {
+                if (response.committed) {
+                    return; // The client sees a truncated body
+                }
+                response.discard();
+                status = errorStatus;
+                if (errorStatus == 503) {
+                    exchange.getResponseHeaders().set("Retry-After", "1");
+                }
+                new Json(response).beginObject().name("error").value(message).endObject();
+                response.close();
+            } catch (IOException e) {
+                System.err.println("Error sending error response: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Response body writer. Small responses are buffered and sent with a
+     * Content-Length; once the buffer fills, headers go out and the rest is
+     * streamed chunked. Routes read their rows into a list first, so a slow client
+     * holds only its request thread, never a pooled connection.
+     */
+    private static final class Response extends Writer {
+        private static final int BUFFER_CHARS = 64 * 1024;
+
+        private final Call call;
+        private final StringBuilder buffer = new StringBuilder();
+        private Writer stream;
+        boolean committed;
+        private boolean closed;
+
+        Response(Call call) {
+            this.call = call;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            if (stream != null) {
+                stream.write(chars, offset, length);
+                return;
+            }
+            buffer.append(chars, offset, length);
+            if (buffer.length() > BUFFER_CHARS) {
+                committed = true;
+                setContentType();
+                call.exchange.sendResponseHeaders(call.status, 0);
+                stream = new OutputStreamWriter(call.exchange.getResponseBody(), StandardCharsets.UTF_8);
+                stream.write(buffer.toString());
+                buffer.setLength(0);
+            }
+        }
+
+        @Override
+        public void write(String text) throws IOException {
+            if (stream != null) {
+                stream.write(text);
+            } else {
+                super.write(text);
+            }
+        }
+
+        void discard() {
+            buffer.setLength(0);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            if (stream != null) {
+                stream.flush();
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (stream != null) {
+                stream.close();
+                return;
+            }
+            committed = true;
+            if (call.status == 204) {
+                call.exchange.sendResponseHeaders(204, -1);
+                return;
+            }
+            byte[] body = buffer.toString().getBytes(StandardCharsets.UTF_8);
+            setContentType();
+            call.exchange.sendResponseHeaders(call.status, body.length);
+            try (OutputStream out = call.exchange.getResponseBody()) {
+                out.write(body);
+            }
+        }
+
+        private void setContentType() {
+            call.exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        }
+    }
+
+    /** Minimal streaming JSON writer; commas are inserted automatically. Write errors are rethrown unchecked. */
+    private static final class Json {
+        private final Writer out;
+        private final boolean[] hasElements = new boolean[32];
+        private int depth;
+        private boolean afterName;
+
+        Json(Writer out) {
+            this.out = out;
+        }
+
+        Json beginObject() {
+            return open('{');
+        }
+
+        Json endObject() {
+            return close('}');
+        }
+
+        Json beginArray() {
+            return open('[');
+        }
+
+        Json endArray() {
+            return close(']');
+        }
+
+        Json name(String name) {
+            separate();
+            string(name);
+            write(':');
+            afterName = true;
+            return this;
+        }
+
+        Json value(String value) {
+            separate();
+            if (value == null) {
+                write("null");
+            } else {
+                string(value);
+            }
+            return this;
+        }
+
+        Json value(long value) {
+            separate();
+            write(Long.toString(value));
+            return this;
+        }
+
+        Json value(boolean value) {
+            separate();
+            write(value ? "true" : "false");
+            return this;
+        }
+
+        private Json open(char bracket) {
+            separate();
+            write(bracket);
+            hasElements[++depth] = false;
+            return this;
+        }
+
+        private Json close(char bracket) {
+            write(bracket);
+            depth--;
+            return this;
+        }
+
+        private void separate() {
+            if (afterName) {
+                afterName = false;
+            } else if (depth > 0) {
+                if (hasElements[depth]) {
+                    write(',');
+                }
+                hasElements[depth] = true;
+            }
+        }
+
+        private void write(String text) {
+            try {
+                out.write(text);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void write(char c) {
+            try {
+                out.write(c);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private void string(String value) {
+            write('"');
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '"': write("\\\""); break;
+                    case '\\': write("\\\\"); break;
+                    case '\n': write("\\n"); break;
+                    case '\r': write("\\r"); break;
+                    case '\t': write("\\t"); break;
+                    default:
+                        if (c < 0x20) {
+                            write(String.format("\\u%04x", (int) c));
+                        } else {
+                            write(c);
+                        }
+                }
+            }
+            write('"');
+        }
+    }
+
+    // --- Command line ---
+
+    public static void main(String[] args) throws Exception {
+        String host = System.getProperty("scheduler.http.host", InetAddress.getLoopbackAddress().getHostAddress());
+        int port = Integer.getInteger("scheduler.http.port", 8080);
+        int metricsPort = Integer.getInteger("scheduler.metrics.port", 0);
+        for (String arg : args) {
+            if (arg.startsWith("--host=")) {
+                host = arg.substring("--host=".length());
+            } else if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--metricsPort=")) {
+                metricsPort = Integer.parseInt(arg.substring("--metricsPort=".length()));
+            } else {
+                System.err.println("Unrecognized argument: " + arg);
+                System.err.println("Usage: ApiServer [--host=localhost] [--port=8080] [--metricsPort=N]");
+                System.exit(2);
+            }
+        }
+        DBInitializer.initializeDatabase();
+        ApiServer server = new ApiServer(host, port);
+        MetricsExporter metrics = metricsPort > 0
+                ? new MetricsExporter(System.getProperty("scheduler.metrics.host", "localhost"), metricsPort)
+                : null;
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.stop(5);
+            if (metrics != null) {
+                metrics.stop();
+            }
+            DBConnection.closeConnection();
+        }, "api-shutdown"));
+        server.start();
+        if (metrics != null) {
+            metrics.start();
+        }
+    }
+}
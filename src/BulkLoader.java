@@ -0,0 +1,526 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Semester-start bulk load of students, classes and schedule rows through Derby's
+ * native import (SYSCS_UTIL.SYSCS_IMPORT_DATA), for loads too large for CsvImporter.
+ *
+ * Phases, each timed and reported:
+ * - validate and stage: read the input files, check every row against the table
+ *   limits and existing keys, decide each schedule row's status, and write the valid
+ *   rows to staging files in Derby's import format. Schedule rows are seated in file
+ *   order while the class has free seats and waitlisted after that, with waitlist
+ *   sequence numbers in file order.
+ * - import: one SYSCS_IMPORT_DATA call per table, then the classes' enrollment
+ *   counters are advanced. Staging and import are one transaction that holds
+ *   exclusive locks on the three tables, so the load is all or nothing and no
+ *   registration can slip in between the seat decisions and the import.
+ * - rebuild indexes (SYSCS_COMPRESS_TABLE) and refresh optimizer statistics
+ *   (SYSCS_UPDATE_STATISTICS) for each loaded table.
+ *
+ * Input columns, with or without a header line, as for CsvImporter:
+ * <pre>
+ * students: studentid,firstname,lastname
+ * classes:  semester,coursecode,seats      (semester and course must already exist)
+ * schedule: semester,studentid,coursecode  (the class and student must exist or be in this load)
+ * </pre>
+ * Invalid rows are written to FILE.rejects.csv; rows whose key already exists are skipped.
+ * All student IDs and classes, and the schedule keys of the semesters being loaded,
+ * are held in memory while staging.
+ *
+ * Usage (see the "bulkload" target in build.xml):
+ * <pre>
+ * java -cp ... BulkLoader [--students=FILE] [--classes=FILE] [--schedule=FILE] [--skipRebuild]
+ * </pre>
+ */
+public class BulkLoader {
+
+    private interface Phase {
+        /** @return Detail for the timing report, e.g. a row count. */
+        String run() throws IOException, SQLException;
+    }
+
+    private static final String[] SCHEDULE_COLUMNS = {"semester", "studentid", "coursecode"};
+
+    private final File studentsFile;
+    private final File classesFile;
+    private final File scheduleFile;
+    private final boolean rebuildIndexes;
+
+    // Staging state, read from the database and extended by the rows being loaded
+    private final Set<String> studentIds = new HashSet<>();
+    private final Map<String, int[]> freeSeats = new HashMap<>(); // semester + '\0' + course -> {free seats}
+    private final Map<String, Set<String>> enrollments = new HashMap<>(); // semester -> studentid + '\0' + course
+    private final Map<String, Integer> seatsTaken = new HashMap<>(); // class key -> newly scheduled rows
+    private final Map<String, long[]> nextWaitseq = new HashMap<>(); // class key -> {next waitlist number}
+
+    private long rejected;
+    private long skipped;
+
+    /**
+     * @param studentsFile   Students to load, or null.
+     * @param classesFile    Classes to load, or null.
+     * @param scheduleFile   Schedule rows to load, or null.
+     * @param rebuildIndexes Compress each loaded table afterwards, which rebuilds its indexes.
+     */
+    public BulkLoader(File studentsFile, File classesFile, File scheduleFile, boolean rebuildIndexes) {
+        this.studentsFile = studentsFile;
+        this.classesFile = classesFile;
+        this.scheduleFile = scheduleFile;
+        this.rebuildIndexes = rebuildIndexes;
+    }
+
+    /**
+     * Runs all phases. If staging or import fails, nothing is loaded.
+     * @throws SQLException if a database error occurs; the import is rolled back
+     */
+    public void run() throws IOException, SQLException {
+        File stageDir = Files.createTempDirectory("scheduler-bulkload").toFile();
+        File stagedStudents = new File(stageDir, "students.csv");
+        File stagedClasses = new File(stageDir, "classes.csv");
+        File stagedSchedule = new File(stageDir, "schedule.csv");
+        List<String> loadedTables = new ArrayList<>();
+        long start = System.nanoTime();
+        Connection conn = null;
+
+        try {
+            conn = DBConnection.getConnection();
+            final Connection c = conn;
+            phase("lock tables", () -> {
+                try (Statement stmt = c.createStatement()) {
+                    for (String table : new String[]{"STUDENTS", "CLASSES", "SCHEDULE"}) {
+                        stmt.execute("LOCK TABLE APP." + table + " IN EXCLUSIVE MODE");
+                    }
+                }
+                return "";
+            });
+            phase("read existing keys", () -> loadExistingKeys(c));
+
+            long[] counts = new long[3];
+            phase("validate and stage", () -> {
+                counts[0] = studentsFile == null ? 0 : stageStudents(studentsFile, stagedStudents);
+                counts[1] = classesFile == null ? 0 : stageClasses(c, classesFile, stagedClasses);
+                counts[2] = scheduleFile == null ? 0 : stageSchedule(c, scheduleFile, stagedSchedule);
+                return counts[0] + counts[1] + counts[2] + " rows staged, " + skipped + " skipped as existing, "
+                        + rejected + " rejected";
+            });
+
+            if (counts[0] > 0) {
+                phase("import APP.STUDENTS", () -> importTable(c, "STUDENTS", "STUDENTID,FIRSTNAME,LASTNAME",
+                        stagedStudents, counts[0]));
+                loadedTables.add("STUDENTS");
+            }
+            if (counts[1] > 0) {
+                phase("import APP.CLASSES", () -> importTable(c, "CLASSES", "SEMESTER,COURSECODE,SEATS",
+                        stagedClasses, counts[1]));
+                loadedTables.add("CLASSES");
+            }
+            if (counts[2] > 0) {
+                phase("import APP.SCHEDULE", () -> importTable(c, "SCHEDULE",
+                        "SEMESTER,STUDENTID,COURSECODE,STATUS,TIMESTAMP,WAITSEQ", stagedSchedule, counts[2]));
+                loadedTables.add("SCHEDULE");
+                phase("update enrollment counters", () -> updateEnrollment(c));
+            }
+            phase("commit", () -> {
+                c.commit();
+                return "";
+            });
+        } catch (SQLException | IOException | RuntimeException e) {
+            System.err.println("Bulk load failed, nothing was loaded: " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rbEx) {
+                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            DBConnection.release(conn);
+            for (File staged : new File[]{stagedStudents, stagedClasses, stagedSchedule, stageDir}) {
+                if (staged.exists() && !staged.delete()) {
+                    System.err.println("Could not delete staging file " + staged);
+                }
+            }
+        }
+
+        SemesterQueries.getReferenceCache().invalidateAll();
+        SemesterQueries.getSeatLedger().reconcile();
+
+        for (String table : loadedTables) {
+            if (rebuildIndexes) {
+                phase("rebuild indexes APP." + table,
+                        () -> callForTable("CALL SYSCS_UTIL.SYSCS_COMPRESS_TABLE('APP', ?, 1)", table));
+            }
+            phase("update statistics APP." + table,
+                    () -> callForTable("CALL SYSCS_UTIL.SYSCS_UPDATE_STATISTICS('APP', ?, NULL)", table));
+        }
+        System.out.printf("Bulk load finished in %.1f s%n", (System.nanoTime() - start) / 1e9);
+    }
+
+    private static void phase(String name, Phase phase) throws IOException, SQLException {
+        long start = System.nanoTime();
+        String detail = phase.run();
+        System.out.printf("  %-32s %8.2f s  %s%n", name, (System.nanoTime() - start) / 1e9, detail);
+    }
+
+    // --- Staging ---
+
+    private String loadExistingKeys(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
+            try (ResultSet rs = stmt.executeQuery("SELECT studentid FROM app.students")) {
+                while (rs.next()) {
+                    studentIds.add(rs.getString(1));
+                }
+            }
+            try (ResultSet rs = stmt.executeQuery("SELECT semester, coursecode, seats - enrolled FROM app.classes")) {
+                while (rs.next()) {
+                    freeSeats.put(classKey(rs.getString(1), rs.getString(2)), new int[]{Math.max(0, rs.getInt(3))});
+                }
+            }
+        }
+        return studentIds.size() + " students, " + freeSeats.size() + " classes";
+    }
+
+    private long stageStudents(File input, File staged) throws IOException {
+        long rows = 0;
+        try (StagingFiles files = new StagingFiles(input, staged)) {
+            String[] fields;
+            while ((fields = files.next(CsvImporter.Kind.STUDENTS.columns)) != null) {
+                String error = CsvImporter.validate(CsvImporter.Kind.STUDENTS, fields);
+                if (error != null) {
+                    files.reject(error);
+                } else if (!studentIds.add(fields[0])) {
+                    skipped++;
+                } else {
+                    files.stage(fields[0], fields[1], fields[2]);
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private long stageClasses(Connection conn, File input, File staged) throws IOException, SQLException {
+        Set<String> semesters = readColumn(conn, "SELECT semester FROM app.semester");
+        Set<String> courses = readColumn(conn, "SELECT coursecode FROM app.courses");
+        long rows = 0;
+        try (StagingFiles files = new StagingFiles(input, staged)) {
+            String[] fields;
+            while ((fields = files.next(CsvImporter.Kind.CLASSES.columns)) != null) {
+                String error = CsvImporter.validate(CsvImporter.Kind.CLASSES, fields);
+                String key = error == null ? classKey(fields[0], fields[1]) : null;
+                if (error != null) {
+                    files.reject(error);
+                } else if (!semesters.contains(fields[0])) {
+                    files.reject("No such semester");
+                } else if (!courses.contains(fields[1])) {
+                    files.reject("No such course");
+                } else if (freeSeats.containsKey(key)) {
+                    skipped++;
+                } else {
+                    int seats = Integer.parseInt(fields[2]);
+                    freeSeats.put(key, new int[]{seats});
+                    files.stage(fields[0], fields[1], String.valueOf(seats));
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    private long stageSchedule(Connection conn, File input, File staged) throws IOException, SQLException {
+        String timestamp = new Timestamp(System.currentTimeMillis()).toString();
+        long rows = 0;
+        try (StagingFiles files = new StagingFiles(input, staged)) {
+            String[] fields;
+            while ((fields = files.next(SCHEDULE_COLUMNS)) != null) {
+                String error = fields.length != SCHEDULE_COLUMNS.length
+                        ? "Expected 3 fields (semester,studentid,coursecode) but found " + fields.length
+                        : CsvImporter.firstError(CsvImporter.checkText(fields[0], "semester", 50),
+                                CsvImporter.checkText(fields[1], "studentid", 20),
+                                CsvImporter.checkText(fields[2], "coursecode", 10));
+                String key = error == null ? classKey(fields[0], fields[2]) : null;
+                if (error != null) {
+                    files.reject(error);
+                } else if (!freeSeats.containsKey(key)) {
+                    files.reject("Class " + fields[2] + " is not offered in " + fields[0]);
+                } else if (!studentIds.contains(fields[1])) {
+                    files.reject("No such student");
+                } else if (!enrollmentsOf(conn, fields[0]).add(fields[1] + '\u0000' + fields[2])) {
+                    skipped++;
+                } else {
+                    int[] free = freeSeats.get(key);
+                    if (free[0] > 0) {
+                        free[0]--;
+                        seatsTaken.merge(key, 1, Integer::sum);
+                        files.stage(fields[0], fields[1], fields[2], "scheduled", timestamp, null);
+                    } else {
+                        // The table locks keep the class's last number current for the whole load
+                        long[] next = nextWaitseq.get(key);
+                        if (next == null) {
+                            next = new long[]{Waitlist.nextNumber(conn, fields[0], fields[2])};
+                            nextWaitseq.put(key, next);
+                        }
+                        long sequence = next[0]++;
+                        files.stage(fields[0], fields[1], fields[2], "waitlisted", timestamp, String.valueOf(sequence));
+                    }
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /** Existing enrollments of a semester, read the first time the load touches it. */
+    private Set<String> enrollmentsOf(Connection conn, String semester) throws SQLException {
+        Set<String> keys = enrollments.get(semester);
+        if (keys == null) {
+            keys = new HashSet<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(
+                    "SELECT studentid, coursecode FROM app.schedule WHERE semester = ?")) {
+                pstmt.setString(1, semester);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        keys.add(rs.getString(1) + '\u0000' + rs.getString(2));
+                    }
+                }
+            }
+            enrollments.put(semester, keys);
+        }
+        return keys;
+    }
+
+    private static Set<String> readColumn(Connection conn, String sql) throws SQLException {
+        Set<String> values = new HashSet<>();
+        try (Statement stmt = conn.createStatement(); ResultSet rs = stmt.executeQuery(sql)) {
+            while (rs.next()) {
+                values.add(rs.getString(1));
+            }
+        }
+        return values;
+    }
+
+    private static String classKey(String semester, String courseCode) {
+        return semester + '\u0000' + courseCode;
+    }
+
+    // --- Import ---
+
+    private static String importTable(Connection conn, String table, String columns, File staged, long rows)
+            throws SQLException {
+        String sql = "CALL SYSCS_UTIL.SYSCS_IMPORT_DATA('APP', ?, ?, NULL, ?, ',', '\"', 'UTF-8', 0)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, table);
+            pstmt.setString(2, columns);
+            pstmt.setString(3, staged.getAbsolutePath());
+            pstmt.execute();
+        }
+        return rows + " rows";
+    }
+
+    private String updateEnrollment(Connection conn) throws SQLException {
+        String sql = "UPDATE app.classes SET enrolled = enrolled + ? WHERE semester = ? AND coursecode = ?";
+        int seated = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Map.Entry<String, Integer> entry : seatsTaken.entrySet()) {
+                String[] key = entry.getKey().split("\u0000", 2);
+                pstmt.setInt(1, entry.getValue());
+                pstmt.setString(2, key[0]);
+                pstmt.setString(3, key[1]);
+                pstmt.addBatch();
+                seated += entry.getValue();
+            }
+            pstmt.executeBatch();
+        }
+        return seated + " seats taken in " + seatsTaken.size() + " classes";
+    }
+
+    /** Runs a system procedure that takes an APP table name as its only parameter, in its own transaction. */
+    static String callForTable(String sql, String table) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DBConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, table);
+                pstmt.execute();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            System.err.println("Error maintaining APP." + table + ": " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rbEx) {
+                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            DBConnection.release(conn);
+        }
+        return "";
+    }
+
+    /**
+     * Reads one input file line by line and writes its staging file and, if needed,
+     * its rejects file.
+     */
+    private final class StagingFiles implements AutoCloseable {
+        private final File input;
+        private final BufferedReader in;
+        private final Writer out;
+        private Writer rejects;
+        private long lineNumber;
+        private String line;
+
+        StagingFiles(File input, File staged) throws IOException {
+            this.input = input;
+            this.in = new BufferedReader(new InputStreamReader(new FileInputStream(input), StandardCharsets.UTF_8), 1 << 16);
+            this.out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(staged), StandardCharsets.UTF_8), 1 << 16);
+            File rejectsFile = new File(input.getPath() + ".rejects.csv");
+            if (rejectsFile.exists() && !rejectsFile.delete()) {
+                throw new IOException("Cannot replace " + rejectsFile);
+            }
+        }
+
+        /** @return The fields of the next data line, or null at the end of the file. */
+        String[] next(String[] header) throws IOException {
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (lineNumber == 1 && !line.isEmpty() && line.charAt(0) == '\uFEFF') {
+                    line = line.substring(1); // Byte order mark
+                }
+                if (line.trim().isEmpty()) {
+                    continue;
+                }
+                String[] fields = CsvImporter.parseLine(line);
+                if (fields == null) {
+                    reject("Unterminated quoted field");
+                } else if (lineNumber != 1 || !isHeader(fields, header)) {
+                    return fields;
+                }
+            }
+            return null;
+        }
+
+        void stage(String... values) throws IOException {
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    out.write(',');
+                }
+                if (values[i] != null) { // An empty field imports as NULL
+                    out.write(CsvImporter.quote(values[i]));
+                }
+            }
+            out.write('\n');
+        }
+
+        void reject(String reason) throws IOException {
+            if (rejects == null) {
+                rejects = new BufferedWriter(new OutputStreamWriter(
+                        new FileOutputStream(input.getPath() + ".rejects.csv"), StandardCharsets.UTF_8));
+                rejects.write("line,reason,text\n");
+            }
+            rejects.write(lineNumber + "," + CsvImporter.quote(reason) + "," + CsvImporter.quote(line) + "\n");
+            rejected++;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+                out.close();
+            } finally {
+                if (rejects != null) {
+                    rejects.close();
+                    System.out.println("Rejected lines of " + input + ": " + input.getPath() + ".rejects.csv");
+                }
+            }
+        }
+    }
+
+    private static boolean isHeader(String[] fields, String[] columns) {
+        if (fields.length != columns.length) {
+            return false;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (!fields[i].equalsIgnoreCase(columns[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // --- Command line ---
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--")) {
+                usage("Unrecognized argument: " + arg);
+            }
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        Set<String> known = new LinkedHashSet<>(Arrays.asList("students", "classes", "schedule", "skipRebuild"));
+        if (!known.containsAll(options.keySet())) {
+            usage("Unknown option");
+        }
+        if (!options.containsKey("students") && !options.containsKey("classes") && !options.containsKey("schedule")) {
+            usage("Nothing to load");
+        }
+
+        // The load holds one connection from locking to commit, which may take minutes
+        if (System.getProperty("scheduler.pool.leakThresholdMs") == null) {
+            System.setProperty("scheduler.pool.leakThresholdMs", "0");
+        }
+
+        int exitCode = 0;
+        try {
+            BulkLoader loader = new BulkLoader(file(options, "students"), file(options, "classes"),
+                    file(options, "schedule"), !options.containsKey("skipRebuild"));
+            DBInitializer.initializeDatabase();
+            loader.run();
+        } catch (IOException | SQLException e) {
+            System.err.println("Bulk load failed: " + e.getMessage());
+            exitCode = 1;
+        } finally {
+            DBConnection.closeConnection();
+        }
+        System.exit(exitCode);
+    }
+
+    private static File file(Map<String, String> options, String name) {
+        return options.containsKey(name) ? new File(options.get(name)) : null;
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: BulkLoader [--students=FILE] [--classes=FILE] [--schedule=FILE] [--skipRebuild]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,50 @@
+/**
+ * A class offered in a semester: one row of APP.CLASSES joined with its course description.
+ * Immutable.
+ */
+public final class ClassOffering implements TableRow {
+
+    private final String semester;
+    private final String courseCode;
+    private final String description;
+    private final int seats;
+
+    public ClassOffering(String semester, String courseCode, String description, int seats) {
+        this.semester = semester;
+        this.courseCode = courseCode;
+        this.description = description;
+        this.seats = seats;
+    }
+
+    public String getSemester() {
+        return semester;
+    }
+
+    public String getCourseCode() {
+        return courseCode;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public int getSeats() {
+        return seats;
+    }
+
+    /** Columns: course code, description, seats. */
+    @Override
+    public Object getColumnValue(int column) {
+        switch (column) {
+            case 0: return courseCode;
+            case 1: return description;
+            case 2: return seats;
+            default: throw new IndexOutOfBoundsException("Column " + column);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return courseCode + " - " + description + " (" + seats + " seats)";
+    }
+}
@@ -0,0 +1,341 @@
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of JDBC connections used by {@link DBConnection}.
+ * Each borrower gets its own physical connection (and therefore its own Derby
+ * transaction), so background workers no longer serialize on one session.
+ * Calling close() on a borrowed connection returns it to the pool instead of
+ * closing the physical connection.
+ */
+public class ConnectionPool {
+
+    private static final Log LOG = Log.get(ConnectionPool.class);
+
+    private final String url;
+    private final String user;
+    private final String password;
+    private final int minSize;
+    private final int maxSize;
+    private final long borrowTimeoutMillis;
+    private final long leakThresholdMillis;
+    private final int validationTimeoutSeconds;
+
+    private final Semaphore permits;
+    private final LinkedBlockingDeque<Connection> idle = new LinkedBlockingDeque<>();
+    private final Map<Lease, Boolean> leased = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService leakDetector;
+    private volatile boolean closed = false;
+
+    // Statistics
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowWaitNanos = new AtomicLong();
+    private final AtomicLong borrowTimeouts = new AtomicLong();
+    private final AtomicLong connectionsCreated = new AtomicLong();
+    private final AtomicLong connectionsDiscarded = new AtomicLong();
+    private final AtomicLong leaksDetected = new AtomicLong();
+    private final LatencyHistogram waitTimes = new LatencyHistogram();
+
+    /**
+     * Creates the pool and opens {@code minSize} connections up front.
+     *
+     * @param url                      JDBC URL of the database.
+     * @param user                     Database user.
+     * @param password                 Database password.
+     * @param minSize                  Connections opened eagerly and kept idle.
+     * @param maxSize                  Maximum number of connections lent out at once.
+     * @param borrowTimeoutMillis      How long a borrower waits for a free connection.
+     * @param leakThresholdMillis      Borrow duration after which a lease is reported as a leak (0 disables).
+     * @param validationTimeoutSeconds Timeout for the isValid() check run on every borrow.
+     * @throws SQLException if the initial connections cannot be opened.
+     */
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+                          long borrowTimeoutMillis, long leakThresholdMillis, int validationTimeoutSeconds) throws SQLException {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be at least 1");
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.maxSize = maxSize;
+        this.minSize = Math.max(0, Math.min(minSize, maxSize));
+        this.borrowTimeoutMillis = borrowTimeoutMillis;
+        this.leakThresholdMillis = leakThresholdMillis;
+        this.validationTimeoutSeconds = validationTimeoutSeconds;
+        this.permits = new Semaphore(maxSize, true);
+
+        for (int i = 0; i < this.minSize; i++) {
+            idle.offerLast(openPhysical());
+        }
+
+        if (leakThresholdMillis > 0) {
+            leakDetector = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread t = new Thread(r, "ConnectionPool-leak-detector");
+                t.setDaemon(true);
+                return t;
+            });
+            long period = Math.max(1000L, leakThresholdMillis / 2);
+            leakDetector.scheduleAtFixedRate(this::detectLeaks, period, period, TimeUnit.MILLISECONDS);
+        } else {
+            leakDetector = null;
+        }
+    }
+
+    /**
+     * Borrows a connection, waiting up to the configured borrow timeout for one to
+     * become available. The returned connection has autocommit disabled and must be
+     * closed by the caller to return it to the pool.
+     *
+     * @return A validated connection wrapper.
+     * @throws SQLException if the pool is closed, the wait times out, or a new connection cannot be opened.
+     */
+    public Connection borrow() throws SQLException {
+        return borrow(null);
+    }
+
+    /**
+     * Borrows a connection for a named operation, whose calls, errors, connection
+     * wait and execution time are recorded in {@link QueryMetrics}.
+     *
+     * @param operation The operation name, or null to record nothing.
+     * @return A validated connection wrapper.
+     * @throws SQLException if the pool is closed, the wait times out, or a new connection cannot be opened.
+     */
+    public Connection borrow(String operation) throws SQLException {
+        if (closed) {
+            throw new SQLException("Connection pool is closed.");
+        }
+        long waitStart = System.nanoTime();
+        try {
+            if (!permits.tryAcquire(borrowTimeoutMillis, TimeUnit.MILLISECONDS)) {
+                borrowTimeouts.incrementAndGet();
+                throw new SQLTransientConnectionException("Timed out after " + borrowTimeoutMillis
+                        + " ms waiting for a database connection (pool max size " + maxSize + ").");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a database connection.", e);
+        } finally {
+            long waited = System.nanoTime() - waitStart;
+            waitTimes.record(waited);
+            borrowWaitNanos.addAndGet(waited);
+        }
+
+        try {
+            Connection physical = takeValidIdle();
+            if (physical == null) {
+                physical = openPhysical();
+            }
+            Lease lease = new Lease(physical, QueryMetrics.begin(operation, System.nanoTime() - waitStart));
+            leased.put(lease, Boolean.TRUE);
+            borrowCount.incrementAndGet();
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                    new Class<?>[]{Connection.class}, lease);
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Closes all idle connections and refuses further borrows. Connections that are
+     * still lent out are closed when their borrowers return them.
+     */
+    public void close() {
+        closed = true;
+        if (leakDetector != null) {
+            leakDetector.shutdownNow();
+        }
+        Connection conn;
+        while ((conn = idle.pollFirst()) != null) {
+            closePhysical(conn);
+        }
+        if (!leased.isEmpty()) {
+            LOG.warn("Connection pool closed with {} connection(s) still borrowed.", leased.size());
+        }
+    }
+
+    // --- Statistics ---
+
+    public int getMaxSize() { return maxSize; }
+    public int getMinSize() { return minSize; }
+    public int getActiveCount() { return leased.size(); }
+    public int getIdleCount() { return idle.size(); }
+    public int getWaitingThreads() { return permits.getQueueLength(); }
+    public long getBorrowCount() { return borrowCount.get(); }
+    public long getBorrowTimeouts() { return borrowTimeouts.get(); }
+    public long getConnectionsCreated() { return connectionsCreated.get(); }
+    public long getConnectionsDiscarded() { return connectionsDiscarded.get(); }
+    public long getLeaksDetected() { return leaksDetected.get(); }
+    public long getTotalBorrowWaitMillis() { return TimeUnit.NANOSECONDS.toMillis(borrowWaitNanos.get()); }
+    /** Time each borrow waited for a connection, including borrows that timed out. */
+    public LatencyHistogram getWaitHistogram() { return waitTimes; }
+
+    @Override
+    public String toString() {
+        return "ConnectionPool[active=" + getActiveCount() + ", idle=" + getIdleCount()
+                + ", max=" + maxSize + ", borrows=" + getBorrowCount()
+                + ", timeouts=" + getBorrowTimeouts() + ", created=" + getConnectionsCreated()
+                + ", discarded=" + getConnectionsDiscarded() + ", leaks=" + getLeaksDetected()
+                + ", totalWaitMs=" + getTotalBorrowWaitMillis() + "]";
+    }
+
+    // --- Internals ---
+
+    /**
+     * Takes the most recently used idle connection that still passes validation.
+     * Connections that fail validation are discarded.
+     */
+    private Connection takeValidIdle() {
+        Connection conn;
+        while ((conn = idle.pollFirst()) != null) {
+            try {
+                if (conn.isValid(validationTimeoutSeconds)) {
+                    return conn;
+                }
+            } catch (SQLException e) {
+                LOG.warn("Pooled connection failed validation: {}", e.getMessage());
+            }
+            connectionsDiscarded.incrementAndGet();
+            closePhysical(conn);
+        }
+        return null;
+    }
+
+    private Connection openPhysical() throws SQLException {
+        Connection conn = DriverManager.getConnection(url, user, password);
+        conn.setAutoCommit(false);
+        connectionsCreated.incrementAndGet();
+        return conn;
+    }
+
+    private void closePhysical(Connection conn) {
+        try {
+            if (!conn.isClosed()) {
+                if (!conn.getAutoCommit()) {
+                    conn.rollback();
+                }
+                conn.close();
+            }
+        } catch (SQLException e) {
+            LOG.warn("Error closing pooled connection: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Puts a connection back into the idle set. Any transaction the borrower left
+     * open is rolled back so the next borrower starts clean.
+     */
+    private void giveBack(Lease lease) {
+        leased.remove(lease);
+        if (lease.call != null) {
+            lease.call.finish();
+        }
+        Connection physical = lease.physical;
+        boolean reusable = !closed;
+        try {
+            if (physical.isClosed()) {
+                reusable = false;
+            } else {
+                if (!physical.getAutoCommit()) {
+                    physical.rollback();
+                } else {
+                    physical.setAutoCommit(false);
+                }
+            }
+        } catch (SQLException e) {
+            LOG.warn("Discarding pooled connection after reset failure: {}", e.getMessage());
+            reusable = false;
+        }
+
+        if (reusable) {
+            idle.offerFirst(physical);
+        } else {
+            connectionsDiscarded.incrementAndGet();
+            closePhysical(physical);
+        }
+        permits.release();
+    }
+
+    private void detectLeaks() {
+        long now = System.currentTimeMillis();
+        for (Lease lease : leased.keySet()) {
+            if (!lease.leakReported && now - lease.borrowedAt > leakThresholdMillis) {
+                lease.leakReported = true;
+                leaksDetected.incrementAndGet();
+                LOG.warn("Possible connection leak: connection borrowed by thread '{}' has not been returned after {} ms.",
+                        lease.borrowerThread, now - lease.borrowedAt, lease.borrowSite);
+            }
+        }
+    }
+
+    /**
+     * Tracks one borrow of a physical connection and acts as the invocation handler
+     * of the proxy handed to the borrower.
+     */
+    private final class Lease implements InvocationHandler {
+        private final Connection physical;
+        private final QueryMetrics.Call call; // Null if the borrow is not recorded
+        private final long borrowedAt = System.currentTimeMillis();
+        private final String borrowerThread = Thread.currentThread().getName();
+        private final Throwable borrowSite = new Throwable("Connection borrowed here");
+        private volatile boolean leakReported = false;
+        private volatile boolean returned = false;
+
+        Lease(Connection physical, QueryMetrics.Call call) {
+            this.physical = physical;
+            this.call = call;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            switch (name) {
+                case "close":
+                    synchronized (this) {
+                        if (!returned) {
+                            returned = true;
+                            giveBack(this);
+                        }
+                    }
+                    return null;
+                case "isClosed":
+                    return returned || physical.isClosed();
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "PooledConnection[" + physical + (returned ? ", returned" : "") + "]";
+                default:
+                    break;
+            }
+            if (returned) {
+                throw new SQLException("Connection has already been returned to the pool.");
+            }
+            try {
+                Object result = method.invoke(physical, args);
+                return call == null ? result : call.connectionCall(name, args, result);
+            } catch (InvocationTargetException e) {
+                if (call != null) {
+                    call.connectionCallFailed(name);
+                }
+                throw e.getCause();
+            }
+        }
+    }
+}
@@ -0,0 +1,762 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Headless bulk loader for students, courses and classes from CSV files.
+ *
+ * The file is streamed: a reader thread cuts it into batches of lines, a small pool
+ * of parser threads splits and validates them, and the calling thread writes the
+ * batches in file order. At most a few batches are in memory at once, whatever the
+ * file size. Each batch is one transaction. Rows whose key already exists (in the
+ * database or earlier in the file) are skipped. The rest are inserted as one JDBC
+ * batch. If that fails, the batch is retried one row at a time, each behind a
+ * savepoint, so a bad row is rejected without losing the good ones.
+ *
+ * Every batch also records the last line it covered in APP.IMPORT_PROGRESS, in the
+ * same transaction. An import that stops part way (crash, lock timeout, Ctrl-C)
+ * resumes after the last committed batch when it is run again on the same file.
+ * Rejected lines are written to FILE.rejects.csv with their line number and reason.
+ *
+ * Expected columns, with or without a header line:
+ * <pre>
+ * students: studentid,firstname,lastname
+ * courses:  coursecode,description
+ * classes:  semester,coursecode,seats   (semester and course must already exist)
+ * </pre>
+ * Fields may be quoted ("Smith, Jr.") with "" for a quote; a record must fit on one line.
+ *
+ * Usage (see the "import" target in build.xml):
+ * <pre>
+ * java -cp ... CsvImporter --type=students --file=students.csv [--batch=1000] [--threads=2] [--restart]
+ * </pre>
+ */
+public class CsvImporter {
+
+    /** What a file contains. Each line is one row of the matching table. */
+    public enum Kind {
+        STUDENTS("studentid", "firstname", "lastname"),
+        COURSES("coursecode", "description"),
+        CLASSES("semester", "coursecode", "seats");
+
+        final String[] columns;
+
+        Kind(String... columns) {
+            this.columns = columns;
+        }
+    }
+
+    /** Totals for one run of the importer. */
+    public static final class Result {
+        /** Line the run started after; non-zero when it resumed an interrupted import. */
+        public final long resumedAfterLine;
+        public final long lines;
+        public final long imported;
+        public final long skipped;
+        public final long rejected;
+        public final double seconds;
+
+        Result(long resumedAfterLine, long lines, long imported, long skipped, long rejected, double seconds) {
+            this.resumedAfterLine = resumedAfterLine;
+            this.lines = lines;
+            this.imported = imported;
+            this.skipped = skipped;
+            this.rejected = rejected;
+            this.seconds = seconds;
+        }
+
+        public double getRowsPerSecond() {
+            return seconds > 0 ? lines / seconds : 0.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d lines in %.1f s (%.0f rows/s): %d imported, %d skipped as existing, %d rejected",
+                    lines, seconds, getRowsPerSecond(), imported, skipped, rejected);
+        }
+    }
+
+    private static final int MAX_KEY_LENGTH = 500;
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /** A line that passed parsing and validation. */
+    private static final class Row {
+        final long line;
+        final String[] fields;
+        final String text;
+
+        Row(long line, String[] fields, String text) {
+            this.line = line;
+            this.fields = fields;
+            this.text = text;
+        }
+    }
+
+    private static final class Reject {
+        final long line;
+        final String reason;
+        final String text;
+
+        Reject(long line, String reason, String text) {
+            this.line = line;
+            this.reason = reason;
+            this.text = text;
+        }
+    }
+
+    /** Consecutive lines of the file, handed from the reader to a parser and then to the writer. */
+    private static final class Batch {
+        final long firstLine;
+        final long lastLine;
+        final List<String> lines; // Cleared once parsed
+        final List<Row> rows = new ArrayList<>();
+        final List<Reject> rejects = new ArrayList<>();
+
+        Batch(long firstLine, List<String> lines) {
+            this.firstLine = firstLine;
+            this.lastLine = firstLine + lines.size() - 1;
+            this.lines = lines;
+        }
+    }
+
+    /** Marks the end of the file in the queue of parsed batches. */
+    private static final Future<Batch> END_OF_FILE = new FutureTask<>(() -> null);
+
+    private final Kind kind;
+    private final File file;
+    private final int batchSize;
+    private final int parserThreads;
+    private final boolean restart;
+    private final String importKey;
+
+    // Totals as recorded in APP.IMPORT_PROGRESS, including earlier interrupted runs
+    private long lastLine;
+    private long imported;
+    private long skipped;
+    private long rejected;
+
+    private volatile IOException readError;
+    private Writer rejectsWriter;
+
+    /**
+     * @param batchSize     Lines per transaction.
+     * @param parserThreads Threads that split and validate lines.
+     * @param restart       Start from the top even if an earlier import of this file was interrupted.
+     */
+    public CsvImporter(Kind kind, File file, int batchSize, int parserThreads, boolean restart) throws IOException {
+        if (batchSize < 1 || parserThreads < 1) {
+            throw new IllegalArgumentException("batchSize and parserThreads must be positive");
+        }
+        this.kind = kind;
+        this.file = file.getCanonicalFile();
+        this.batchSize = batchSize;
+        this.parserThreads = parserThreads;
+        this.restart = restart;
+        String path = this.file.getPath();
+        String prefix = kind.name().toLowerCase() + ":";
+        int room = MAX_KEY_LENGTH - prefix.length();
+        this.importKey = prefix + (path.length() > room ? path.substring(path.length() - room) : path);
+    }
+
+    /**
+     * Imports the file, resuming an interrupted import of it unless restart was requested.
+     * @throws SQLException if a batch fails as a whole (e.g. a lock timeout); the
+     *                      batches before it stay committed and a rerun resumes after them
+     */
+    public Result run() throws IOException, SQLException, InterruptedException {
+        long fileSize = file.length();
+        long resumedAfterLine = loadProgress(fileSize);
+        long startImported = imported;
+        long startSkipped = skipped;
+        long startRejected = rejected;
+        long start = System.nanoTime();
+        long nextReport = start + REPORT_INTERVAL_NANOS;
+
+        AtomicInteger parserCount = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(parserThreads, r -> {
+            Thread t = new Thread(r, "CsvImporter-parser-" + parserCount.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        // Bounds memory: the reader blocks once this many batches are waiting to be written
+        BlockingQueue<Future<Batch>> pending = new ArrayBlockingQueue<>(parserThreads * 2);
+        Thread reader = new Thread(() -> {
+            try {
+                try {
+                    readBatches(resumedAfterLine, parsers, pending);
+                } catch (IOException e) {
+                    readError = e;
+                }
+                pending.put(END_OF_FILE);
+            } catch (InterruptedException e) {
+                // The writer gave up; nobody is waiting for more batches
+            }
+        }, "CsvImporter-reader");
+        reader.setDaemon(true);
+        reader.start();
+
+        try {
+            openRejects(resumedAfterLine > 0);
+            while (true) {
+                Future<Batch> next = pending.take();
+                if (next == END_OF_FILE) {
+                    break;
+                }
+                write(getParsed(next), fileSize);
+                if (System.nanoTime() - nextReport >= 0) {
+                    nextReport += REPORT_INTERVAL_NANOS;
+                    double seconds = (System.nanoTime() - start) / 1e9;
+                    System.out.printf("  line %d: %d imported, %d skipped, %d rejected (%.0f rows/s)%n",
+                            lastLine, imported, skipped, rejected, (lastLine - resumedAfterLine) / seconds);
+                }
+            }
+            if (readError != null) {
+                throw readError;
+            }
+            markCompleted(fileSize);
+        } finally {
+            reader.interrupt();
+            parsers.shutdownNow();
+            closeRejects();
+        }
+
+        Result result = new Result(resumedAfterLine, lastLine - resumedAfterLine, imported - startImported,
+                skipped - startSkipped, rejected - startRejected, (System.nanoTime() - start) / 1e9);
+        if (kind == Kind.CLASSES || kind == Kind.COURSES) {
+            SemesterQueries.getReferenceCache().invalidateAll();
+        }
+        return result;
+    }
+
+    private static Batch getParsed(Future<Batch> parsed) throws InterruptedException {
+        try {
+            return parsed.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("CSV parser failed", e.getCause());
+        }
+    }
+
+    // --- Reading and parsing (reader and parser threads) ---
+
+    private void readBatches(long skipThroughLine, ExecutorService parsers, BlockingQueue<Future<Batch>> pending)
+            throws IOException, InterruptedException {
+        try (BufferedReader in = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            long lineNumber = 0;
+            List<String> lines = new ArrayList<>(batchSize);
+            long firstLine = skipThroughLine + 1;
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (++lineNumber <= skipThroughLine) {
+                    continue;
+                }
+                lines.add(line);
+                if (lines.size() == batchSize) {
+                    Batch batch = new Batch(firstLine, lines);
+                    pending.put(parsers.submit(() -> parse(batch)));
+                    firstLine = lineNumber + 1;
+                    lines = new ArrayList<>(batchSize);
+                }
+            }
+            if (!lines.isEmpty()) {
+                Batch batch = new Batch(firstLine, lines);
+                pending.put(parsers.submit(() -> parse(batch)));
+            }
+        }
+    }
+
+    private Batch parse(Batch batch) {
+        for (int i = 0; i < batch.lines.size(); i++) {
+            long lineNumber = batch.firstLine + i;
+            String text = batch.lines.get(i);
+            if (lineNumber == 1 && !text.isEmpty() && text.charAt(0) == '\uFEFF') {
+                text = text.substring(1); // Byte order mark
+            }
+            if (text.trim().isEmpty()) {
+                continue;
+            }
+            String[] fields = parseLine(text);
+            if (fields == null) {
+                batch.rejects.add(new Reject(lineNumber, "Unterminated quoted field", text));
+                continue;
+            }
+            if (lineNumber == 1 && isHeader(fields)) {
+                continue;
+            }
+            String error = validate(kind, fields);
+            if (error != null) {
+                batch.rejects.add(new Reject(lineNumber, error, text));
+            } else {
+                batch.rows.add(new Row(lineNumber, fields, text));
+            }
+        }
+        batch.lines.clear();
+        return batch;
+    }
+
+    /**
+     * Splits one CSV record. Fields are trimmed; a field that starts with a quote
+     * runs to the matching closing quote, with "" standing for a literal quote.
+     * @return The fields, or null if a quoted field is not closed.
+     */
+    static String[] parseLine(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        boolean fieldStarted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c != '"') {
+                    field.append(c);
+                } else if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else {
+                    quoted = false;
+                }
+            } else if (c == ',') {
+                fields.add(field.toString().trim());
+                field.setLength(0);
+                fieldStarted = false;
+            } else if (c == '"' && !fieldStarted) {
+                quoted = true;
+                fieldStarted = true;
+                field.setLength(0); // Drop whitespace before the opening quote
+            } else {
+                field.append(c);
+                fieldStarted |= !Character.isWhitespace(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString().trim());
+        return fields.toArray(new String[0]);
+    }
+
+    private boolean isHeader(String[] fields) {
+        if (fields.length != kind.columns.length) {
+            return false;
+        }
+        for (int i = 0; i < fields.length; i++) {
+            if (!fields[i].equalsIgnoreCase(kind.columns[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** @return Why the row cannot be imported, or null if it is valid. Limits match the table definitions. */
+    static String validate(Kind kind, String[] fields) {
+        if (fields.length != kind.columns.length) {
+            return "Expected " + kind.columns.length + " fields (" + String.join(",", kind.columns)
+                    + ") but found " + fields.length;
+        }
+        switch (kind) {
+            case STUDENTS:
+                return firstError(checkText(fields[0], "studentid", 20), checkText(fields[1], "firstname", 50),
+                        checkText(fields[2], "lastname", 50));
+            case COURSES:
+                return firstError(checkText(fields[0], "coursecode", 10), checkText(fields[1], "description", 100));
+            case CLASSES:
+                String error = firstError(checkText(fields[0], "semester", 50), checkText(fields[1], "coursecode", 10));
+                if (error != null) {
+                    return error;
+                }
+                try {
+                    if (Integer.parseInt(fields[2]) < 1) {
+                        return "seats must be positive";
+                    }
+                } catch (NumberFormatException e) {
+                    return "seats is not a number: " + fields[2];
+                }
+                return null;
+            default:
+                throw new IllegalStateException("Unknown kind " + kind);
+        }
+    }
+
+    static String checkText(String value, String column, int maxLength) {
+        if (value.isEmpty()) {
+            return column + " is empty";
+        }
+        if (value.length() > maxLength) {
+            return column + " is longer than " + maxLength + " characters";
+        }
+        return null;
+    }
+
+    static String firstError(String... errors) {
+        for (String error : errors) {
+            if (error != null) {
+                return error;
+            }
+        }
+        return null;
+    }
+
+    // --- Writing (calling thread) ---
+
+    private String key(String[] fields) {
+        return kind == Kind.CLASSES ? fields[0] + '\u0000' + fields[1] : fields[0];
+    }
+
+    private String insertSql() {
+        switch (kind) {
+            case STUDENTS: return "INSERT INTO app.students (studentid, firstname, lastname) VALUES (?, ?, ?)";
+            case COURSES: return "INSERT INTO app.courses (coursecode, description) VALUES (?, ?)";
+            case CLASSES: return "INSERT INTO app.classes (semester, coursecode, seats) VALUES (?, ?, ?)";
+            default: throw new IllegalStateException("Unknown kind " + kind);
+        }
+    }
+
+    private void bind(PreparedStatement insert, String[] fields) throws SQLException {
+        for (int i = 0; i < fields.length; i++) {
+            if (kind == Kind.CLASSES && i == 2) {
+                insert.setInt(3, Integer.parseInt(fields[2]));
+            } else {
+                insert.setString(i + 1, fields[i]);
+            }
+        }
+    }
+
+    /**
+     * Keys of the batch's rows that are already in the database, one primary key
+     * lookup each. A large IN list would be cheaper in theory, but its plan is
+     * compiled while the table is still small and turns into a table scan that
+     * grows with every batch.
+     */
+    private Set<String> existingKeys(Connection conn, List<Row> rows) throws SQLException {
+        String sql;
+        switch (kind) {
+            case STUDENTS: sql = "SELECT 1 FROM app.students WHERE studentid = ?"; break;
+            case COURSES: sql = "SELECT 1 FROM app.courses WHERE coursecode = ?"; break;
+            case CLASSES: sql = "SELECT 1 FROM app.classes WHERE semester = ? AND coursecode = ?"; break;
+            default: throw new IllegalStateException("Unknown kind " + kind);
+        }
+        Set<String> existing = new HashSet<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            for (Row row : rows) {
+                pstmt.setString(1, row.fields[0]);
+                if (kind == Kind.CLASSES) {
+                    pstmt.setString(2, row.fields[1]);
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        existing.add(key(row.fields));
+                    }
+                }
+            }
+        }
+        return existing;
+    }
+
+    /** Derby rolls back the whole transaction on these (deadlock, lock timeout, lost connection). */
+    private static boolean endsTransaction(SQLException e) {
+        String state = e.getSQLState();
+        return (state != null && (state.startsWith("40") || state.startsWith("08"))) || e.getErrorCode() >= 30000;
+    }
+
+    private void write(Batch batch, long fileSize) throws SQLException, IOException {
+        List<Reject> rejects = new ArrayList<>(batch.rejects);
+        List<Row> inserted = new ArrayList<>();
+        int skippedRows = 0;
+        SeatLedger ledger = SemesterQueries.getSeatLedger();
+        List<SeatLedger.Update> seatUpdates = new ArrayList<>();
+        Connection conn = null;
+
+        try {
+            conn = DBConnection.getConnection();
+            Set<String> existing = existingKeys(conn, batch.rows);
+            Set<String> batchKeys = new HashSet<>();
+            List<Row> toInsert = new ArrayList<>();
+            for (Row row : batch.rows) {
+                String key = key(row.fields);
+                if (existing.contains(key) || !batchKeys.add(key)) {
+                    skippedRows++;
+                } else {
+                    toInsert.add(row);
+                }
+            }
+
+            if (!toInsert.isEmpty()) {
+                try (PreparedStatement insert = conn.prepareStatement(insertSql())) {
+                    Savepoint beforeBatch = conn.setSavepoint();
+                    try {
+                        for (Row row : toInsert) {
+                            bind(insert, row.fields);
+                            insert.addBatch();
+                        }
+                        insert.executeBatch();
+                        inserted.addAll(toInsert);
+                    } catch (SQLException e) {
+                        if (endsTransaction(e)) {
+                            throw e;
+                        }
+                        // A row was refused (e.g. unknown semester): redo the batch row by row
+                        conn.rollback(beforeBatch);
+                        insert.clearBatch();
+                        for (Row row : toInsert) {
+                            Savepoint beforeRow = conn.setSavepoint();
+                            try {
+                                bind(insert, row.fields);
+                                insert.executeUpdate();
+                                conn.releaseSavepoint(beforeRow);
+                                inserted.add(row);
+                            } catch (SQLException rowError) {
+                                if (endsTransaction(rowError)) {
+                                    throw rowError;
+                                }
+                                conn.rollback(beforeRow);
+                                rejects.add(new Reject(row.line, "23503".equals(rowError.getSQLState())
+                                        ? "Semester or course does not exist" : rowError.getMessage(), row.text));
+                            }
+                        }
+                    }
+                }
+            }
+            if (kind == Kind.CLASSES) {
+                for (Row row : inserted) {
+                    seatUpdates.add(ledger.added(row.fields[0], row.fields[1], Integer.parseInt(row.fields[2]),
+                            ledger.nextStamp()));
+                }
+            }
+
+            saveProgress(conn, fileSize, batch.lastLine, imported + inserted.size(), skipped + skippedRows,
+                    rejected + rejects.size(), false);
+            conn.commit();
+        } catch (SQLException e) {
+            System.err.println("Error importing lines " + batch.firstLine + "-" + batch.lastLine + ": " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rbEx) {
+                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            DBConnection.release(conn);
+        }
+
+        lastLine = batch.lastLine;
+        imported += inserted.size();
+        skipped += skippedRows;
+        rejected += rejects.size();
+        ledger.publishAll(seatUpdates);
+        writeRejects(rejects);
+    }
+
+    // --- Progress and rejects ---
+
+    /**
+     * Reads this file's progress row and decides where to start.
+     * @return The last line already imported, or 0 to start from the top.
+     */
+    private long loadProgress(long fileSize) throws SQLException {
+        String sql = "SELECT file_size, last_line, imported, skipped, rejected, completed " +
+                     "FROM app.import_progress WHERE import_key = ?";
+        Connection conn = null;
+        try {
+            conn = DBConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, importKey);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next() && !rs.getBoolean("completed") && !restart) {
+                        if (rs.getLong("file_size") == fileSize) {
+                            lastLine = rs.getLong("last_line");
+                            imported = rs.getLong("imported");
+                            skipped = rs.getLong("skipped");
+                            rejected = rs.getLong("rejected");
+                            System.out.println("Resuming interrupted import of " + file + " after line " + lastLine);
+                        } else {
+                            System.out.println("File changed since its import was interrupted; starting over: " + file);
+                        }
+                    }
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            System.err.println("Error reading import progress: " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rbEx) {
+                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            DBConnection.release(conn);
+        }
+        return lastLine;
+    }
+
+    private void saveProgress(Connection conn, long fileSize, long line, long importedRows, long skippedRows,
+                              long rejectedRows, boolean completed) throws SQLException {
+        String sqlUpdate = "UPDATE app.import_progress SET import_type = ?, file_size = ?, last_line = ?, " +
+                           "imported = ?, skipped = ?, rejected = ?, completed = ?, updated_at = CURRENT_TIMESTAMP " +
+                           "WHERE import_key = ?";
+        String sqlInsert = "INSERT INTO app.import_progress (import_type, file_size, last_line, imported, skipped, " +
+                           "rejected, completed, updated_at, import_key) VALUES (?, ?, ?, ?, ?, ?, ?, CURRENT_TIMESTAMP, ?)";
+        for (String sql : new String[]{sqlUpdate, sqlInsert}) {
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, kind.name().toLowerCase());
+                pstmt.setLong(2, fileSize);
+                pstmt.setLong(3, line);
+                pstmt.setLong(4, importedRows);
+                pstmt.setLong(5, skippedRows);
+                pstmt.setLong(6, rejectedRows);
+                pstmt.setBoolean(7, completed);
+                pstmt.setString(8, importKey);
+                if (pstmt.executeUpdate() > 0) {
+                    return;
+                }
+            }
+        }
+    }
+
+    private void markCompleted(long fileSize) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DBConnection.getConnection();
+            saveProgress(conn, fileSize, lastLine, imported, skipped, rejected, true);
+            conn.commit();
+        } catch (SQLException e) {
+            System.err.println("Error recording import progress: " + e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rbEx) {
+                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            DBConnection.release(conn);
+        }
+    }
+
+    /** The rejects file of a resumed import is appended to; a fresh import replaces it once it has a reject. */
+    private void openRejects(boolean append) throws IOException {
+        File rejectsFile = getRejectsFile();
+        if (!append && rejectsFile.exists() && !rejectsFile.delete()) {
+            throw new IOException("Cannot replace " + rejectsFile);
+        }
+    }
+
+    private void writeRejects(List<Reject> rejects) throws IOException {
+        if (rejects.isEmpty()) {
+            return;
+        }
+        if (rejectsWriter == null) {
+            File rejectsFile = getRejectsFile();
+            boolean isNew = !rejectsFile.exists();
+            rejectsWriter = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(rejectsFile, true), StandardCharsets.UTF_8));
+            if (isNew) {
+                rejectsWriter.write("line,reason,text\n");
+            }
+        }
+        for (Reject reject : rejects) {
+            rejectsWriter.write(reject.line + "," + quote(reject.reason) + "," + quote(reject.text) + "\n");
+        }
+        rejectsWriter.flush();
+    }
+
+    private void closeRejects() {
+        if (rejectsWriter != null) {
+            try {
+                rejectsWriter.close();
+            } catch (IOException e) {
+                System.err.println("Error closing rejects file: " + e.getMessage());
+            }
+            rejectsWriter = null;
+        }
+    }
+
+    public File getRejectsFile() {
+        return new File(file.getPath() + ".rejects.csv");
+    }
+
+    static String quote(String value) {
+        return "\"" + (value == null ? "" : value.replace("\"", "\"\"")) + "\"";
+    }
+
+    // --- Command line ---
+
+    public static void main(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--")) {
+                usage("Unrecognized argument: " + arg);
+            }
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        if (!options.containsKey("type") || !options.containsKey("file")) {
+            usage("--type and --file are required");
+        }
+
+        int exitCode = 0;
+        try {
+            Kind kind = Kind.valueOf(options.get("type").toUpperCase());
+            int batch = Integer.parseInt(options.getOrDefault("batch", "1000"));
+            int threads = Integer.parseInt(options.getOrDefault("threads",
+                    String.valueOf(Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1)))));
+            CsvImporter importer = new CsvImporter(kind, new File(options.get("file")), batch, threads,
+                    options.containsKey("restart"));
+
+            DBInitializer.initializeDatabase();
+            System.out.println("Importing " + kind.name().toLowerCase() + " from " + importer.file
+                    + " (batch " + batch + ", " + threads + " parser thread(s))");
+            Result result = importer.run();
+            System.out.println("Import finished: " + result);
+            if (result.rejected > 0) {
+                System.out.println("Rejected lines: " + importer.getRejectsFile());
+            }
+        } catch (IllegalArgumentException e) {
+            usage(e.getMessage());
+        } catch (IOException | SQLException | InterruptedException e) {
+            System.err.println("Import failed: " + e.getMessage() + ". Run again to resume after the last committed batch.");
+            exitCode = 1;
+        } finally {
+            DBConnection.closeConnection();
+        }
+        System.exit(exitCode);
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: CsvImporter --type=students|courses|classes --file=FILE [--batch=1000] [--threads=N] [--restart]");
+        System.exit(2);
+    }
+}
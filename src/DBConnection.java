@@ -2,154 +2,330 @@
  * Provides and manages the database connection.
  */
 import java.io.File;
+import java.lang.reflect.InvocationTargetException;
+import java.net.InetAddress;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException; // Import File for separator
-// Import logging (optional, using System.out/err for simplicity here)
-// import java.util.logging.Level;
-// import java.util.logging.Logger;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
- * Handles the database connection for the Course Scheduler application.
- * Uses a singleton pattern to maintain a single connection instance.
+ * Handles the database connections for the Course Scheduler application.
+ * Connections are lent out from a bounded {@link ConnectionPool}; every caller
+ * gets its own connection and must close it (try-with-resources or
+ * {@link #release(Connection)}) to return it to the pool.
+ *
+ * The scheduler.db.mode system property selects how the database is reached:
+ * <ul>
+ * <li>embedded (default): the database engine runs in this process, which must be
+ * the only one using the database directory.</li>
+ * <li>server: as embedded, and this process also starts a Derby network server so
+ * other instances can share the database in client mode.</li>
+ * <li>client: connect to a Derby network server through the client driver.</li>
+ * </ul>
+ * scheduler.db.host and scheduler.db.port give the network server's address (default
+ * localhost:1527; in server mode the host is the address to listen on) and
+ * scheduler.db.name the database name, which the server resolves against its
+ * derby.system.home directory. The whole URL can instead be set with scheduler.db.url.
+ * Pool settings can be overridden with system properties:
+ * scheduler.pool.minSize, scheduler.pool.maxSize, scheduler.pool.borrowTimeoutMs,
+ * scheduler.pool.leakThresholdMs and scheduler.pool.validationTimeoutSec.
+ * While the pool is open its statistics are published over JMX; see {@link SchedulerMBeans}.
  *
  * @author acv (Original)
  * @author Gemini (Refactored)
  */
 public class DBConnection {
-    // private static final Logger LOGGER = Logger.getLogger(DBConnection.class.getName()); // Optional: Use Java Util Logging
-    private static Connection connection = null; // Initialize to null
-    private static final Object connectionLock = new Object(); // Lock object for thread safety
+    private static final Log LOG = Log.get(DBConnection.class);
+    private static volatile ConnectionPool pool = null;
+    private static final Object connectionLock = new Object(); // Guards pool creation and shutdown only
+    private static final List<Runnable> closeListeners = new CopyOnWriteArrayList<>();
 
     // TODO: Move these credentials to a secure configuration file or environment variables
     private static final String USER = "java";
     private static final String PASSWORD = "java";
+    private static final String DEFAULT_DATABASE_NAME = "CourseSchedulerDBWaleBogunjoko944905508";
+    private static final String DEFAULT_HOST = "localhost";
+    private static final int DEFAULT_PORT = 1527;
+    private static final long SERVER_START_TIMEOUT_MS = 10000;
+
     // Support both embedded mode and network mode
+    private static final String MODE;
     private static final String DATABASE_URL;
+    private static Object networkServer = null; // NetworkServerControl, guarded by connectionLock
+
+    // Pool configuration defaults
+    private static final int DEFAULT_MIN_POOL_SIZE = 1;
+    private static final int DEFAULT_MAX_POOL_SIZE = 8;
+    private static final long DEFAULT_BORROW_TIMEOUT_MS = 10000;
+    private static final long DEFAULT_LEAK_THRESHOLD_MS = 30000;
+    private static final int DEFAULT_VALIDATION_TIMEOUT_SEC = 2;
 
     static {
         // Initialize the database URL based on environment
-        // Use File.separator for platform independence
-        String dbPath = System.getProperty("user.dir") + File.separator + "CourseSchedulerDBWaleBogunjoko944905508";
-        DATABASE_URL = "jdbc:derby:" + dbPath + ";create=true";
-        System.out.println("Database URL set to: " + DATABASE_URL); // Log the URL being used
+        String mode = stringProperty("scheduler.db.mode", "embedded").toLowerCase();
+        if (!mode.equals("embedded") && !mode.equals("server") && !mode.equals("client")) {
+            LOG.warn("Ignoring invalid value for scheduler.db.mode: {} (expected embedded, server or client)", mode);
+            mode = "embedded";
+        }
+        MODE = mode;
+        String name = stringProperty("scheduler.db.name", DEFAULT_DATABASE_NAME);
+        String configuredUrl = System.getProperty("scheduler.db.url");
+        if (configuredUrl != null && !configuredUrl.trim().isEmpty()) {
+            DATABASE_URL = configuredUrl.trim();
+        } else if (MODE.equals("client")) {
+            DATABASE_URL = "jdbc:derby://" + stringProperty("scheduler.db.host", DEFAULT_HOST) + ":"
+                    + intProperty("scheduler.db.port", DEFAULT_PORT) + "/" + name + ";create=true";
+        } else {
+            // The network server resolves names against derby.system.home, so keep this process on the same directory
+            String home = System.getProperty("derby.system.home", System.getProperty("user.dir"));
+            // Use File.separator for platform independence
+            DATABASE_URL = "jdbc:derby:" + home + File.separator + name + ";create=true";
+        }
+        LOG.info("Database URL set to: {} (mode {})", DATABASE_URL, MODE); // Log the URL being used
     }
 
     /**
-     * Gets the singleton database connection instance.
-     * If the connection doesn't exist or is closed, it attempts to create a new one.
-     * Sets autocommit to false on the connection.
-     * This method is thread-safe.
+     * Borrows a connection from the pool, creating the pool on first use.
+     * The connection has autocommit disabled. Closing it returns it to the pool
+     * and rolls back anything that was not committed.
+     * This method is thread-safe and does not serialize callers once the pool exists.
      *
-     * @return The active database connection.
-     * @throws SQLException if a database access error occurs, including initialization failures.
+     * @return A pooled database connection.
+     * @throws SQLException if a database access error occurs, including initialization failures
+     *                      or a timeout while waiting for a free connection.
      */
     public static Connection getConnection() throws SQLException {
-        // Log entry into the method
-        System.out.println("DBConnection.getConnection() called by thread: " + Thread.currentThread().getName());
-        // LOGGER.log(Level.INFO, "getConnection() called by thread: {0}", Thread.currentThread().getName()); // Optional JUL
+        return getConnection(null);
+    }
+
+    /**
+     * Borrows a connection for a named operation, e.g. the SemesterQueries method
+     * using it. Its calls, errors, connection wait and execution time are recorded
+     * in {@link QueryMetrics}, and its slow statements are logged.
+     *
+     * @param operation The operation name, or null for an unnamed borrow.
+     * @return A pooled database connection.
+     * @throws SQLException as {@link #getConnection()}.
+     */
+    public static Connection getConnection(String operation) throws SQLException {
+        Object event = Tracing.beginGetConnection(); // Covers pool creation and the wait for a free connection
+        try {
+            return getPool().borrow(operation);
+        } finally {
+            Tracing.endGetConnection(event, operation);
+        }
+    }
+
+    /**
+     * Returns a connection obtained from {@link #getConnection()} to the pool.
+     * Safe to call with null or with a connection that was already returned.
+     *
+     * @param conn The connection to release.
+     */
+    public static void release(Connection conn) {
+        if (conn == null) {
+            return;
+        }
+        try {
+            conn.close();
+        } catch (SQLException e) {
+            LOG.error("Error returning connection to pool: {}", e.getMessage());
+        }
+    }
 
+    /**
+     * Gets the connection pool, creating it if necessary.
+     *
+     * @return The active connection pool.
+     * @throws SQLException if the pool's initial connections cannot be opened.
+     */
+    public static ConnectionPool getPool() throws SQLException {
+        ConnectionPool current = pool;
+        if (current != null) {
+            return current;
+        }
         synchronized (connectionLock) {
-            boolean needsNewConnection = false;
-            if (connection == null) {
-                System.out.println("Connection is null. Attempting to create a new one.");
-                // LOGGER.info("Connection is null. Attempting to create a new one."); // Optional JUL
-                needsNewConnection = true;
-            } else {
+            if (pool == null) {
                 try {
-                    if (connection.isClosed()) {
-                        System.out.println("Connection is closed. Attempting to create a new one.");
-                        // LOGGER.info("Connection is closed. Attempting to create a new one."); // Optional JUL
-                        needsNewConnection = true;
-                    } else {
-                        System.out.println("Existing connection is open. Verifying autocommit.");
-                        // LOGGER.info("Existing connection is open. Verifying autocommit."); // Optional JUL
-                        // Ensure autocommit is off even for existing connections
-                        if (connection.getAutoCommit()) {
-                            System.out.println("Autocommit was on, setting to false.");
-                            connection.setAutoCommit(false);
-                        }
+                    SchedulerMBeans.register(); // Before the engine boots, so Derby publishes its MBeans too
+                    if (MODE.equals("server") && networkServer == null) {
+                        networkServer = startNetworkServer(stringProperty("scheduler.db.host", DEFAULT_HOST),
+                                intProperty("scheduler.db.port", DEFAULT_PORT));
                     }
-                } catch (SQLException e) {
-                    System.err.println("Error checking/setting autocommit on existing connection: " + e.getMessage() + ". Attempting to create a new one.");
-                    // LOGGER.log(Level.WARNING, "Error checking/setting autocommit on existing connection: {0}. Attempting to create a new one.", e.getMessage()); // Optional JUL
-                    needsNewConnection = true;
-                    connection = null; // Ensure we try to reconnect fully
-                }
-            }
-
-            if (needsNewConnection) {
-                try {
-                    System.out.println("Establishing new database connection to: " + DATABASE_URL);
-                    // LOGGER.log(Level.INFO, "Establishing new database connection to: {0}", DATABASE_URL); // Optional JUL
-                    // This is where the "Failed to start database" error likely originates
-                    connection = DriverManager.getConnection(DATABASE_URL, USER, PASSWORD);
-                    System.out.println("New connection established successfully. Setting autocommit to false.");
-                    connection.setAutoCommit(false); // Set autocommit to false for new connections
-                    // LOGGER.info("New connection established successfully. Autocommit set to false."); // Optional JUL
+                    LOG.info("Creating connection pool for: {}", DATABASE_URL);
+                    pool = new ConnectionPool(DATABASE_URL, USER, PASSWORD,
+                            intProperty("scheduler.pool.minSize", DEFAULT_MIN_POOL_SIZE),
+                            intProperty("scheduler.pool.maxSize", DEFAULT_MAX_POOL_SIZE),
+                            longProperty("scheduler.pool.borrowTimeoutMs", DEFAULT_BORROW_TIMEOUT_MS),
+                            longProperty("scheduler.pool.leakThresholdMs", DEFAULT_LEAK_THRESHOLD_MS),
+                            intProperty("scheduler.pool.validationTimeoutSec", DEFAULT_VALIDATION_TIMEOUT_SEC));
+                    LOG.info("Connection pool ready: {}", pool.toString());
                 } catch (SQLException e) {
                     // Log detailed error for connection/startup failure
-                    System.err.println("FATAL: Failed to establish/start database connection: " + e.getMessage());
-                    System.err.println("SQLState: " + e.getSQLState());
-                    System.err.println("Error Code: " + e.getErrorCode());
-                    // LOGGER.log(Level.SEVERE, "Failed to establish new database connection", e); // Optional JUL
                     // Log the full stack trace for connection errors
-                    e.printStackTrace(System.err);
+                    LOG.error("FATAL: Failed to establish/start database connection: {} (SQLState: {}, Error Code: {})",
+                            e.getMessage(), e.getSQLState(), e.getErrorCode(), e);
                     // Check derby.log for more details!
-                    System.err.println("!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                    System.err.println("!!! Check the derby.log file in the application directory for more detailed Derby error messages. !!!");
-                    System.err.println("!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!!");
-                    connection = null; // Ensure connection remains null on failure
+                    LOG.error("Check the derby.log file in the application directory for more detailed Derby error messages.");
                     throw e; // Re-throw the exception so the caller knows it failed
                 }
             }
-            if (connection == null) {
-                System.err.println("CRITICAL: Connection is still null after attempting creation in getConnection()!");
-                throw new SQLException("Failed to obtain a valid database connection.");
-            }
-            return connection;
+            return pool;
         }
     }
 
     /**
-     * Closes the database connection if it is open.
-     * Attempts to rollback any pending transaction before closing.
+     * @return The connection pool, or null if it has not been created or was closed.
+     *         Unlike {@link #getPool()} this never opens the database.
+     */
+    public static ConnectionPool getPoolIfOpen() {
+        return pool;
+    }
+
+    /**
+     * Opens a connection outside the pool, for diagnostics that must still work
+     * while every pooled connection is busy. The caller closes it.
+     *
+     * @return A new connection with the pool's URL and credentials, in autocommit mode.
+     * @throws SQLException if the connection cannot be opened.
+     */
+    static Connection openUnpooledConnection() throws SQLException {
+        return DriverManager.getConnection(DATABASE_URL, USER, PASSWORD);
+    }
+
+    /** @return The JDBC URL connections are opened with. */
+    public static String getDatabaseUrl() {
+        return DATABASE_URL;
+    }
+
+    /** @return How the database is reached: embedded, server or client. */
+    public static String getMode() {
+        return MODE;
+    }
+
+    /**
+     * Shuts down the connection pool, closing all idle connections.
+     * Uncommitted work on idle connections is rolled back.
      * Should be called when the application exits.
      */
     public static void closeConnection() {
+        // Stop background users of the pool first, outside the lock they may be waiting on
+        for (Runnable listener : closeListeners) {
+            try {
+                listener.run();
+            } catch (RuntimeException e) {
+                LOG.error("Error in connection close listener: {}", e.toString());
+            }
+        }
         synchronized (connectionLock) {
-            if (connection != null) {
+            if (pool != null) {
+                if (!QueryMetrics.getOperations().isEmpty()) {
+                    LOG.info("Query metrics:{}{}", System.lineSeparator(), QueryMetrics.report());
+                }
+                LOG.info("Closing database connection pool: {}", pool.toString());
+                pool.close();
+                pool = null;
+                SchedulerMBeans.unregister();
+                LOG.info("Database connection pool closed.");
+            } else {
+                LOG.info("No active connection to close.");
+            }
+            if (networkServer != null) {
+                stopNetworkServer(networkServer);
+                networkServer = null;
+            }
+        }
+    }
+
+    /**
+     * Starts a Derby network server in this process and waits until it accepts
+     * connections. Databases it serves are found relative to derby.system.home
+     * (the working directory if unset), or by absolute path.
+     * The server class comes from derbynet.jar and is loaded reflectively, so the
+     * application only needs that jar on the class path in server mode.
+     *
+     * @param host The address to listen on, e.g. localhost or 0.0.0.0 for all interfaces.
+     * @param port The port to listen on.
+     * @return The running org.apache.derby.drda.NetworkServerControl; stop it with
+     *         {@link #stopNetworkServer(Object)}.
+     * @throws SQLException if the server cannot be started within 10 seconds.
+     */
+    public static Object startNetworkServer(String host, int port) throws SQLException {
+        LOG.info("Starting Derby network server on {}:{}", host, port);
+        try {
+            Class<?> control = Class.forName("org.apache.derby.drda.NetworkServerControl");
+            Object server = control.getConstructor(InetAddress.class, int.class)
+                    .newInstance(InetAddress.getByName(host), port);
+            control.getMethod("start", java.io.PrintWriter.class).invoke(server, (Object) null);
+            long deadline = System.currentTimeMillis() + SERVER_START_TIMEOUT_MS;
+            while (true) {
                 try {
-                    if (!connection.isClosed()) {
-                        System.out.println("Closing database connection...");
-                        // Attempt to rollback any uncommitted changes if autocommit was off
-                        try {
-                            if (!connection.getAutoCommit()) {
-                                System.out.println("Rolling back transaction before closing...");
-                                connection.rollback();
-                            }
-                        } catch (SQLException rollbackEx) {
-                            System.err.println("Error during rollback before closing: " + rollbackEx.getMessage());
-                        }
-                        // LOGGER.info("Closing database connection..."); // Optional JUL
-                        connection.close();
-                        System.out.println("Database connection closed.");
-                        // LOGGER.info("Database connection closed."); // Optional JUL
-                    } else {
-                        System.out.println("Database connection was already closed.");
-                        // LOGGER.info("Database connection was already closed."); // Optional JUL
+                    control.getMethod("ping").invoke(server);
+                    LOG.info("Derby network server ready on {}:{}", host, port);
+                    return server;
+                } catch (InvocationTargetException e) {
+                    if (System.currentTimeMillis() >= deadline) {
+                        throw e;
                     }
-                } catch (SQLException e) {
-                    System.err.println("Error closing database connection: " + e.getMessage());
-                    // LOGGER.log(Level.SEVERE, "Error closing database connection", e); // Optional JUL
-                    e.printStackTrace(System.err);
-                } finally {
-                    connection = null; // Set to null after attempting close
+                    Thread.sleep(100);
                 }
-            } else {
-                System.out.println("No active connection to close.");
-                // LOGGER.info("No active connection to close."); // Optional JUL
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while starting Derby network server", e);
+        } catch (Exception e) {
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            throw new SQLException("Could not start Derby network server on " + host + ":" + port + ": " + cause, cause);
+        }
+    }
+
+    /**
+     * Stops a network server started by {@link #startNetworkServer(String, int)}.
+     * Connections that clients still hold are dropped.
+     *
+     * @param server The server to stop.
+     */
+    public static void stopNetworkServer(Object server) {
+        try {
+            server.getClass().getMethod("shutdown").invoke(server);
+            LOG.info("Derby network server stopped.");
+        } catch (Exception e) {
+            Throwable cause = e instanceof InvocationTargetException ? e.getCause() : e;
+            LOG.error("Error stopping Derby network server: {}", cause.toString());
+        }
+    }
+
+    /**
+     * Registers a task to run at the start of {@link #closeConnection()}, for example
+     * to stop background work that borrows connections.
+     *
+     * @param listener The task to run.
+     */
+    public static void addCloseListener(Runnable listener) {
+        closeListeners.add(listener);
+    }
+
+    private static String stringProperty(String name, String defaultValue) {
+        String value = System.getProperty(name);
+        return value == null || value.trim().isEmpty() ? defaultValue : value.trim();
+    }
+
+    private static int intProperty(String name, int defaultValue) {
+        return (int) longProperty(name, defaultValue);
+    }
+
+    private static long longProperty(String name, long defaultValue) {
+        String value = System.getProperty(name);
+        if (value == null || value.trim().isEmpty()) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            LOG.warn("Ignoring invalid value for {}: {}", name, value);
+            return defaultValue;
         }
     }
 }
@@ -1,128 +1,359 @@
 import java.sql.Connection;
-import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
 
 /**
- * Initializes the database tables required for the Course Scheduler application.
+ * Initializes and upgrades the database schema required for the Course Scheduler application.
+ * The schema is versioned: APP.SCHEMA_VERSION holds a single row with the version of
+ * the last applied migration, and {@link #MIGRATIONS} lists every schema change in order.
  * This class should be called during application startup.
  */
 public class DBInitializer {
 
-    private static final String[] TABLE_NAMES = {
-        "APP.SEMESTER", "APP.COURSES", "APP.CLASSES", "APP.STUDENTS", "APP.SCHEDULE"
+    private static final Log LOG = Log.get(DBInitializer.class);
+
+    /**
+     * One step of the schema history. Migrations must be idempotent so that databases
+     * created before versioning existed can replay them safely.
+     */
+    private interface MigrationStep {
+        void apply(Connection conn) throws SQLException;
+    }
+
+    private static final class Migration {
+        final int version;
+        final String description;
+        final MigrationStep step;
+
+        Migration(int version, String description, MigrationStep step) {
+            this.version = version;
+            this.description = description;
+            this.step = step;
+        }
+    }
+
+    /**
+     * All schema migrations, in the order they are applied. Append new ones at the end
+     * with the next version number; never edit or reorder a released migration.
+     */
+    private static final Migration[] MIGRATIONS = {
+        new Migration(1, "Create base tables", DBInitializer::createBaseTables),
+        new Migration(2, "Add enrollment counter to APP.CLASSES", conn ->
+            addColumnIfMissing(conn, "APP.CLASSES", "enrolled INTEGER DEFAULT 0 NOT NULL",
+                    "UPDATE APP.CLASSES c SET enrolled = " +
+                    "(SELECT COUNT(*) FROM APP.SCHEDULE s " +
+                    "WHERE s.semester = c.semester AND s.coursecode = c.coursecode " +
+                    "AND s.status = 'scheduled')")),
+        new Migration(3, "Add secondary indexes for SCHEDULE and STUDENTS", conn -> {
+            // Class counts and rosters; replaced by IDX_SCHEDULE_WAITLIST in migration 4
+            createIndexIfMissing(conn, "IDX_SCHEDULE_CLASS_STATUS", "APP.SCHEDULE",
+                    "semester, coursecode, status, timestamp, studentid");
+            // dropStudent lookups by student
+            createIndexIfMissing(conn, "IDX_SCHEDULE_STUDENT", "APP.SCHEDULE",
+                    "studentid, semester, coursecode, status");
+            // getAllStudents (ORDER BY lastname, firstname)
+            createIndexIfMissing(conn, "IDX_STUDENTS_NAME", "APP.STUDENTS",
+                    "lastname, firstname, studentid");
+        }),
+        new Migration(4, "Add waitlist sequence numbers", DBInitializer::addWaitlistSequence),
+        new Migration(5, "Add CSV import progress table", conn ->
+            // One row per imported file; updated in the same transaction as each batch (see CsvImporter)
+            createIfMissing(conn, "CREATE TABLE APP.IMPORT_PROGRESS (" +
+                                  "import_key VARCHAR(500) PRIMARY KEY, " +
+                                  "import_type VARCHAR(20) NOT NULL, " +
+                                  "file_size BIGINT NOT NULL, " +
+                                  "last_line BIGINT NOT NULL, " +
+                                  "imported BIGINT NOT NULL, " +
+                                  "skipped BIGINT NOT NULL, " +
+                                  "rejected BIGINT NOT NULL, " +
+                                  "completed BOOLEAN NOT NULL, " +
+                                  "updated_at TIMESTAMP NOT NULL)")),
+        new Migration(6, "Number waitlists per class instead of from APP.WAITLIST_SEQ", conn -> {
+            // Existing numbers already increase within each class, so Waitlist.nextNumber continues from them
+            if (sequenceExists(conn, "APP", "WAITLIST_SEQ")) {
+                try (Statement stmt = conn.createStatement()) {
+                    stmt.execute("DROP SEQUENCE APP.WAITLIST_SEQ RESTRICT");
+                }
+            }
+        }),
+        new Migration(7, "Drop IDX_SCHEDULE_CLASS_STATUS, covered by IDX_SCHEDULE_WAITLIST", conn ->
+            // Databases that applied migration 4 before it dropped the index
+            dropIndexIfExists(conn, "IDX_SCHEDULE_CLASS_STATUS"))
     };
 
+    /** The schema version this build of the application expects. */
+    public static final int LATEST_VERSION = MIGRATIONS[MIGRATIONS.length - 1].version;
+
     /**
-     * Initializes the database tables if they don't exist.
+     * Brings the database schema up to {@link #LATEST_VERSION}.
+     * On an up-to-date database this is a single-row version lookup. Otherwise all
+     * pending migrations run in one transaction, so a failure leaves the schema unchanged.
      * @throws SQLException if a database error occurs
      */
     public static void initializeDatabase() throws SQLException {
         Connection conn = null;
         try {
-            conn = DBConnection.getConnection();
-            
-            // Check if tables exist and create them if they don't
-            if (!tablesExist(conn)) {
-                createTables(conn);
-                System.out.println("Database tables created successfully.");
-            } else {
-                System.out.println("Database tables already exist.");
+            conn = DBConnection.getConnection("initializeDatabase");
+
+            int version = readSchemaVersion(conn);
+            conn.commit();
+            if (version >= LATEST_VERSION) {
+                LOG.info("Database schema is up to date (version {}).", version);
+                return;
+            }
+
+            // Serialize concurrent upgraders, then re-check under the lock
+            ensureVersionTable(conn);
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("LOCK TABLE APP.SCHEMA_VERSION IN EXCLUSIVE MODE");
+            }
+            version = readSchemaVersion(conn);
+
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version > version) {
+                    LOG.info("Applying schema migration {}: {}", migration.version, migration.description);
+                    migration.step.apply(conn);
+                }
             }
+            writeSchemaVersion(conn, version, LATEST_VERSION);
+            conn.commit();
+            LOG.info("Database schema upgraded from version {} to {}.", Math.max(version, 0), LATEST_VERSION);
         } catch (SQLException e) {
-            System.err.println("Error initializing database: " + e.getMessage());
-            e.printStackTrace();
+            LOG.error("Error initializing database: {}", e.getMessage(), e);
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rbEx) {
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
+                }
+            }
             throw e;
+        } finally {
+            DBConnection.release(conn);
         }
     }
-    
+
+    // --- Version bookkeeping ---
+
     /**
-     * Checks if all required tables exist in the database.
+     * Reads the current schema version.
      * @param conn Database connection
-     * @return true if all tables exist, false otherwise
+     * @return the stored version, 0 if the version table is empty, or -1 if it does not exist
      * @throws SQLException if a database error occurs
      */
-    private static boolean tablesExist(Connection conn) throws SQLException {
-        DatabaseMetaData metaData = conn.getMetaData();
-        
-        for (String tableName : TABLE_NAMES) {
-            String[] parts = tableName.split("\\.");
-            String schema = parts[0];
-            String table = parts[1];
-            
-            try (ResultSet rs = metaData.getTables(null, schema, table, new String[]{"TABLE"})) {
-                if (!rs.next()) {
-                    return false;  // Table not found
-                }
+    private static int readSchemaVersion(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement();
+             ResultSet rs = stmt.executeQuery("SELECT version FROM APP.SCHEMA_VERSION")) {
+            return rs.next() ? rs.getInt("version") : 0;
+        } catch (SQLException e) {
+            // Table/view does not exist: database predates schema versioning or is new
+            if ("42X05".equals(e.getSQLState())) {
+                return -1;
             }
+            throw e;
         }
-        return true;  // All tables exist
     }
 
-    /**
-     * Creates all required tables in the database.
-     * @param conn Database connection
-     * @throws SQLException if a database error occurs
-     */
-    private static void createTables(Connection conn) throws SQLException {
-        // Create the APP schema if it doesn't exist
-        try {
-            Statement stmt = conn.createStatement();
+    private static void ensureVersionTable(Connection conn) throws SQLException {
+        createSchemaIfMissing(conn);
+        createIfMissing(conn, "CREATE TABLE APP.SCHEMA_VERSION (" +
+                              "version INTEGER NOT NULL, " +
+                              "updated_at TIMESTAMP NOT NULL)");
+    }
+
+    private static void writeSchemaVersion(Connection conn, int oldVersion, int newVersion) throws SQLException {
+        String sql = oldVersion > 0
+                ? "UPDATE APP.SCHEMA_VERSION SET version = ?, updated_at = CURRENT_TIMESTAMP"
+                : "INSERT INTO APP.SCHEMA_VERSION (version, updated_at) VALUES (?, CURRENT_TIMESTAMP)";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setInt(1, newVersion);
+            pstmt.executeUpdate();
+        }
+    }
+
+    // --- Idempotent DDL helpers for migrations ---
+
+    private static void createSchemaIfMissing(Connection conn) throws SQLException {
+        try (Statement stmt = conn.createStatement()) {
             stmt.execute("CREATE SCHEMA APP");
-            stmt.close();
         } catch (SQLException e) {
             // Ignore error if schema already exists
-            if (!e.getSQLState().equals("X0Y68")) {
+            if (!"X0Y68".equals(e.getSQLState())) {
                 throw e;
             }
         }
-        
-        // Create SEMESTER table
+    }
+
+    /**
+     * Runs a CREATE TABLE or CREATE INDEX statement, ignoring the error if the
+     * object already exists.
+     * @return true if the object was created
+     */
+    private static boolean createIfMissing(Connection conn, String createSql) throws SQLException {
         try (Statement stmt = conn.createStatement()) {
-            stmt.execute("CREATE TABLE APP.SEMESTER (" +
-                         "semester VARCHAR(50) PRIMARY KEY)");
+            stmt.execute(createSql);
+            return true;
+        } catch (SQLException e) {
+            // Ignore error if table or index already exists
+            if (!"X0Y32".equals(e.getSQLState())) {
+                throw e;
+            }
+            return false;
         }
+    }
 
-        // Create COURSES table
+    /**
+     * Adds a column to a table unless it already exists, then runs an optional
+     * backfill statement for the newly added column.
+     * @return true if the column was added
+     */
+    private static boolean addColumnIfMissing(Connection conn, String table, String columnDefinition,
+                                              String backfillSql) throws SQLException {
+        String[] parts = table.split("\\.");
+        String column = columnDefinition.trim().split("\\s+")[0].toUpperCase();
+        try (ResultSet rs = conn.getMetaData().getColumns(null, parts[0], parts[1], column)) {
+            if (rs.next()) {
+                return false;
+            }
+        }
         try (Statement stmt = conn.createStatement()) {
-            stmt.execute("CREATE TABLE APP.COURSES (" +
-                         "coursecode VARCHAR(10) PRIMARY KEY, " +
-                         "description VARCHAR(100) NOT NULL)");
+            stmt.execute("ALTER TABLE " + table + " ADD COLUMN " + columnDefinition);
+            if (backfillSql != null) {
+                stmt.executeUpdate(backfillSql);
+            }
         }
+        return true;
+    }
 
-        // Create CLASSES table
+    /**
+     * Creates an index unless one with the same name already exists.
+     * @return true if the index was created
+     */
+    private static boolean createIndexIfMissing(Connection conn, String indexName, String table,
+                                                String columns) throws SQLException {
+        return createIfMissing(conn, "CREATE INDEX APP." + indexName + " ON " + table + " (" + columns + ")");
+    }
+
+    /**
+     * Drops an index unless it does not exist.
+     * @return true if the index was dropped
+     */
+    private static boolean dropIndexIfExists(Connection conn, String indexName) throws SQLException {
         try (Statement stmt = conn.createStatement()) {
-            stmt.execute("CREATE TABLE APP.CLASSES (" +
-                         "semester VARCHAR(50) NOT NULL, " +
-                         "coursecode VARCHAR(10) NOT NULL, " +
-                         "seats INTEGER NOT NULL, " +
-                         "PRIMARY KEY (semester, coursecode), " +
-                         "FOREIGN KEY (semester) REFERENCES APP.SEMESTER(semester), " +
-                         "FOREIGN KEY (coursecode) REFERENCES APP.COURSES(coursecode))");
+            stmt.execute("DROP INDEX APP." + indexName);
+            return true;
+        } catch (SQLException e) {
+            // Ignore error if the index does not exist
+            if (!"42X65".equals(e.getSQLState())) {
+                throw e;
+            }
+            return false;
         }
+    }
 
-        // Create STUDENTS table
-        try (Statement stmt = conn.createStatement()) {
-            stmt.execute("CREATE TABLE APP.STUDENTS (" +
-                         "studentid VARCHAR(20) PRIMARY KEY, " +
-                         "firstname VARCHAR(50) NOT NULL, " +
-                         "lastname VARCHAR(50) NOT NULL)");
+    private static boolean sequenceExists(Connection conn, String schema, String sequence) throws SQLException {
+        String sql = "SELECT 1 FROM SYS.SYSSEQUENCES q JOIN SYS.SYSSCHEMAS s ON q.schemaid = s.schemaid " +
+                     "WHERE s.schemaname = ? AND q.sequencename = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, schema);
+            pstmt.setString(2, sequence);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
         }
+    }
+
+    // --- Migrations ---
+
+    /**
+     * Migration 1: the original schema. Tables that already exist are left alone.
+     * @param conn Database connection
+     * @throws SQLException if a database error occurs
+     */
+    private static void createBaseTables(Connection conn) throws SQLException {
+        createSchemaIfMissing(conn);
+
+        // Create SEMESTER table
+        createIfMissing(conn, "CREATE TABLE APP.SEMESTER (" +
+                              "semester VARCHAR(50) PRIMARY KEY)");
+
+        // Create COURSES table
+        createIfMissing(conn, "CREATE TABLE APP.COURSES (" +
+                              "coursecode VARCHAR(10) PRIMARY KEY, " +
+                              "description VARCHAR(100) NOT NULL)");
+
+        // Create CLASSES table
+        createIfMissing(conn, "CREATE TABLE APP.CLASSES (" +
+                              "semester VARCHAR(50) NOT NULL, " +
+                              "coursecode VARCHAR(10) NOT NULL, " +
+                              "seats INTEGER NOT NULL, " +
+                              "PRIMARY KEY (semester, coursecode), " +
+                              "FOREIGN KEY (semester) REFERENCES APP.SEMESTER(semester), " +
+                              "FOREIGN KEY (coursecode) REFERENCES APP.COURSES(coursecode))");
+
+        // Create STUDENTS table
+        createIfMissing(conn, "CREATE TABLE APP.STUDENTS (" +
+                              "studentid VARCHAR(20) PRIMARY KEY, " +
+                              "firstname VARCHAR(50) NOT NULL, " +
+                              "lastname VARCHAR(50) NOT NULL)");
 
         // Create SCHEDULE table
-        try (Statement stmt = conn.createStatement()) {
-            stmt.execute("CREATE TABLE APP.SCHEDULE (" +
-                         "semester VARCHAR(50) NOT NULL, " +
-                         "studentid VARCHAR(20) NOT NULL, " +
-                         "coursecode VARCHAR(10) NOT NULL, " +
-                         "status VARCHAR(20) NOT NULL, " +
-                         "timestamp TIMESTAMP NOT NULL, " +
-                         "PRIMARY KEY (semester, studentid, coursecode), " +
-                         "FOREIGN KEY (semester) REFERENCES APP.SEMESTER(semester), " +
-                         "FOREIGN KEY (studentid) REFERENCES APP.STUDENTS(studentid), " +
-                         "FOREIGN KEY (coursecode) REFERENCES APP.COURSES(coursecode))");
+        createIfMissing(conn, "CREATE TABLE APP.SCHEDULE (" +
+                              "semester VARCHAR(50) NOT NULL, " +
+                              "studentid VARCHAR(20) NOT NULL, " +
+                              "coursecode VARCHAR(10) NOT NULL, " +
+                              "status VARCHAR(20) NOT NULL, " +
+                              "timestamp TIMESTAMP NOT NULL, " +
+                              "PRIMARY KEY (semester, studentid, coursecode), " +
+                              "FOREIGN KEY (semester) REFERENCES APP.SEMESTER(semester), " +
+                              "FOREIGN KEY (studentid) REFERENCES APP.STUDENTS(studentid), " +
+                              "FOREIGN KEY (coursecode) REFERENCES APP.COURSES(coursecode))");
+    }
+
+    /**
+     * Migration 4: waitlist sequence numbers (see {@link Waitlist}).
+     * Existing waitlisted rows are numbered in timestamp order, ties broken by
+     * student ID, and the sequence starts after the last number handed out.
+     * @param conn Database connection
+     * @throws SQLException if a database error occurs
+     */
+    private static void addWaitlistSequence(Connection conn) throws SQLException {
+        if (addColumnIfMissing(conn, "APP.SCHEDULE", "waitseq BIGINT", null)) {
+            String sqlWaitlisted = "SELECT semester, coursecode, studentid FROM APP.SCHEDULE " +
+                                   "WHERE status = 'waitlisted' ORDER BY timestamp, studentid";
+            String sqlNumber = "UPDATE APP.SCHEDULE SET waitseq = ? WHERE semester = ? AND studentid = ? AND coursecode = ?";
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery(sqlWaitlisted);
+                 PreparedStatement number = conn.prepareStatement(sqlNumber)) {
+                long sequence = 0;
+                while (rs.next()) {
+                    number.setLong(1, ++sequence);
+                    number.setString(2, rs.getString("semester"));
+                    number.setString(3, rs.getString("studentid"));
+                    number.setString(4, rs.getString("coursecode"));
+                    number.addBatch();
+                }
+                number.executeBatch();
+            }
+        }
+        if (!sequenceExists(conn, "APP", "WAITLIST_SEQ")) {
+            long start = 1;
+            try (Statement stmt = conn.createStatement();
+                 ResultSet rs = stmt.executeQuery("SELECT MAX(waitseq) FROM APP.SCHEDULE")) {
+                if (rs.next()) {
+                    start = rs.getLong(1) + 1;
+                }
+            }
+            try (Statement stmt = conn.createStatement()) {
+                stmt.execute("CREATE SEQUENCE APP.WAITLIST_SEQ AS BIGINT START WITH " + start);
+            }
         }
+        // Head of the queue, waitlist positions, class counts and rosters (scheduled rows have no waitseq)
+        createIndexIfMissing(conn, "IDX_SCHEDULE_WAITLIST", "APP.SCHEDULE",
+                "semester, coursecode, status, waitseq, timestamp, studentid");
+        // Its columns are a prefix of IDX_SCHEDULE_WAITLIST's, so every SCHEDULE write would maintain both
+        dropIndexIfExists(conn, "IDX_SCHEDULE_CLASS_STATUS");
     }
-}
\ No newline at end of file
+}
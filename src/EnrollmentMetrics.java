@@ -0,0 +1,79 @@
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals of enrollment activity, counted by {@link SemesterQueries} after
+ * each transaction commits, so rolled-back work is never counted. Counting is a
+ * LongAdder increment, which does not contend between threads.
+ */
+public final class EnrollmentMetrics {
+
+    private static final LongAdder SCHEDULED = new LongAdder();
+    private static final LongAdder WAITLISTED = new LongAdder();
+    private static final LongAdder FAILED = new LongAdder();
+    private static final LongAdder PROMOTED = new LongAdder();
+    private static final LongAdder DROPPED = new LongAdder();
+
+    private EnrollmentMetrics() {
+    }
+
+    // --- Recording, called by SemesterQueries ---
+
+    /** @param status "scheduled" or "waitlisted" */
+    static void enrolled(String status) {
+        if ("scheduled".equals(status)) {
+            SCHEDULED.increment();
+        } else {
+            WAITLISTED.increment();
+        }
+    }
+
+    /** Counts the outcomes of one scheduleClasses batch. */
+    static void enrolled(Iterable<EnrollmentOutcome> outcomes) {
+        for (EnrollmentOutcome outcome : outcomes) {
+            if (outcome.isEnrolled()) {
+                enrolled(outcome.getStatus());
+            } else {
+                FAILED.increment();
+            }
+        }
+    }
+
+    /** Enrollment requests that did not go through, e.g. a scheduleClass call that failed. */
+    static void failed(int count) {
+        FAILED.add(count);
+    }
+
+    static void promoted(int count) {
+        PROMOTED.add(count);
+    }
+
+    /** Enrollments removed: a student dropping a class, or a class or student being dropped. */
+    static void dropped(int count) {
+        DROPPED.add(count);
+    }
+
+    // --- Reading ---
+
+    /** @return Enrollments that got a seat straight away. */
+    public static long getScheduledCount() {
+        return SCHEDULED.sum();
+    }
+
+    public static long getWaitlistedCount() {
+        return WAITLISTED.sum();
+    }
+
+    /** @return Enrollment requests that were refused or failed, e.g. already enrolled. */
+    public static long getFailedCount() {
+        return FAILED.sum();
+    }
+
+    /** @return Students moved from a waitlist into a seat. */
+    public static long getPromotedCount() {
+        return PROMOTED.sum();
+    }
+
+    public static long getDroppedCount() {
+        return DROPPED.sum();
+    }
+}
@@ -0,0 +1,69 @@
+/**
+ * The result of enrolling one student in one class through
+ * {@link SemesterQueries#scheduleClasses}: "scheduled", "waitlisted", or
+ * "failed" with the reason. Immutable.
+ */
+public final class EnrollmentOutcome implements TableRow {
+
+    public static final String FAILED = "failed";
+
+    private final String studentId;
+    private final String courseCode;
+    private final String status;
+    private final String error;
+
+    private EnrollmentOutcome(String studentId, String courseCode, String status, String error) {
+        this.studentId = studentId;
+        this.courseCode = courseCode;
+        this.status = status;
+        this.error = error;
+    }
+
+    /** @param status "scheduled" or "waitlisted" */
+    static EnrollmentOutcome enrolled(String studentId, String courseCode, String status) {
+        return new EnrollmentOutcome(studentId, courseCode, status, null);
+    }
+
+    static EnrollmentOutcome failed(String studentId, String courseCode, String error) {
+        return new EnrollmentOutcome(studentId, courseCode, FAILED, error);
+    }
+
+    public String getStudentId() {
+        return studentId;
+    }
+
+    public String getCourseCode() {
+        return courseCode;
+    }
+
+    /** @return "scheduled", "waitlisted" or "failed" */
+    public String getStatus() {
+        return status;
+    }
+
+    /** @return Why the enrollment failed, or null if it succeeded. */
+    public String getError() {
+        return error;
+    }
+
+    public boolean isEnrolled() {
+        return error == null;
+    }
+
+    /** Columns: student ID, course code, status, error. */
+    @Override
+    public Object getColumnValue(int column) {
+        switch (column) {
+            case 0: return studentId;
+            case 1: return courseCode;
+            case 2: return status;
+            case 3: return error;
+            default: throw new IndexOutOfBoundsException("Column " + column);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return studentId + " " + courseCode + " (" + (error == null ? status : status + ": " + error) + ")";
+    }
+}
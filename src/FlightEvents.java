@@ -0,0 +1,190 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * The Flight Recorder event types behind {@link Tracing}. Only Tracing uses this
+ * class, and only after checking that the JVM has jdk.jfr, so the rest of the
+ * application does not depend on it.
+ */
+final class FlightEvents {
+
+    private FlightEvents() {
+    }
+
+    @Name("CourseScheduler.UiAction")
+    @Label("UI Action")
+    @Description("A button handler running on the event dispatch thread")
+    @Category({"Course Scheduler", "UI"})
+    @StackTrace(false)
+    static final class UiActionEvent extends Event {
+        @Label("Correlation ID")
+        long correlationId;
+
+        @Label("Action")
+        String action;
+
+        @Label("EDT Queue Time")
+        @Description("Time from the click until the handler started")
+        @Timespan(Timespan.MILLISECONDS)
+        long queuedMillis;
+    }
+
+    @Name("CourseScheduler.Worker")
+    @Label("Swing Worker")
+    @Description("The doInBackground or done phase of a SwingWorker")
+    @Category({"Course Scheduler", "UI"})
+    @StackTrace(false)
+    static final class WorkerEvent extends Event {
+        @Label("Correlation ID")
+        long correlationId;
+
+        @Label("Action")
+        String action;
+
+        @Label("Phase")
+        String phase;
+
+        @Label("Queue Time")
+        @Description("Wait for a worker thread (background) or for the EDT (done)")
+        @Timespan(Timespan.NANOSECONDS)
+        long queuedNanos;
+    }
+
+    @Name("CourseScheduler.GetConnection")
+    @Label("Get Connection")
+    @Description("Borrowing a pooled database connection, including any wait")
+    @Category({"Course Scheduler", "Database"})
+    @StackTrace(false)
+    static final class GetConnectionEvent extends Event {
+        @Label("Correlation ID")
+        long correlationId;
+
+        @Label("Action")
+        String action;
+
+        @Label("Operation")
+        String operation;
+    }
+
+    @Name("CourseScheduler.Statement")
+    @Label("Statement")
+    @Description("One SQL statement execution")
+    @Category({"Course Scheduler", "Database"})
+    @StackTrace(false)
+    static final class StatementEvent extends Event {
+        @Label("Correlation ID")
+        long correlationId;
+
+        @Label("Action")
+        String action;
+
+        @Label("Operation")
+        String operation;
+
+        @Label("Method")
+        String method;
+
+        @Label("SQL")
+        String sql;
+
+        @Label("Failed")
+        boolean failed;
+    }
+
+    // Registering the types up front lists them in JMC before the first event
+    private static final EventType UI_ACTION = EventType.getEventType(UiActionEvent.class);
+    private static final EventType WORKER = EventType.getEventType(WorkerEvent.class);
+    private static final EventType GET_CONNECTION = EventType.getEventType(GetConnectionEvent.class);
+    private static final EventType STATEMENT = EventType.getEventType(StatementEvent.class);
+
+    static Object beginUiAction() {
+        if (!UI_ACTION.isEnabled()) {
+            return null;
+        }
+        UiActionEvent event = new UiActionEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endUiAction(Object started, Tracing.Context context, long queuedMillis) {
+        UiActionEvent event = (UiActionEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.correlationId = context.id;
+            event.action = context.action;
+            event.queuedMillis = queuedMillis;
+            event.commit();
+        }
+    }
+
+    static Object beginWorker() {
+        if (!WORKER.isEnabled()) {
+            return null;
+        }
+        WorkerEvent event = new WorkerEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endWorker(Object started, Tracing.Context context, String phase, long queuedNanos) {
+        WorkerEvent event = (WorkerEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.correlationId = context.id;
+            event.action = context.action;
+            event.phase = phase;
+            event.queuedNanos = queuedNanos;
+            event.commit();
+        }
+    }
+
+    static Object beginGetConnection() {
+        if (!GET_CONNECTION.isEnabled()) {
+            return null;
+        }
+        GetConnectionEvent event = new GetConnectionEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endGetConnection(Object started, Tracing.Context context, String operation) {
+        GetConnectionEvent event = (GetConnectionEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.correlationId = context.id;
+            event.action = context.action;
+            event.operation = operation;
+            event.commit();
+        }
+    }
+
+    static Object beginStatement() {
+        if (!STATEMENT.isEnabled()) {
+            return null;
+        }
+        StatementEvent event = new StatementEvent();
+        event.begin();
+        return event;
+    }
+
+    static void endStatement(Object started, Tracing.Context context, String operation, String method,
+                             String sql, boolean failed) {
+        StatementEvent event = (StatementEvent) started;
+        event.end();
+        if (event.shouldCommit()) {
+            event.correlationId = context.id;
+            event.action = context.action;
+            event.operation = operation;
+            event.method = method;
+            event.sql = sql;
+            event.failed = failed;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,37 @@
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Canonical instances for strings that repeat across many result rows, such as
+ * semesters, course codes and enrollment statuses. Rows built from a large
+ * roster then share one copy of each value instead of holding their own.
+ *
+ * Only low-cardinality values should be interned here. The table is bounded;
+ * once full, new values are returned as-is rather than cached.
+ */
+public final class Interner {
+
+    private static final int MAX_ENTRIES = 10000;
+    private static final ConcurrentHashMap<String, String> VALUES = new ConcurrentHashMap<>();
+
+    private Interner() {
+    }
+
+    /**
+     * @param value A string read from the database, may be null.
+     * @return The canonical instance equal to value, or value itself.
+     */
+    public static String intern(String value) {
+        if (value == null) {
+            return null;
+        }
+        String canonical = VALUES.get(value);
+        if (canonical != null) {
+            return canonical;
+        }
+        if (VALUES.size() >= MAX_ENTRIES) {
+            return value;
+        }
+        canonical = VALUES.putIfAbsent(value, value);
+        return canonical != null ? canonical : value;
+    }
+}
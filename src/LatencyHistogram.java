@@ -0,0 +1,143 @@
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size, lock-free latency histogram with log-linear buckets.
+ * Values are recorded in nanoseconds. Each power of two is split into 32
+ * sub-buckets, so reported percentiles are within about 3% of the true value.
+ * Recording is a couple of atomic increments and never allocates, so it is
+ * safe to call on hot paths from many threads.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder totalCount = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+    private final AtomicLong maxNanos = new AtomicLong();
+
+    /**
+     * Records one observation.
+     * @param nanos The latency in nanoseconds. Negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(0L, nanos);
+        counts.incrementAndGet(bucketIndex(value));
+        totalCount.increment();
+        totalNanos.add(value);
+        long currentMax;
+        while (value > (currentMax = maxNanos.get())) {
+            if (maxNanos.compareAndSet(currentMax, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return totalCount.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public long getMaxNanos() {
+        return maxNanos.get();
+    }
+
+    public double getMeanNanos() {
+        long count = getCount();
+        return count == 0 ? 0.0 : (double) getTotalNanos() / count;
+    }
+
+    /**
+     * Returns the value at the given percentile.
+     * @param percentile A percentile between 0 and 100 (for example 99.0).
+     * @return The upper bound of the bucket holding that percentile, in nanoseconds, or 0 if empty.
+     */
+    public long getPercentileNanos(double percentile) {
+        long count = getCount();
+        if (count == 0) {
+            return 0L;
+        }
+        long target = Math.max(1L, (long) Math.ceil(count * Math.min(100.0, Math.max(0.0, percentile)) / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= target) {
+                return Math.min(bucketUpperBound(i), getMaxNanos());
+            }
+        }
+        return getMaxNanos();
+    }
+
+    /**
+     * Number of observations at or below the given value, rounded to bucket precision.
+     * Used for cumulative (Prometheus-style) bucket output.
+     */
+    public long getCountAtOrBelow(long nanos) {
+        int last = bucketIndex(Math.max(0L, nanos));
+        long seen = 0;
+        for (int i = 0; i <= last; i++) {
+            seen += counts.get(i);
+        }
+        return seen;
+    }
+
+    /**
+     * Clears all recorded values. Observations recorded concurrently with a reset
+     * may be partially lost, which is acceptable for monitoring purposes.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0L);
+        }
+        totalCount.reset();
+        totalNanos.reset();
+        maxNanos.set(0L);
+    }
+
+    /**
+     * One-line summary in microseconds, e.g. for console reports.
+     */
+    public String summary() {
+        return String.format("count=%d mean=%.1fus p50=%dus p99=%dus max=%dus",
+                getCount(),
+                getMeanNanos() / 1000.0,
+                TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(50.0)),
+                TimeUnit.NANOSECONDS.toMicros(getPercentileNanos(99.0)),
+                TimeUnit.NANOSECONDS.toMicros(getMaxNanos()));
+    }
+
+    @Override
+    public String toString() {
+        return "LatencyHistogram[" + summary() + "]";
+    }
+
+    // --- Bucket math ---
+
+    private static int bucketIndex(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    private static long bucketUpperBound(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / SUB_BUCKETS - 1;
+        int subBucket = index % SUB_BUCKETS;
+        long lower = ((long) (SUB_BUCKETS + subBucket)) << shift;
+        return lower + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,461 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-contention diagnostics for the database layer.
+ *
+ * Statements on connections instrumented by {@link QueryMetrics} that fail with a
+ * Derby lock timeout (SQLState 40XL1 or 40XL2) or deadlock (40001) are always
+ * counted. With -Dscheduler.lockdiag.enabled=true, those failures and any statement
+ * still waiting after the threshold also trigger a snapshot of SYSCS_DIAG.LOCK_TABLE
+ * and SYSCS_DIAG.TRANSACTION_TABLE. Each snapshot is appended to a rotating file with
+ * the triggering statements' operation, SQL, bind parameters and thread, followed by
+ * the contended locks (every lock someone is waiting for, with its holders and
+ * waiters and their current SQL) and the full lock and transaction tables.
+ *
+ * A background thread checks the statements in progress a few times per threshold,
+ * so a waiting statement is captured while the locks blocking it are still held.
+ * Snapshots are read through a connection of their own, outside the pool, because
+ * contention often leaves every pooled connection busy. Triggers arriving within the
+ * minimum interval of the previous snapshot go into the next one.
+ *
+ * Settings (system properties):
+ * scheduler.lockdiag.enabled (default false), scheduler.lockdiag.waitMs - how long a
+ * statement may run before it counts as waiting (default 1000),
+ * scheduler.lockdiag.minIntervalMs - least time between snapshots (default 1000),
+ * scheduler.lockdiag.file (default lock-diagnostics.log), scheduler.lockdiag.maxFileKb
+ * - size at which the file is rotated (default 10240) and scheduler.lockdiag.files -
+ * how many files to keep, the current one included (default 5).
+ */
+public final class LockDiagnostics {
+
+    private static final Log LOG = Log.get(LockDiagnostics.class);
+
+    private static final boolean ENABLED =
+            "true".equalsIgnoreCase(System.getProperty("scheduler.lockdiag.enabled", "false").trim());
+    private static final long WAIT_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Math.max(1L, Long.getLong("scheduler.lockdiag.waitMs", 1000L)));
+    private static final long MIN_INTERVAL_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Math.max(0L, Long.getLong("scheduler.lockdiag.minIntervalMs", 1000L)));
+    private static final File FILE =
+            new File(System.getProperty("scheduler.lockdiag.file", "lock-diagnostics.log")).getAbsoluteFile();
+    private static final long MAX_FILE_BYTES = Math.max(1L, Long.getLong("scheduler.lockdiag.maxFileKb", 10240L)) * 1024;
+    private static final int FILES = Math.max(1, Integer.getInteger("scheduler.lockdiag.files", 5));
+    private static final int MAX_TRIGGERS = 50; // Listed per snapshot; the rest are only counted
+    private static final int MAX_SQL_LENGTH = 300;
+
+    private static final String LOCK_TIMEOUT = "40XL1";
+    private static final String LOCK_TIMEOUT_TRACE = "40XL2"; // With derby.locks.deadlockTrace=true
+    private static final String DEADLOCK = "40001";
+
+    private static final String LOCKS_SQL = "SELECT xid, type, mode, tablename, lockname, state, tabletype,"
+            + " lockcount, indexname FROM SYSCS_DIAG.LOCK_TABLE ORDER BY tablename, lockname, state, xid";
+    private static final String TRANSACTIONS_SQL = "SELECT xid, global_xid, username, type, status, first_instant,"
+            + " sql_text FROM SYSCS_DIAG.TRANSACTION_TABLE ORDER BY xid";
+
+    private static final LongAdder LOCK_TIMEOUTS = new LongAdder();
+    private static final LongAdder DEADLOCKS = new LongAdder();
+    private static final LongAdder SNAPSHOTS = new LongAdder();
+
+    private static final Set<Watch> IN_FLIGHT = ConcurrentHashMap.newKeySet();
+    private static final ConcurrentLinkedQueue<Watch> FAILURES = new ConcurrentLinkedQueue<>();
+
+    private static volatile ScheduledExecutorService monitor; // Set and cleared under LockDiagnostics.class
+    private static boolean closeListenerAdded;       // Guarded by LockDiagnostics.class
+
+    // Snapshot state, guarded by SNAPSHOT_LOCK
+    private static final Object SNAPSHOT_LOCK = new Object();
+    private static final List<Watch> pending = new ArrayList<>();
+    private static int unlisted;
+    private static long nextSnapshotNanos;
+    private static Connection connection;
+
+    private LockDiagnostics() {
+    }
+
+    /** One statement execution being watched. */
+    private static final class Watch {
+        private final String operation;
+        private final String method;
+        private final String sql;
+        private final Object[] binds;
+        private final int batchRows;
+        private final String thread = Thread.currentThread().getName();
+        private final long startMillis = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private volatile boolean reported; // Already in a snapshot as a waiting statement
+        private String failure;            // Set before the watch is queued as a failure
+        private long failedNanos;
+
+        Watch(String operation, String method, String sql, Object[] binds, int batchRows) {
+            this.operation = operation;
+            this.method = method;
+            this.sql = sql;
+            this.binds = binds == null ? null : binds.clone(); // The statement may be re-bound before the snapshot
+            this.batchRows = batchRows;
+        }
+    }
+
+    // --- Recording, called by QueryMetrics ---
+
+    /**
+     * Starts watching a statement execution.
+     * @param binds Bind parameters, index i holding parameter i + 1; may be null.
+     * @return The token to pass to {@link #finished(Object, Throwable)}; null if
+     *         diagnostics are off.
+     */
+    static Object watch(String operation, String method, String sql, Object[] binds, int batchRows) {
+        if (!ENABLED) {
+            return null;
+        }
+        if (monitor == null) {
+            start();
+        }
+        Watch watch = new Watch(operation, method, sql, binds, batchRows);
+        IN_FLIGHT.add(watch);
+        return watch;
+    }
+
+    /**
+     * A statement execution ended. Lock errors are counted and, if the statement was
+     * watched, queued for the next snapshot.
+     * @param watch The token from {@link #watch}, or null.
+     * @param failure What the execution threw, or null if it succeeded.
+     */
+    static void finished(Object watch, Throwable failure) {
+        String kind = failure instanceof SQLException ? lockError((SQLException) failure) : null;
+        if (kind != null) {
+            (kind.equals("Deadlock") ? DEADLOCKS : LOCK_TIMEOUTS).increment();
+        }
+        if (watch == null) {
+            return;
+        }
+        Watch w = (Watch) watch;
+        IN_FLIGHT.remove(w);
+        if (kind != null) {
+            SQLException e = (SQLException) failure;
+            w.failure = kind + " (" + e.getSQLState() + ")";
+            w.failedNanos = System.nanoTime();
+            FAILURES.add(w);
+        }
+    }
+
+    /** @return "Lock timeout" or "Deadlock" if the exception or one chained to it is one, else null. */
+    private static String lockError(SQLException e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            for (SQLException s = t instanceof SQLException ? (SQLException) t : null; s != null; s = s.getNextException()) {
+                String state = s.getSQLState();
+                if (DEADLOCK.equals(state)) {
+                    return "Deadlock";
+                }
+                if (LOCK_TIMEOUT.equals(state) || LOCK_TIMEOUT_TRACE.equals(state)) {
+                    return "Lock timeout";
+                }
+            }
+        }
+        return null;
+    }
+
+    private static synchronized void start() {
+        if (monitor != null) {
+            return;
+        }
+        if (!closeListenerAdded) {
+            DBConnection.addCloseListener(LockDiagnostics::stop);
+            closeListenerAdded = true;
+        }
+        synchronized (SNAPSHOT_LOCK) {
+            nextSnapshotNanos = System.nanoTime();
+        }
+        long period = Math.max(20L, Math.min(500L, TimeUnit.NANOSECONDS.toMillis(WAIT_NANOS) / 4));
+        monitor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "LockDiagnostics-monitor");
+            t.setDaemon(true);
+            return t;
+        });
+        monitor.scheduleWithFixedDelay(LockDiagnostics::check, period, period, TimeUnit.MILLISECONDS);
+        LOG.info("Lock diagnostics on: statements waiting {} ms or failing on locks are written to {}",
+                TimeUnit.NANOSECONDS.toMillis(WAIT_NANOS), FILE);
+    }
+
+    /**
+     * Stops the monitor and closes its connection; the next watched statement starts
+     * them again. Runs when the connection pool closes.
+     */
+    static void stop() {
+        ScheduledExecutorService stopping;
+        synchronized (LockDiagnostics.class) {
+            stopping = monitor;
+            monitor = null;
+        }
+        if (stopping == null) {
+            return;
+        }
+        stopping.shutdown(); // Lets a snapshot in progress finish
+        synchronized (SNAPSHOT_LOCK) {
+            check(); // Failures since the last check still get their snapshot
+            closeSnapshotConnection();
+            pending.clear();
+            unlisted = 0;
+        }
+    }
+
+    // --- Snapshots, on the monitor thread ---
+
+    private static void check() {
+        synchronized (SNAPSHOT_LOCK) {
+            try {
+                long now = System.nanoTime();
+                for (Watch w; (w = FAILURES.poll()) != null; ) {
+                    addTrigger(w);
+                }
+                for (Watch w : IN_FLIGHT) {
+                    if (!w.reported && now - w.startNanos >= WAIT_NANOS) {
+                        w.reported = true;
+                        addTrigger(w);
+                    }
+                }
+                if (pending.isEmpty() || now - nextSnapshotNanos < 0) {
+                    return;
+                }
+                nextSnapshotNanos = now + MIN_INTERVAL_NANOS;
+                String snapshot = snapshot(now);
+                LOG.warn("Lock contention: {} statement(s) captured in {}", pending.size() + unlisted, FILE);
+                pending.clear();
+                unlisted = 0;
+                write(snapshot);
+                SNAPSHOTS.increment();
+            } catch (SQLException e) {
+                LOG.warn("Could not capture lock diagnostics: {}", e.getMessage());
+                closeSnapshotConnection();
+            } catch (IOException e) {
+                LOG.warn("Could not write lock diagnostics to {}: {}", FILE, e.toString());
+            } catch (RuntimeException e) {
+                LOG.error("Lock diagnostics failed: {}", e.toString());
+            }
+        }
+    }
+
+    private static void addTrigger(Watch watch) {
+        if (pending.contains(watch)) {
+            return; // Queued while waiting, then failed before its snapshot: listed once, as the failure
+        }
+        if (pending.size() < MAX_TRIGGERS) {
+            pending.add(watch);
+        } else {
+            unlisted++;
+        }
+    }
+
+    private static String snapshot(long now) throws SQLException {
+        List<String[]> locks;
+        List<String[]> transactions;
+        if (connection == null) {
+            connection = DBConnection.openUnpooledConnection();
+            connection.setAutoCommit(true);
+        }
+        try (Statement st = connection.createStatement()) {
+            locks = read(st, LOCKS_SQL);
+            transactions = read(st, TRANSACTIONS_SQL);
+        }
+
+        String nl = System.lineSeparator();
+        SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+        StringBuilder sb = new StringBuilder();
+        sb.append("==== ").append(time.format(new Date())).append(" lock diagnostics for ")
+                .append(DBConnection.getDatabaseUrl()).append(nl);
+
+        sb.append("Triggered by:").append(nl);
+        for (Watch w : pending) {
+            boolean failed = w.failure != null;
+            sb.append("  ").append(failed ? w.failure + " after" : "Waiting").append(' ')
+                    .append(String.format("%.1f", ((failed ? w.failedNanos : now) - w.startNanos) / 1e6))
+                    .append(failed ? " ms" : " ms so far").append(" in ").append(w.operation)
+                    .append(" (").append(w.method).append(") on thread ").append(w.thread)
+                    .append(", started ").append(time.format(new Date(w.startMillis))).append(nl);
+            sb.append("    SQL: ").append(w.sql == null ? "(batch)" : oneLine(w.sql)).append(nl);
+            sb.append("    Parameters: ").append(QueryMetrics.formatBinds(w.binds, w.batchRows)).append(nl);
+        }
+        if (unlisted > 0) {
+            sb.append("  ... and ").append(unlisted).append(" more").append(nl);
+        }
+
+        // Transactions by XID, to show what each holder and waiter is running
+        Map<String, String> sqlByXid = new HashMap<>();
+        String ownSql = oneLine(TRANSACTIONS_SQL);
+        transactions.removeIf(row -> row[6].equals(ownSql));
+        for (String[] row : transactions.subList(1, transactions.size())) {
+            sqlByXid.put(row[0], row[6]);
+        }
+        Map<String, List<String[]>> byLock = new LinkedHashMap<>();
+        for (String[] row : locks.subList(1, locks.size())) {
+            byLock.computeIfAbsent(row[3] + " " + row[1] + " " + row[4], k -> new ArrayList<>()).add(row);
+        }
+        sb.append("Contended locks:").append(nl);
+        boolean anyContended = false;
+        for (Map.Entry<String, List<String[]>> lock : byLock.entrySet()) {
+            boolean contended = false;
+            for (String[] row : lock.getValue()) {
+                contended |= "WAIT".equals(row[5]);
+            }
+            if (!contended) {
+                continue;
+            }
+            anyContended = true;
+            sb.append("  ").append(lock.getKey()).append(nl);
+            for (String[] row : lock.getValue()) {
+                String sql = sqlByXid.get(row[0]);
+                sb.append("    ").append("WAIT".equals(row[5]) ? "waiting" : "granted").append(' ').append(row[2])
+                        .append(" xid ").append(row[0]).append(": ")
+                        .append(sql == null || sql.isEmpty() ? "(no statement)" : sql).append(nl);
+            }
+        }
+        if (!anyContended) {
+            sb.append("  (none waiting at snapshot time)").append(nl);
+        }
+
+        sb.append("Locks (").append(locks.size() - 1).append("):").append(nl);
+        table(sb, locks, nl);
+        sb.append("Transactions (").append(transactions.size() - 1).append("):").append(nl);
+        table(sb, transactions, nl);
+        sb.append(nl);
+        return sb.toString();
+    }
+
+    /** @return The column names followed by one array per row, values trimmed. */
+    private static List<String[]> read(Statement st, String sql) throws SQLException {
+        List<String[]> rows = new ArrayList<>();
+        try (ResultSet rs = st.executeQuery(sql)) {
+            ResultSetMetaData meta = rs.getMetaData();
+            String[] header = new String[meta.getColumnCount()];
+            for (int i = 0; i < header.length; i++) {
+                header[i] = meta.getColumnLabel(i + 1);
+            }
+            rows.add(header);
+            while (rs.next()) {
+                String[] row = new String[header.length];
+                for (int i = 0; i < row.length; i++) {
+                    String value = rs.getString(i + 1);
+                    row[i] = value == null ? "" : oneLine(value);
+                }
+                rows.add(row);
+            }
+        }
+        return rows;
+    }
+
+    private static void table(StringBuilder sb, List<String[]> rows, String nl) {
+        int[] widths = new int[rows.get(0).length];
+        for (String[] row : rows) {
+            for (int i = 0; i < row.length; i++) {
+                widths[i] = Math.max(widths[i], row[i].length());
+            }
+        }
+        for (String[] row : rows) {
+            StringBuilder line = new StringBuilder(" ");
+            for (int i = 0; i < row.length; i++) {
+                line.append(' ').append(row[i]);
+                for (int pad = row[i].length(); pad < widths[i] && i < row.length - 1; pad++) {
+                    line.append(' ');
+                }
+            }
+            int end = line.length();
+            while (end > 0 && line.charAt(end - 1) == ' ') {
+                end--;
+            }
+            sb.append(line, 0, end).append(nl);
+        }
+    }
+
+    private static String oneLine(String s) {
+        String collapsed = s.trim().replaceAll("\\s+", " ");
+        return collapsed.length() > MAX_SQL_LENGTH ? collapsed.substring(0, MAX_SQL_LENGTH) + "..." : collapsed;
+    }
+
+    private static void write(String snapshot) throws IOException {
+        byte[] bytes = snapshot.getBytes(StandardCharsets.UTF_8);
+        File parent = FILE.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create directory " + parent);
+        }
+        if (FILE.length() > 0 && FILE.length() + bytes.length > MAX_FILE_BYTES) {
+            rotate();
+        }
+        try (FileOutputStream out = new FileOutputStream(FILE, true)) {
+            out.write(bytes);
+        }
+    }
+
+    /** Renames file to file.1, file.1 to file.2 and so on, dropping the oldest. */
+    private static void rotate() throws IOException {
+        if (FILES == 1) {
+            Files.deleteIfExists(FILE.toPath());
+            return;
+        }
+        for (int i = FILES - 1; i >= 1; i--) {
+            File from = i == 1 ? FILE : new File(FILE.getPath() + "." + (i - 1));
+            if (from.exists()) {
+                Files.move(from.toPath(), new File(FILE.getPath() + "." + i).toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static void closeSnapshotConnection() {
+        if (connection != null) {
+            try {
+                connection.close();
+            } catch (SQLException e) {
+                LOG.debug("Error closing lock diagnostics connection: {}", e.getMessage());
+            }
+            connection = null;
+        }
+    }
+
+    // --- Reading ---
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /** @return Statements that failed with a Derby lock timeout (40XL1 or 40XL2). */
+    public static long getLockTimeoutCount() {
+        return LOCK_TIMEOUTS.sum();
+    }
+
+    /** @return Statements chosen as a Derby deadlock victim (40001). */
+    public static long getDeadlockCount() {
+        return DEADLOCKS.sum();
+    }
+
+    public static long getSnapshotCount() {
+        return SNAPSHOTS.sum();
+    }
+
+    /** @return The file snapshots are written to. */
+    public static File getFile() {
+        return FILE;
+    }
+}
@@ -0,0 +1,269 @@
+import java.io.PrintStream;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Leveled, asynchronous logger for the database layer, so that queries running
+ * on the critical path never wait on console output.
+ *
+ * A call below the configured level returns after one field comparison: the
+ * message is a template with {} placeholders and is not formatted, and
+ * fixed-arity overloads avoid allocating an argument array. An enabled call
+ * records the time, level, thread, template and arguments in a bounded ring buffer
+ * and returns. A daemon thread formats the buffered events and writes them, ERROR
+ * and WARN to System.err and the rest to System.out. When the buffer is full,
+ * events are dropped rather than blocking the caller, and the count of dropped
+ * events is reported once there is room again. Buffered events are written on
+ * {@link #flush()} and at JVM exit.
+ *
+ * Arguments are formatted later on the appender thread, so pass immutable values
+ * (strings, numbers) or objects whose toString() is safe to call from another thread.
+ * A Throwable passed as the last argument, and not used by a placeholder, is
+ * written with its stack trace.
+ *
+ * Settings: -Dscheduler.log.level=ERROR|WARN|INFO|DEBUG (default INFO) and
+ * -Dscheduler.log.bufferSize=N (default 8192 events).
+ */
+public final class Log {
+
+    public enum Level { ERROR, WARN, INFO, DEBUG }
+
+    /** One buffered call, formatted by the appender thread. */
+    private static final class Event {
+        final long millis;
+        final Level level;
+        final String thread;
+        final String logger;
+        final String template;
+        final Object[] args;
+
+        Event(long millis, Level level, String thread, String logger, String template, Object[] args) {
+            this.millis = millis;
+            this.level = level;
+            this.thread = thread;
+            this.logger = logger;
+            this.template = template;
+            this.args = args;
+        }
+    }
+
+    private static final Object[] NO_ARGS = new Object[0];
+    private static final int DRAIN_BATCH = 256;
+
+    private static final ArrayBlockingQueue<Event> BUFFER =
+            new ArrayBlockingQueue<>(Math.max(16, Integer.getInteger("scheduler.log.bufferSize", 8192)));
+    private static final LongAdder DROPPED = new LongAdder();
+    private static final Object WRITE_LOCK = new Object(); // Serializes the appender thread and flush()
+    private static final SimpleDateFormat TIME_FORMAT = new SimpleDateFormat("HH:mm:ss.SSS"); // Guarded by WRITE_LOCK
+    private static long droppedReported; // Guarded by WRITE_LOCK
+
+    private static volatile int threshold = parseLevel(System.getProperty("scheduler.log.level"), Level.INFO).ordinal();
+
+    static {
+        Thread appender = new Thread(Log::runAppender, "log-appender");
+        appender.setDaemon(true);
+        appender.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+    }
+
+    private final String name;
+
+    private Log(String name) {
+        this.name = name;
+    }
+
+    /** @return A logger that tags its events with the class's simple name. */
+    public static Log get(Class<?> owner) {
+        return new Log(owner.getSimpleName());
+    }
+
+    // --- Configuration ---
+
+    public static Level getLevel() {
+        return Level.values()[threshold];
+    }
+
+    /** Changes the level for all loggers; takes effect immediately. */
+    public static void setLevel(Level level) {
+        threshold = level.ordinal();
+    }
+
+    /** @return Events dropped because the buffer was full. */
+    public static long getDroppedCount() {
+        return DROPPED.sum();
+    }
+
+    public boolean isEnabled(Level level) {
+        return level.ordinal() <= threshold;
+    }
+
+    public boolean isDebugEnabled() {
+        return Level.DEBUG.ordinal() <= threshold;
+    }
+
+    // --- Logging ---
+
+    public void error(String message) { log(Level.ERROR, message, NO_ARGS); }
+    public void error(String template, Object arg) { log(Level.ERROR, template, arg); }
+    public void error(String template, Object arg1, Object arg2) { log(Level.ERROR, template, arg1, arg2); }
+    public void error(String template, Object... args) { log(Level.ERROR, template, args); }
+
+    public void warn(String message) { log(Level.WARN, message, NO_ARGS); }
+    public void warn(String template, Object arg) { log(Level.WARN, template, arg); }
+    public void warn(String template, Object arg1, Object arg2) { log(Level.WARN, template, arg1, arg2); }
+    public void warn(String template, Object... args) { log(Level.WARN, template, args); }
+
+    public void info(String message) { log(Level.INFO, message, NO_ARGS); }
+    public void info(String template, Object arg) { log(Level.INFO, template, arg); }
+    public void info(String template, Object arg1, Object arg2) { log(Level.INFO, template, arg1, arg2); }
+    public void info(String template, Object... args) { log(Level.INFO, template, args); }
+
+    public void debug(String message) { log(Level.DEBUG, message, NO_ARGS); }
+    public void debug(String template, Object arg) { log(Level.DEBUG, template, arg); }
+    public void debug(String template, Object arg1, Object arg2) { log(Level.DEBUG, template, arg1, arg2); }
+    public void debug(String template, Object... args) { log(Level.DEBUG, template, args); }
+
+    private void log(Level level, String template, Object arg) {
+        if (level.ordinal() <= threshold) {
+            enqueue(level, template, new Object[]{arg});
+        }
+    }
+
+    private void log(Level level, String template, Object arg1, Object arg2) {
+        if (level.ordinal() <= threshold) {
+            enqueue(level, template, new Object[]{arg1, arg2});
+        }
+    }
+
+    private void log(Level level, String template, Object[] args) {
+        if (level.ordinal() <= threshold) {
+            enqueue(level, template, args);
+        }
+    }
+
+    private void enqueue(Level level, String template, Object[] args) {
+        Event event = new Event(System.currentTimeMillis(), level, Thread.currentThread().getName(), name, template, args);
+        if (!BUFFER.offer(event)) {
+            DROPPED.increment();
+        }
+    }
+
+    // --- Appender ---
+
+    /**
+     * Writes every buffered event before returning. Call before printing directly
+     * to the console if the output should appear after earlier log lines.
+     */
+    public static void flush() {
+        List<Event> batch = new ArrayList<>(DRAIN_BATCH);
+        synchronized (WRITE_LOCK) {
+            while (BUFFER.drainTo(batch, DRAIN_BATCH) > 0) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private static void runAppender() {
+        List<Event> batch = new ArrayList<>(DRAIN_BATCH);
+        while (true) {
+            try {
+                Event first = BUFFER.poll(1, TimeUnit.SECONDS);
+                if (first == null) {
+                    continue;
+                }
+                synchronized (WRITE_LOCK) {
+                    batch.add(first);
+                    BUFFER.drainTo(batch, DRAIN_BATCH - 1);
+                    write(batch);
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                // A failing toString() must not stop the appender
+                System.err.println("Log appender error: " + e);
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    /** Caller holds WRITE_LOCK. */
+    private static void write(List<Event> batch) {
+        long dropped = DROPPED.sum();
+        if (dropped > droppedReported) {
+            System.err.println(TIME_FORMAT.format(new Date()) + " WARN  [log-appender] Log: "
+                    + (dropped - droppedReported) + " log event(s) dropped, buffer full");
+            droppedReported = dropped;
+        }
+        boolean wroteOut = false;
+        boolean wroteErr = false;
+        for (Event event : batch) {
+            boolean error = event.level.ordinal() <= Level.WARN.ordinal();
+            PrintStream stream = error ? System.err : System.out;
+            stream.println(format(event));
+            Throwable thrown = unusedThrowable(event);
+            if (thrown != null) {
+                thrown.printStackTrace(stream);
+            }
+            wroteErr |= error;
+            wroteOut |= !error;
+        }
+        if (wroteOut) {
+            System.out.flush();
+        }
+        if (wroteErr) {
+            System.err.flush();
+        }
+    }
+
+    private static String format(Event event) {
+        StringBuilder sb = new StringBuilder(64 + event.template.length());
+        sb.append(TIME_FORMAT.format(new Date(event.millis))).append(' ');
+        String level = event.level.name();
+        sb.append(level);
+        for (int i = level.length(); i < 5; i++) {
+            sb.append(' ');
+        }
+        sb.append(" [").append(event.thread).append("] ").append(event.logger).append(": ");
+        int argIndex = 0;
+        int start = 0;
+        int placeholder;
+        while ((placeholder = event.template.indexOf("{}", start)) >= 0 && argIndex < event.args.length) {
+            sb.append(event.template, start, placeholder).append(event.args[argIndex++]);
+            start = placeholder + 2;
+        }
+        sb.append(event.template, start, event.template.length());
+        return sb.toString();
+    }
+
+    /** @return The last argument if it is a Throwable that no placeholder consumed, else null. */
+    private static Throwable unusedThrowable(Event event) {
+        int n = event.args.length;
+        if (n == 0 || !(event.args[n - 1] instanceof Throwable)) {
+            return null;
+        }
+        int placeholders = 0;
+        for (int i = event.template.indexOf("{}"); i >= 0; i = event.template.indexOf("{}", i + 2)) {
+            placeholders++;
+        }
+        return placeholders < n ? (Throwable) event.args[n - 1] : null;
+    }
+
+    private static Level parseLevel(String value, Level defaultLevel) {
+        if (value == null || value.trim().isEmpty()) {
+            return defaultLevel;
+        }
+        try {
+            return Level.valueOf(value.trim().toUpperCase());
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ignoring invalid value for scheduler.log.level: " + value);
+            return defaultLevel;
+        }
+    }
+}
@@ -1,4 +1,5 @@
 import java.awt.BorderLayout;
+import java.awt.Cursor;
 import java.awt.GridBagConstraints;
 import java.awt.GridBagLayout;
 import java.awt.Insets;
@@ -10,11 +11,17 @@ import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Base64;
 import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import javax.swing.DefaultComboBoxModel;
 import javax.swing.JButton;
 import javax.swing.JComboBox;
@@ -25,7 +32,7 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTable;
 import javax.swing.JTextField;
-import javax.swing.SwingWorker;
+import javax.swing.table.AbstractTableModel;
 import javax.swing.table.DefaultTableModel;
 
 
@@ -45,6 +52,7 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
     private static final String[] CLASS_TABLE_HEADERS = {"Course Code", "Description", "Seats"};
     private static final String[] STUDENT_TABLE_HEADERS = {"Student Name", "Status"}; // For display students in class
     // FIXED: Removed duplicate STUDENT_TABLE_HEADERS definition
+    private static final long LAUNCH_NANOS = System.nanoTime(); // Class initialization runs as main() starts
 
     // --- Instance Variables ---
     private String currentSemester;
@@ -88,13 +96,13 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
     private JComboBox<String> adminClassComboBox; // Combo box for selecting class to view/drop
     private JButton adminDisplayStudentsButton;
     private JButton adminDropClassButton;
-    private JComboBox<String> adminStudentComboBox; // Combo box for selecting student to drop
+    private JComboBox<Object> adminStudentComboBox; // Student objects, or a placeholder message
     private JButton adminDropStudentButton;
     private JLabel adminStatusLabel; // Feedback for admin drop actions
 
     // Student Tab Panel Components (jPanel2)
     private JPanel studentControlPanel; // Top panel with combo boxes and buttons
-    private JComboBox<String> studentSelectStudentComboBox; // Combo box for student selection
+    private JComboBox<Object> studentSelectStudentComboBox; // Student objects, or a placeholder message
     private JComboBox<String> studentSelectClassComboBox; // Combo box for class selection
     private JButton scheduleButton;
     private JButton displayScheduleButton;
@@ -105,28 +113,22 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
     private JScrollPane tableScrollPane;
 
 
+    private long windowShownNanos; // Set on the EDT when the window first opens
+
     /**
-     * Creates new form MainFrame
+     * Creates new form MainFrame. The database is started and the initial data
+     * loaded in the background (see {@link StartupWorker}), so the window can be
+     * shown immediately; its controls stay disabled until the data is in.
      */
     public MainFrame() {
         checkData(); // Load author info first
         initComponents(); // Initialize Swing components generated by NetBeans/GUI builder
         setupCustomComponents(); // Setup components not handled by initComponents
-        
-        // Initialize database tables if needed
-        try {
-            DBInitializer.initializeDatabase();
-            loadInitialData(); // Load semesters, courses, students into combo boxes
-        } catch (SQLException e) {
-            JOptionPane.showMessageDialog(this, 
-                "Database initialization failed: " + e.getMessage(), 
-                "Database Error", 
-                JOptionPane.ERROR_MESSAGE);
-            System.err.println("Database initialization failed:");
-            e.printStackTrace();
-        }
-        
         setupWindowListener(); // Add listener to close DB connection on exit
+
+        // Boot the database, check the schema and load semesters, courses and students off the EDT
+        setStartupInProgress(true);
+        new StartupWorker().execute();
     }
 
     // --- Initialization Methods ---
@@ -161,22 +163,23 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         // Setup the admin display/drop controls area (added below the admin tabs in jPanel1)
         initializeAdminControls(jPanel1); // jPanel1 is the main Admin tab panel
 
-        // Add Action Listeners (using lambda expressions for brevity)
-        aboutButton.addActionListener(e -> aboutButtonActionPerformed());
-        addSemesterSubmitButton.addActionListener(e -> addSemesterSubmitButtonActionPerformed());
-        changeSemesterButton.addActionListener(e -> changeSemesterButtonActionPerformed());
+        // Add Action Listeners (using lambda expressions for brevity); each click is traced as a
+        // Flight Recorder UI action whose workers and queries share its correlation ID (see Tracing)
+        aboutButton.addActionListener(Tracing.action("about", e -> aboutButtonActionPerformed()));
+        addSemesterSubmitButton.addActionListener(Tracing.action("addSemester", e -> addSemesterSubmitButtonActionPerformed()));
+        changeSemesterButton.addActionListener(Tracing.action("changeSemester", e -> changeSemesterButtonActionPerformed()));
 
         // Listeners for buttons that trigger background tasks
-        addCourseButton.addActionListener(e -> addCourseButtonActionPerformed());
-        addClassButton.addActionListener(e -> addClassButtonActionPerformed());
-        addStudentButton.addActionListener(e -> addStudentButtonActionPerformed());
-        scheduleButton.addActionListener(e -> scheduleClassButtonActionPerformed());
-        displayScheduleButton.addActionListener(e -> displayScheduleButtonActionPerformed());
-        displayClassesButton.addActionListener(e -> displayClassesButtonActionPerformed());
-        studentDropClassButton.addActionListener(e -> studentDropClassButtonActionPerformed());
-        adminDisplayStudentsButton.addActionListener(e -> adminDisplayStudentsButtonActionPerformed());
-        adminDropClassButton.addActionListener(e -> adminDropClassButtonActionPerformed());
-        adminDropStudentButton.addActionListener(e -> adminDropStudentButtonActionPerformed());
+        addCourseButton.addActionListener(Tracing.action("addCourse", e -> addCourseButtonActionPerformed()));
+        addClassButton.addActionListener(Tracing.action("addClass", e -> addClassButtonActionPerformed()));
+        addStudentButton.addActionListener(Tracing.action("addStudent", e -> addStudentButtonActionPerformed()));
+        scheduleButton.addActionListener(Tracing.action("scheduleClass", e -> scheduleClassButtonActionPerformed()));
+        displayScheduleButton.addActionListener(Tracing.action("displaySchedule", e -> displayScheduleButtonActionPerformed()));
+        displayClassesButton.addActionListener(Tracing.action("displayClasses", e -> displayClassesButtonActionPerformed()));
+        studentDropClassButton.addActionListener(Tracing.action("studentDropClass", e -> studentDropClassButtonActionPerformed()));
+        adminDisplayStudentsButton.addActionListener(Tracing.action("adminDisplayStudents", e -> adminDisplayStudentsButtonActionPerformed()));
+        adminDropClassButton.addActionListener(Tracing.action("adminDropClass", e -> adminDropClassButtonActionPerformed()));
+        adminDropStudentButton.addActionListener(Tracing.action("adminDropStudent", e -> adminDropStudentButtonActionPerformed()));
         // Initial population of combo boxes depends on semester being set first
     }
 
@@ -194,12 +197,175 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         rebuildStudentComboBoxes(); // Load students (doesn't depend on semester)
     }
 
+    /** Everything the first screen shows, read by {@link StartupWorker}. */
+    private static final class StartupData {
+        List<String> semesters;
+        List<String> semesterCourses; // Course codes of the first semester, which becomes current
+        List<String> allCourses;
+        List<Student> students;
+        long databaseReadyNanos; // 0 until the schema check has passed
+        long semestersMillis;
+        long coursesMillis;
+        long studentsMillis;
+    }
+
+    /**
+     * Startup pipeline: boots Derby and brings the schema up to date (including any
+     * log recovery) on a background thread, then loads the semester list with the
+     * first semester's courses, the course list and the student list in parallel.
+     * done() fills the window and logs time-to-interactive figures measured from launch.
+     */
+    private class StartupWorker extends TracedWorker<StartupData, String> {
+        private final StartupData data = new StartupData();
+
+        StartupWorker() {
+            super("startup");
+        }
+
+        @Override
+        protected StartupData runInBackground() throws Exception {
+            publish("Starting database...");
+            DBInitializer.initializeDatabase(); // The first connection boots Derby
+            data.databaseReadyNanos = System.nanoTime();
+
+            publish("Loading semesters, courses and students...");
+            AtomicInteger threadCount = new AtomicInteger();
+            Tracing.Context context = Tracing.current(); // Loads are traced as part of startup
+            ExecutorService loaders = Executors.newFixedThreadPool(3, r -> {
+                Thread t = new Thread(() -> {
+                    Tracing.enter(context);
+                    r.run();
+                }, "startup-loader-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            try {
+                Future<List<String>> semesters = loaders.submit(() -> {
+                    long start = System.nanoTime();
+                    List<String> list = SemesterQueries.getSemesterList();
+                    data.semesterCourses = list.isEmpty()
+                            ? new ArrayList<>() : SemesterQueries.getAllCourseCodesBySemester(list.get(0));
+                    data.semestersMillis = elapsedMillis(start);
+                    return list;
+                });
+                Future<List<String>> courses = loaders.submit(() -> {
+                    long start = System.nanoTime();
+                    List<String> list = SemesterQueries.getAllCourseCodes();
+                    data.coursesMillis = elapsedMillis(start);
+                    return list;
+                });
+                Future<List<Student>> students = loaders.submit(() -> {
+                    long start = System.nanoTime();
+                    List<Student> list = SemesterQueries.getAllStudents();
+                    data.studentsMillis = elapsedMillis(start);
+                    return list;
+                });
+                data.semesters = await(semesters);
+                data.allCourses = await(courses);
+                data.students = await(students);
+            } finally {
+                loaders.shutdownNow();
+            }
+            return data;
+        }
+
+        @Override
+        protected void process(List<String> messages) {
+            String message = messages.get(messages.size() - 1);
+            studentScheduleStatusLabel.setText(message);
+            adminStatusLabel.setText(message);
+        }
+
+        @Override
+        protected void whenDone() {
+            try {
+                get();
+            } catch (InterruptedException | ExecutionException e) {
+                if (data.databaseReadyNanos == 0) {
+                    // The database never came up: leave its controls disabled, or every click fails again
+                    setCursor(Cursor.getDefaultCursor());
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    JOptionPane.showMessageDialog(MainFrame.this,
+                        "Database initialization failed: " + cause.getMessage(),
+                        "Database Error",
+                        JOptionPane.ERROR_MESSAGE);
+                    System.err.println("Database initialization failed:");
+                    cause.printStackTrace();
+                    updateCurrentSemester("Error");
+                } else {
+                    // The database is up; let each list load (and report) on its own
+                    setStartupInProgress(false);
+                    handleDatabaseError(e, "loading initial data");
+                    loadInitialData();
+                }
+                return;
+            }
+            setStartupInProgress(false);
+            showStudents(data.students); // First: semester controls are only enabled if students exist
+            showAllCourses(data.allCourses);
+            showSemesters(data.semesters, false);
+            if (!data.semesters.isEmpty()) {
+                showSemesterCourses(data.semesterCourses);
+            }
+            long interactiveNanos = System.nanoTime();
+            System.out.println("Startup: window shown after " + millisSinceLaunch(windowShownNanos)
+                    + " ms, database ready after " + millisSinceLaunch(data.databaseReadyNanos)
+                    + " ms, interactive after " + millisSinceLaunch(interactiveNanos)
+                    + " ms (JVM uptime " + ManagementFactory.getRuntimeMXBean().getUptime() + " ms)"
+                    + "; parallel loads: semesters " + data.semestersMillis + " ms, courses " + data.coursesMillis
+                    + " ms, students " + data.studentsMillis + " ms (" + data.students.size() + " students)");
+        }
+    }
+
+    /** Waits for a load, rethrowing its own exception rather than a wrapper. */
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private static long elapsedMillis(long startNanos) {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+    }
+
+    private static String millisSinceLaunch(long nanos) {
+        return nanos == 0 ? "-" : String.valueOf(TimeUnit.NANOSECONDS.toMillis(nanos - LAUNCH_NANOS));
+    }
+
+    /**
+     * Shows or clears the startup progress state: a wait cursor, and every control
+     * that needs the database disabled until the initial data has loaded.
+     * @param inProgress True while starting up.
+     */
+    private void setStartupInProgress(boolean inProgress) {
+        setCursor(inProgress ? Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR) : Cursor.getDefaultCursor());
+        currentSemesterComboBox.setEnabled(!inProgress);
+        changeSemesterButton.setEnabled(!inProgress);
+        addSemesterSubmitButton.setEnabled(!inProgress);
+        addCourseButton.setEnabled(!inProgress);
+        addStudentButton.setEnabled(!inProgress);
+        if (inProgress) {
+            currentSemesterLabel.setText("Loading...");
+            setAdminControlsEnabled(false);
+            setStudentControlsEnabled(false);
+        }
+    }
+
     /**
      * Adds a WindowListener to ensure the database connection is closed
      * when the application window is closed.
      */
     private void setupWindowListener() {
         this.addWindowListener(new WindowAdapter() {
+            @Override
+            public void windowOpened(WindowEvent e) {
+                if (windowShownNanos == 0) {
+                    windowShownNanos = System.nanoTime();
+                }
+            }
+
             @Override
             public void windowClosing(WindowEvent e) {
                 System.out.println("Closing application, closing DB connection...");
@@ -519,29 +685,16 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
      */
     public void rebuildSemesterComboBoxes() {
         // Use SwingWorker to fetch semesters in the background
-        new SwingWorker<ArrayList<String>, Void>() {
+        new TracedWorker<ArrayList<String>, Void>() {
             @Override
-            protected ArrayList<String> doInBackground() throws Exception {
+            protected ArrayList<String> runInBackground() throws Exception {
                 return SemesterQueries.getSemesterList();
             }
 
             @Override
-            protected void done() {
+            protected void whenDone() {
                 try {
-                    ArrayList<String> semesters = get();
-                    DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>(semesters.toArray(new String[0]));
-                    currentSemesterComboBox.setModel(model);
-
-                    if (!semesters.isEmpty()) {
-                        // Set current semester to the first in the list by default
-                        String firstSemester = semesters.get(0);
-                        currentSemesterComboBox.setSelectedItem(firstSemester); // Select in combo box
-                        updateCurrentSemester(firstSemester); // Update label and trigger dependent updates
-                    } else {
-                        updateCurrentSemester("None"); // Indicate no semesters
-                        // Disable relevant controls if no semester is available
-                        // (Handled within updateCurrentSemester)
-                    }
+                    showSemesters(get(), true);
                 } catch (InterruptedException | ExecutionException e) {
                     handleDatabaseError(e, "loading semesters");
                     updateCurrentSemester("Error");
@@ -551,6 +704,27 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         }.execute();
     }
 
+    /**
+     * Fills the semester combo box and makes the first semester current.
+     * @param semesters The semester list.
+     * @param reloadCourses True to load the first semester's course lists, false if the caller shows them.
+     */
+    private void showSemesters(List<String> semesters, boolean reloadCourses) {
+        DefaultComboBoxModel<String> model = new DefaultComboBoxModel<>(semesters.toArray(new String[0]));
+        currentSemesterComboBox.setModel(model);
+
+        if (!semesters.isEmpty()) {
+            // Set current semester to the first in the list by default
+            String firstSemester = semesters.get(0);
+            currentSemesterComboBox.setSelectedItem(firstSemester); // Select in combo box
+            updateCurrentSemester(firstSemester, reloadCourses); // Update label and trigger dependent updates
+        } else {
+            updateCurrentSemester("None"); // Indicate no semesters
+            // Disable relevant controls if no semester is available
+            // (Handled within updateCurrentSemester)
+        }
+    }
+
     /**
      * Fetches course codes (all or by semester) and updates relevant combo boxes.
      */
@@ -565,17 +739,16 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         }
 
         // Fetch all courses for the "Add Class" panel's combo box
-        new SwingWorker<ArrayList<String>, Void>() {
+        new TracedWorker<ArrayList<String>, Void>() {
             @Override
-            protected ArrayList<String> doInBackground() throws Exception {
+            protected ArrayList<String> runInBackground() throws Exception {
                 return SemesterQueries.getAllCourseCodes();
             }
 
             @Override
-            protected void done() {
+            protected void whenDone() {
                 try {
-                    ArrayList<String> courses = get();
-                    addClassCourseComboBox.setModel(new DefaultComboBoxModel<>(courses.toArray(new String[0])));
+                    showAllCourses(get());
                 } catch (InterruptedException | ExecutionException e) {
                      handleDatabaseError(e, "loading all courses");
                      addClassCourseComboBox.setModel(new DefaultComboBoxModel<>(new String[]{"Error loading..."}));
@@ -584,21 +757,16 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         }.execute();
 
         // Fetch courses specific to the current semester for Student and Admin panels
-        new SwingWorker<ArrayList<String>, Void>() {
+        new TracedWorker<ArrayList<String>, Void>() {
              @Override
-             protected ArrayList<String> doInBackground() throws Exception {
+             protected ArrayList<String> runInBackground() throws Exception {
                   return SemesterQueries.getAllCourseCodesBySemester(currentSemester);
              }
 
              @Override
-             protected void done() {
+             protected void whenDone() {
                   try {
-                       ArrayList<String> semesterCourses = get();
-                       DefaultComboBoxModel<String> semesterCourseModelStudent = new DefaultComboBoxModel<>(semesterCourses.toArray(new String[0]));
-                       DefaultComboBoxModel<String> semesterCourseModelAdmin = new DefaultComboBoxModel<>(semesterCourses.toArray(new String[0])); // Need separate model instance
-                       // Update both student and admin class selection combo boxes
-                       studentSelectClassComboBox.setModel(semesterCourseModelStudent);
-                       adminClassComboBox.setModel(semesterCourseModelAdmin);
+                       showSemesterCourses(get());
                   } catch (InterruptedException | ExecutionException e) {
                        handleDatabaseError(e, "loading courses for semester " + currentSemester);
                        DefaultComboBoxModel<String> errorModel = new DefaultComboBoxModel<>(new String[]{"Error loading..."});
@@ -610,48 +778,40 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
     }
 
 
+    /** Fills the "Add Class" course combo box with every course code. */
+    private void showAllCourses(List<String> courses) {
+        addClassCourseComboBox.setModel(new DefaultComboBoxModel<>(courses.toArray(new String[0])));
+    }
+
+    /** Fills the student and admin class combo boxes with the current semester's course codes. */
+    private void showSemesterCourses(List<String> semesterCourses) {
+        DefaultComboBoxModel<String> semesterCourseModelStudent = new DefaultComboBoxModel<>(semesterCourses.toArray(new String[0]));
+        DefaultComboBoxModel<String> semesterCourseModelAdmin = new DefaultComboBoxModel<>(semesterCourses.toArray(new String[0])); // Need separate model instance
+        // Update both student and admin class selection combo boxes
+        studentSelectClassComboBox.setModel(semesterCourseModelStudent);
+        adminClassComboBox.setModel(semesterCourseModelAdmin);
+    }
+
     /**
      * Fetches the student list and updates student selection combo boxes.
      * If the list is empty, shows a helpful message to add students first.
      */
     private void rebuildStudentComboBoxes() {
-         new SwingWorker<ArrayList<String>, Void>() {
+         new TracedWorker<ArrayList<Student>, Void>() {
             @Override
-            protected ArrayList<String> doInBackground() throws Exception {
+            protected ArrayList<Student> runInBackground() throws Exception {
                 return SemesterQueries.getAllStudents();
             }
 
             @Override
-            protected void done() {
+            protected void whenDone() {
                 try {
-                    ArrayList<String> students = get();
-
-                    boolean hasRealStudents = !students.isEmpty();
-
-                    // Handle empty student list with descriptive message
-                    if (!hasRealStudents) {
-                        students.add("No students found - add students first");
-                    }
-
-                    DefaultComboBoxModel<String> studentModel = new DefaultComboBoxModel<>(students.toArray(new String[0]));
-                    // Update both student and admin student selection combo boxes
-                    studentSelectStudentComboBox.setModel(studentModel);
-                    // Use a separate model instance for the admin combo box
-                    adminStudentComboBox.setModel(new DefaultComboBoxModel<>(students.toArray(new String[0])));
-
-                    // Enable/disable student-specific buttons based ONLY on whether real students exist
-                    // Semester-based enabling/disabling is handled separately in updateCurrentSemester
-                    scheduleButton.setEnabled(hasRealStudents);
-                    displayScheduleButton.setEnabled(hasRealStudents);
-                    studentDropClassButton.setEnabled(hasRealStudents);
-                    adminDropStudentButton.setEnabled(hasRealStudents);
-
-
+                    showStudents(get());
                 } catch (InterruptedException | ExecutionException e) {
                     handleDatabaseError(e, "loading students");
-                    DefaultComboBoxModel<String> errorModel = new DefaultComboBoxModel<>(new String[]{"Error loading..."});
+                    DefaultComboBoxModel<Object> errorModel = new DefaultComboBoxModel<>(new Object[]{"Error loading..."});
                     studentSelectStudentComboBox.setModel(errorModel);
-                    adminStudentComboBox.setModel(new DefaultComboBoxModel<>(new String[]{"Error loading..."})); // Separate instance
+                    adminStudentComboBox.setModel(new DefaultComboBoxModel<>(new Object[]{"Error loading..."})); // Separate instance
                     // Disable buttons on error
                     scheduleButton.setEnabled(false);
                     displayScheduleButton.setEnabled(false);
@@ -662,11 +822,49 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         }.execute();
     }
 
+    /**
+     * Fills the student combo boxes, or shows a hint to add students if there are none.
+     * @param studentList The students.
+     */
+    private void showStudents(List<Student> studentList) {
+        // Combo boxes hold the Student objects; names are formatted when rendered
+        Object[] students = studentList.toArray();
+
+        boolean hasRealStudents = students.length > 0;
+
+        // Handle empty student list with descriptive message
+        if (!hasRealStudents) {
+            students = new Object[]{"No students found - add students first"};
+        }
+
+        DefaultComboBoxModel<Object> studentModel = new DefaultComboBoxModel<>(students);
+        // Update both student and admin student selection combo boxes
+        studentSelectStudentComboBox.setModel(studentModel);
+        // Use a separate model instance for the admin combo box
+        adminStudentComboBox.setModel(new DefaultComboBoxModel<>(students));
+
+        // Enable/disable student-specific buttons based ONLY on whether real students exist
+        // Semester-based enabling/disabling is handled separately in updateCurrentSemester
+        scheduleButton.setEnabled(hasRealStudents);
+        displayScheduleButton.setEnabled(hasRealStudents);
+        studentDropClassButton.setEnabled(hasRealStudents);
+        adminDropStudentButton.setEnabled(hasRealStudents);
+    }
+
     /**
     * Updates the current semester label and triggers updates for dependent UI elements.
     * @param newSemester The new semester name ("None" or "Error" if applicable).
     */
     private void updateCurrentSemester(String newSemester) {
+        updateCurrentSemester(newSemester, true);
+    }
+
+    /**
+    * Updates the current semester label and dependent UI elements.
+    * @param newSemester The new semester name ("None" or "Error" if applicable).
+    * @param reloadCourses True to reload the semester's course lists, false if the caller shows them.
+    */
+    private void updateCurrentSemester(String newSemester, boolean reloadCourses) {
         currentSemester = newSemester;
         currentSemesterLabel.setText(newSemester != null ? newSemester : "N/A");
 
@@ -679,7 +877,9 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
 
         if (validSemester) {
             // Refresh course lists and potentially other semester-dependent data
-            rebuildCourseComboBoxes();
+            if (reloadCourses) {
+                rebuildCourseComboBoxes();
+            }
             // Clear the display table when semester changes
             clearDisplayTable();
             studentScheduleStatusLabel.setText(" "); // Clear student status
@@ -729,7 +929,7 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
 
         // These depend on both a valid semester AND students existing
         boolean studentsExist = studentSelectStudentComboBox.getItemCount() > 0 &&
-                               ! "No students found - add students first".equals(studentSelectStudentComboBox.getItemAt(0));
+                               studentSelectStudentComboBox.getItemAt(0) instanceof Student;
 
         boolean allowActions = enabled && studentsExist;
 
@@ -748,19 +948,61 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
     }
 
     /**
-     * Updates the main display table with new data and headers.
-     * Should be called from the EDT (e.g., in SwingWorker's done() method).
+     * Replaces the main display table with an empty model that rows can be streamed into.
+     * Must be called from the EDT.
      *
-     * @param data    The 2D data array (or List<List<Object>>).
      * @param headers The column headers.
+     * @return The new model; append rows to it from SwingWorker's process() method.
      */
-    private void updateDisplayTable(List<List<Object>> data, String[] headers) {
-        // Convert List<List<Object>> to Object[][] for DefaultTableModel
-        Object[][] dataArray = data.stream()
-                                   .map(List::toArray)
-                                   .toArray(Object[][]::new);
-        DefaultTableModel model = new DefaultTableModel(dataArray, headers);
+    private RowTableModel startDisplayTable(String[] headers) {
+        RowTableModel model = new RowTableModel(headers);
         displayTable.setModel(model);
+        return model;
+    }
+
+    /**
+     * Read-only table model for rows streamed from SemesterQueries. Holds the row
+     * objects it is given without copying, and fires one insert event per chunk.
+     * Cell values are taken from the rows only when the table renders them.
+     */
+    private static class RowTableModel extends AbstractTableModel {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] headers;
+        private final List<TableRow> rows = new ArrayList<>();
+
+        RowTableModel(String[] headers) {
+            this.headers = headers;
+        }
+
+        void addRows(List<? extends TableRow> chunk) {
+            if (chunk.isEmpty()) {
+                return;
+            }
+            int first = rows.size();
+            rows.addAll(chunk);
+            fireTableRowsInserted(first, rows.size() - 1);
+        }
+
+        @Override
+        public int getRowCount() {
+            return rows.size();
+        }
+
+        @Override
+        public int getColumnCount() {
+            return headers.length;
+        }
+
+        @Override
+        public String getColumnName(int column) {
+            return headers[column];
+        }
+
+        @Override
+        public Object getValueAt(int row, int column) {
+            return rows.get(row).getColumnValue(column);
+        }
     }
 
 
@@ -798,12 +1040,12 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
          addSemesterSubmitButton.setEnabled(false);
          addSemesterStatusLabel.setText("Adding semester...");
 
-         new SwingWorker<Void, Void>() {
+         new TracedWorker<Void, Void>() {
              private boolean success = false;
              private String errorMessage = null;
 
              @Override
-             protected Void doInBackground() throws Exception {
+             protected Void runInBackground() throws Exception {
                  try {
                      SemesterQueries.addSemester(semester);
                      success = true;
@@ -814,11 +1056,11 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
                      e.printStackTrace(); // FIXED: Use printStackTrace for details
                      // System.err.println("SQL Error: " + e); // Redundant
                  }
-                 return null; // FIXED: Return null from doInBackground
+                 return null; // FIXED: Return null from runInBackground
              }
 
              @Override
-             protected void done() {
+             protected void whenDone() {
                  if (success) {
                      addSemesterStatusLabel.setText("Semester " + semester + " added.");
                      addSemesterTextfield.setText(""); // Clear field on success
@@ -848,12 +1090,12 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         addCourseButton.setEnabled(false);
         courseStatusLabel.setText("Adding course " + courseCode + "...");
 
-        new SwingWorker<Void, Void>() {
+        new TracedWorker<Void, Void>() {
             boolean success = false;
             String dbError = null;
 
             @Override
-            protected Void doInBackground() throws Exception {
+            protected Void runInBackground() throws Exception {
                 try {
                     SemesterQueries.addCourse(courseCode, description);
                     success = true;
@@ -866,7 +1108,7 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
             }
 
             @Override
-            protected void done() {
+            protected void whenDone() {
                 if (success) {
                     courseStatusLabel.setText("Course " + courseCode + " added successfully.");
                     courseCodeTextField.setText("");
@@ -916,12 +1158,12 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         addClassButton.setEnabled(false);
         classStatusLabel.setText("Adding class " + selectedCourse + "...");
 
-        new SwingWorker<Void, Void>() {
+        new TracedWorker<Void, Void>() {
             boolean success = false;
             String dbError = null;
 
             @Override
-            protected Void doInBackground() throws Exception {
+            protected Void runInBackground() throws Exception {
                 try {
                     // Ensure currentSemester is valid before proceeding (already checked above, but good practice)
                     if (currentSemester == null || "None".equals(currentSemester) || "Error".equals(currentSemester)) {
@@ -940,7 +1182,7 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
             }
 
              @Override
-            protected void done() {
+            protected void whenDone() {
                 if (success) {
                     classStatusLabel.setText("Class " + selectedCourse + " added for " + currentSemester + ".");
                     seatsTextField.setText(""); // Clear seats field
@@ -969,12 +1211,12 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
          addStudentButton.setEnabled(false);
          studentStatusLabel.setText("Adding student " + firstName + " " + lastName + "...");
 
-         new SwingWorker<Void, Void>() {
+         new TracedWorker<Void, Void>() {
              boolean success = false;
              String dbError = null;
 
              @Override
-             protected Void doInBackground() throws Exception {
+             protected Void runInBackground() throws Exception {
                  try {
                      SemesterQueries.addStudent(studentId, firstName, lastName);
                      success = true;
@@ -988,7 +1230,7 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
              }
 
              @Override
-             protected void done() {
+             protected void whenDone() {
                  if (success) {
                      studentStatusLabel.setText("Student " + lastName + ", " + firstName + " added.");
                      studentIdTextField.setText("");
@@ -1006,10 +1248,10 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
     // FIXED: Removed duplicate handler with ActionEvent parameter
     private void scheduleClassButtonActionPerformed() {
         // FIXED: Declare local variables and get selections
-        String studentSelection = (String) studentSelectStudentComboBox.getSelectedItem();
+        Object studentSelection = studentSelectStudentComboBox.getSelectedItem();
         String classSelection = (String) studentSelectClassComboBox.getSelectedItem();
 
-        if (studentSelection == null || studentSelection.contains("No students found") || studentSelection.contains("Error loading")) {
+        if (!(studentSelection instanceof Student)) { // Placeholder message or nothing selected
             studentScheduleStatusLabel.setText("Please select a valid student.");
             return;
         }
@@ -1023,22 +1265,17 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
          }
 
 
-        // FIXED: Assume SemesterQueries handles parsing the ID from the selection string
-        String studentId = SemesterQueries.getStudentIDFromComboBox(studentSelection);
-        if (studentId == null) {
-             studentScheduleStatusLabel.setText("Could not parse Student ID from selection.");
-             return;
-        }
+        String studentId = ((Student) studentSelection).getStudentId();
 
         // Disable UI elements during operation
         setStudentControlsEnabled(false); // Disable all student controls temporarily
         studentScheduleStatusLabel.setText("Scheduling " + studentSelection + " for " + classSelection + "...");
 
-        new SwingWorker<String, Void>() {
+        new TracedWorker<String, Void>() {
             String dbError = null;
 
             @Override
-            protected String doInBackground() throws Exception {
+            protected String runInBackground() throws Exception {
                 try {
                      // Ensure currentSemester is valid
                      if (currentSemester == null || "None".equals(currentSemester) || "Error".equals(currentSemester)) {
@@ -1058,9 +1295,9 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
             }
 
             @Override
-            protected void done() {
+            protected void whenDone() {
                 try {
-                    String status = get(); // Get the status returned by doInBackground
+                    String status = get(); // Get the status returned by runInBackground
                     if (status != null) {
                         studentScheduleStatusLabel.setText("Student " + studentSelection + " " + status + " for " + classSelection + ".");
                         // Optionally, refresh the student's schedule display immediately
@@ -1085,9 +1322,9 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
     // FIXED: Removed duplicate handler with ActionEvent parameter
     private void displayScheduleButtonActionPerformed() {
         // FIXED: Declare local variable and get selection
-        String studentSelection = (String) studentSelectStudentComboBox.getSelectedItem();
+        Object studentSelection = studentSelectStudentComboBox.getSelectedItem();
 
-        if (studentSelection == null || studentSelection.contains("No students found") || studentSelection.contains("Error loading")) {
+        if (!(studentSelection instanceof Student)) { // Placeholder message or nothing selected
             studentScheduleStatusLabel.setText("Please select a valid student.");
             return;
         }
@@ -1096,44 +1333,45 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
              return;
          }
 
-        // FIXED: Assume SemesterQueries handles parsing ID
-        String studentId = SemesterQueries.getStudentIDFromComboBox(studentSelection);
-        if (studentId == null) {
-             studentScheduleStatusLabel.setText("Could not parse Student ID from selection.");
-             return;
-        }
+        String studentId = ((Student) studentSelection).getStudentId();
 
         studentScheduleStatusLabel.setText("Loading schedule for " + studentSelection + "...");
         setStudentControlsEnabled(false); // Disable controls during load
 
-        new SwingWorker<List<List<Object>>, Void>() {
+        // Rows are streamed into the table as they are read, without buffering the result
+        RowTableModel model = startDisplayTable(SCHEDULE_TABLE_HEADERS);
+        new TracedWorker<Boolean, ScheduleEntry>() {
              String dbError = null;
 
              @Override
-             protected List<List<Object>> doInBackground() throws Exception {
+             protected Boolean runInBackground() throws Exception {
                  try {
                       // Ensure currentSemester is valid
                       if (currentSemester == null || "None".equals(currentSemester) || "Error".equals(currentSemester)) {
                           throw new IllegalStateException("No valid semester selected.");
                       }
-                     return SemesterQueries.getScheduleByStudent(currentSemester, studentId);
+                     SemesterQueries.forEachScheduleEntry(currentSemester, studentId, row -> publish(row));
+                     return true;
                  } catch (SQLException e) {
                      dbError = e.getMessage();
                      System.err.println("SQL Error loading student schedule:");
                      e.printStackTrace();
-                     return null;
+                     return false;
                  } catch (IllegalStateException e) {
                      dbError = e.getMessage();
-                     return null;
+                     return false;
                  }
              }
 
              @Override
-             protected void done() {
+             protected void process(List<ScheduleEntry> rows) {
+                 model.addRows(rows);
+             }
+
+             @Override
+             protected void whenDone() {
                  try {
-                     List<List<Object>> scheduleData = get();
-                     if (scheduleData != null) {
-                          updateDisplayTable(scheduleData, SCHEDULE_TABLE_HEADERS);
+                     if (get()) {
                           studentScheduleStatusLabel.setText("Displaying schedule for " + studentSelection);
                      } else {
                           studentScheduleStatusLabel.setText("Error loading schedule: " + (dbError != null ? dbError : "Unknown error"));
@@ -1161,34 +1399,40 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         studentScheduleStatusLabel.setText("Loading all classes for " + currentSemester + "...");
         setStudentControlsEnabled(false); // Disable controls during load
 
-        new SwingWorker<List<List<Object>>, Void>() {
+        // Rows are streamed into the table as they are read, without buffering the result
+        RowTableModel model = startDisplayTable(CLASS_TABLE_HEADERS);
+        new TracedWorker<Boolean, ClassOffering>() {
              String dbError = null;
 
              @Override
-             protected List<List<Object>> doInBackground() throws Exception {
+             protected Boolean runInBackground() throws Exception {
                  try {
                       // Ensure currentSemester is valid
                       if (currentSemester == null || "None".equals(currentSemester) || "Error".equals(currentSemester)) {
                           throw new IllegalStateException("No valid semester selected.");
                       }
-                     return SemesterQueries.getClassesBySemester(currentSemester);
+                     SemesterQueries.forEachClassInSemester(currentSemester, row -> publish(row));
+                     return true;
                  } catch (SQLException e) {
                      dbError = e.getMessage();
                      System.err.println("SQL Error loading classes by semester:");
                      e.printStackTrace();
-                     return null;
+                     return false;
                  } catch (IllegalStateException e) {
                     dbError = e.getMessage();
-                    return null;
+                    return false;
                  }
              }
 
              @Override
-             protected void done() {
+             protected void process(List<ClassOffering> rows) {
+                 model.addRows(rows);
+             }
+
+             @Override
+             protected void whenDone() {
                  try {
-                     List<List<Object>> classData = get();
-                     if (classData != null) {
-                          updateDisplayTable(classData, CLASS_TABLE_HEADERS);
+                     if (get()) {
                           studentScheduleStatusLabel.setText("Displaying all classes for " + currentSemester);
                      } else {
                           studentScheduleStatusLabel.setText("Error loading classes: " + (dbError != null ? dbError : "Unknown error"));
@@ -1209,10 +1453,10 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
     // FIXED: Removed duplicate handler with ActionEvent parameter
     private void studentDropClassButtonActionPerformed() {
         // FIXED: Declare local variables and get selections
-        String studentSelection = (String) studentSelectStudentComboBox.getSelectedItem();
+        Object studentSelection = studentSelectStudentComboBox.getSelectedItem();
         String classSelection = (String) studentSelectClassComboBox.getSelectedItem();
 
-        if (studentSelection == null || studentSelection.contains("No students found") || studentSelection.contains("Error loading")) {
+        if (!(studentSelection instanceof Student)) { // Placeholder message or nothing selected
             studentScheduleStatusLabel.setText("Please select a valid student.");
             return;
         }
@@ -1226,12 +1470,7 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
          }
 
 
-        // FIXED: Assume SemesterQueries handles parsing ID
-        String studentId = SemesterQueries.getStudentIDFromComboBox(studentSelection);
-        if (studentId == null) {
-             studentScheduleStatusLabel.setText("Could not parse Student ID from selection.");
-             return;
-        }
+        String studentId = ((Student) studentSelection).getStudentId();
 
         // Confirmation Dialog
         int confirm = JOptionPane.showConfirmDialog(this,
@@ -1246,12 +1485,12 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         setStudentControlsEnabled(false);
         studentScheduleStatusLabel.setText("Dropping " + classSelection + " for " + studentSelection + "...");
 
-        new SwingWorker<Void, Void>() {
+        new TracedWorker<Void, Void>() {
             String dbError = null;
             boolean success = false;
 
             @Override
-            protected Void doInBackground() throws Exception {
+            protected Void runInBackground() throws Exception {
                 try {
                      // Ensure currentSemester is valid
                      if (currentSemester == null || "None".equals(currentSemester) || "Error".equals(currentSemester)) {
@@ -1270,7 +1509,7 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
             }
 
             @Override
-            protected void done() {
+            protected void whenDone() {
                  boolean refreshAttempted = false;
                  try {
                      if (success) {
@@ -1313,17 +1552,33 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         adminStatusLabel.setText("Loading students for " + selectedClass + "...");
         setAdminControlsEnabled(false); // Disable controls during load
 
-        new SwingWorker<List<List<Object>>, Void>() {
+        new TracedWorker<String, Void>() {
             String dbError = null;
 
             @Override
-            protected List<List<Object>> doInBackground() throws Exception {
+            protected String runInBackground() throws Exception {
                 try {
                      // Ensure currentSemester is valid
                      if (currentSemester == null || "None".equals(currentSemester) || "Error".equals(currentSemester)) {
                          throw new IllegalStateException("No valid semester selected.");
                      }
-                    return SemesterQueries.getStudentsInClass(currentSemester, selectedClass);
+                    // Build the two sections while streaming the roster; rows are not kept
+                    StringBuilder scheduled = new StringBuilder();
+                    StringBuilder waitlisted = new StringBuilder();
+                    SemesterQueries.forEachStudentInClass(currentSemester, selectedClass, row -> {
+                        if ("scheduled".equals(row.getStatus())) {
+                            scheduled.append("- ").append(row.getDisplayName()).append("\n");
+                        } else if ("waitlisted".equals(row.getStatus())) {
+                            waitlisted.append("- ").append(row.getDisplayName()).append("\n");
+                        }
+                    });
+
+                    StringBuilder displayText = new StringBuilder("Students in " + selectedClass + " (" + currentSemester + "):\n\n");
+                    displayText.append("Scheduled:\n");
+                    displayText.append(scheduled.length() > 0 ? scheduled : "(None)\n");
+                    displayText.append("\nWaitlisted:\n");
+                    displayText.append(waitlisted.length() > 0 ? waitlisted : "(None)\n");
+                    return displayText.toString();
                 } catch (SQLException e) {
                     dbError = e.getMessage();
                     System.err.println("SQL Error getting students in class:");
@@ -1336,38 +1591,13 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
             }
 
             @Override
-            protected void done() {
+            protected void whenDone() {
                 try {
-                    List<List<Object>> studentData = get();
-                    if (studentData != null) {
-                        // Display in a JOptionPane for simplicity, or update main table
-                        StringBuilder displayText = new StringBuilder("Students in " + selectedClass + " (" + currentSemester + "):\n\n");
-                        displayText.append("Scheduled:\n");
-                        boolean scheduledFound = false;
-                        for (List<Object> row : studentData) {
-                            if (row.size() > 1 && "scheduled".equals(row.get(1))) { // Status is at index 1
-                                displayText.append("- ").append(row.get(0)).append("\n"); // Name is at index 0
-                                scheduledFound = true;
-                            }
-                        }
-                        if (!scheduledFound) displayText.append("(None)\n");
-
-                        displayText.append("\nWaitlisted:\n");
-                        boolean waitlistedFound = false;
-                         for (List<Object> row : studentData) {
-                            if (row.size() > 1 && "waitlisted".equals(row.get(1))) {
-                                displayText.append("- ").append(row.get(0)).append("\n");
-                                waitlistedFound = true;
-                            }
-                         }
-                         if (!waitlistedFound) displayText.append("(None)\n");
-
-                         JOptionPane.showMessageDialog(MainFrame.this, displayText.toString(), "Students in Class", JOptionPane.INFORMATION_MESSAGE);
+                    String displayText = get();
+                    if (displayText != null) {
+                         // Display in a JOptionPane for simplicity
+                         JOptionPane.showMessageDialog(MainFrame.this, displayText, "Students in Class", JOptionPane.INFORMATION_MESSAGE);
                          adminStatusLabel.setText("Displayed students for " + selectedClass);
-
-                         // Optionally update the main table as well
-                         // updateDisplayTable(studentData, STUDENT_TABLE_HEADERS); // Use the correct headers
-
                     } else {
                         adminStatusLabel.setText("Error loading students: " + (dbError != null ? dbError : "Unknown error"));
                     }
@@ -1410,11 +1640,11 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         adminStatusLabel.setText("Dropping class " + selectedClass + "...");
         setAdminControlsEnabled(false);
 
-        new SwingWorker<ArrayList<String>, Void>() {
+        new TracedWorker<ArrayList<RosterEntry>, Void>() {
             String dbError = null;
 
             @Override
-            protected ArrayList<String> doInBackground() throws Exception {
+            protected ArrayList<RosterEntry> runInBackground() throws Exception {
                 try {
                      // Ensure currentSemester is valid
                      if (currentSemester == null || "None".equals(currentSemester) || "Error".equals(currentSemester)) {
@@ -1434,9 +1664,9 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
             }
 
             @Override
-            protected void done() {
+            protected void whenDone() {
                 try {
-                    ArrayList<String> droppedStudents = get();
+                    ArrayList<RosterEntry> droppedStudents = get();
                     if (droppedStudents != null) {
                         adminStatusLabel.setText("Class " + selectedClass + " dropped successfully.");
                         rebuildCourseComboBoxes(); // Refresh class lists
@@ -1471,19 +1701,14 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
     // FIXED: Removed duplicate handler with ActionEvent parameter
     private void adminDropStudentButtonActionPerformed() {
         // FIXED: Declare local variable and get selection
-        String studentSelection = (String) adminStudentComboBox.getSelectedItem();
+        Object studentSelection = adminStudentComboBox.getSelectedItem();
 
-        if (studentSelection == null || studentSelection.contains("No students found") || studentSelection.contains("Error loading")) {
+        if (!(studentSelection instanceof Student)) { // Placeholder message or nothing selected
             adminStatusLabel.setText("Please select a valid student to drop.");
             return;
         }
 
-        // FIXED: Assume SemesterQueries handles parsing ID
-        String studentId = SemesterQueries.getStudentIDFromComboBox(studentSelection);
-        if (studentId == null) {
-             adminStatusLabel.setText("Could not parse Student ID from selection.");
-             return;
-        }
+        String studentId = ((Student) studentSelection).getStudentId();
 
         int confirm = JOptionPane.showConfirmDialog(this,
                 "Are you sure you want to drop student " + studentSelection + "?\n" +
@@ -1498,12 +1723,12 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
         adminStatusLabel.setText("Dropping student " + studentSelection + "...");
         setAdminControlsEnabled(false); // Disable related controls
 
-        new SwingWorker<Void, Void>() {
+        new TracedWorker<Void, Void>() {
             String dbError = null;
             boolean success = false;
 
             @Override
-            protected Void doInBackground() throws Exception {
+            protected Void runInBackground() throws Exception {
                 try {
                     SemesterQueries.dropStudent(studentId);
                     success = true;
@@ -1516,7 +1741,7 @@ public class MainFrame extends JFrame { // Inherit directly from JFrame
             }
 
             @Override
-            protected void done() {
+            protected void whenDone() {
                  try {
                     if (success) {
                          adminStatusLabel.setText("Student " + studentSelection + " dropped successfully.");
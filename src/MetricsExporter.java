@@ -0,0 +1,307 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serves GET /metrics in the Prometheus text exposition format, for scraping by a
+ * monitoring system. It is off unless a port is given (see {@link ApiServer}) and
+ * listens on the loopback address by default; -Dscheduler.metrics.host=0.0.0.0
+ * exposes it on all interfaces.
+ * <ul>
+ * <li>scheduler_enrollments_total, scheduler_waitlist_promotions_total and
+ * scheduler_drops_total: enrollment activity since start-up, from {@link EnrollmentMetrics}.</li>
+ * <li>scheduler_schedule_entries: current enrollments per semester and status, read
+ * from the database at most every -Dscheduler.metrics.statusCountSeconds (default 15).</li>
+ * <li>scheduler_query_duration_seconds and scheduler_query_connection_wait_seconds:
+ * histograms per operation, from {@link QueryMetrics}.</li>
+ * <li>scheduler_lock_errors_total: lock timeouts and deadlocks, from {@link LockDiagnostics}.</li>
+ * <li>scheduler_pool_*: connection pool usage, from {@link ConnectionPool}.</li>
+ * <li>jvm_memory_*, jvm_gc_* and jvm_threads_current: heap, GC and threads.</li>
+ * </ul>
+ * Histogram buckets are read from {@link LatencyHistogram}s, so a bucket boundary
+ * is accurate to about 3%.
+ */
+public final class MetricsExporter {
+
+    private static final Log LOG = Log.get(MetricsExporter.class);
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    /** Bucket upper bounds, in seconds. */
+    private static final double[] BUCKETS = {
+            0.0005, 0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10};
+    private static final long STATUS_COUNT_MILLIS =
+            TimeUnit.SECONDS.toMillis(Long.getLong("scheduler.metrics.statusCountSeconds", 15L));
+
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    // Last per-status count, reused between scrapes. Guarded by this.
+    private String statusCounts = "";
+    private long statusCountedAt;
+
+    /**
+     * @param host Address to listen on, e.g. localhost.
+     * @param port Port to listen on, or 0 for any free port.
+     */
+    public MetricsExporter(String host, int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "metrics-http");
+            t.setDaemon(true);
+            return t;
+        });
+        server.setExecutor(executor); // Scrapes are rare; one thread keeps them from competing with each other
+        server.createContext("/metrics", this::handle);
+    }
+
+    public void start() {
+        server.start();
+        LOG.info("Prometheus metrics on http://{}:{}/metrics", server.getAddress().getHostString(), getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdown();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (RuntimeException e) {
+            LOG.error("Error serving metrics: {}", e.toString(), e);
+            exchange.sendResponseHeaders(500, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /** @return Every metric, in the Prometheus text format. */
+    String scrape() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        writeEnrollments(out);
+        out.append(statusCounts());
+        writeQueries(out);
+        writePool(out);
+        writeJvm(out);
+        return out.toString();
+    }
+
+    // --- Sections ---
+
+    private static void writeEnrollments(StringBuilder out) {
+        header(out, "scheduler_enrollments_total", "counter", "Enrollment requests by result.");
+        sample(out, "scheduler_enrollments_total", "result", "scheduled", EnrollmentMetrics.getScheduledCount());
+        sample(out, "scheduler_enrollments_total", "result", "waitlisted", EnrollmentMetrics.getWaitlistedCount());
+        sample(out, "scheduler_enrollments_total", "result", "failed", EnrollmentMetrics.getFailedCount());
+        header(out, "scheduler_waitlist_promotions_total", "counter", "Students moved from a waitlist into a seat.");
+        sample(out, "scheduler_waitlist_promotions_total", EnrollmentMetrics.getPromotedCount());
+        header(out, "scheduler_drops_total", "counter", "Enrollments removed by drops of students, classes or enrollments.");
+        sample(out, "scheduler_drops_total", EnrollmentMetrics.getDroppedCount());
+    }
+
+    /**
+     * Scheduled counts come from the classes' enrollment counters and waitlisted
+     * counts from the waitlist index, so the schedule table's seated rows are never
+     * read. The result is still kept for STATUS_COUNT_MILLIS between scrapes. The
+     * section is left out while the database is closed or if the count fails.
+     */
+    private synchronized String statusCounts() {
+        long now = System.currentTimeMillis();
+        if (now - statusCountedAt < STATUS_COUNT_MILLIS) {
+            return statusCounts;
+        }
+        statusCountedAt = now;
+        statusCounts = "";
+        if (DBConnection.getPoolIfOpen() == null) {
+            return statusCounts;
+        }
+        String sqlScheduled = "SELECT semester, SUM(enrolled) FROM app.classes GROUP BY semester";
+        String sqlWaitlisted = "SELECT c.semester, COUNT(*) FROM app.classes c JOIN app.schedule s " +
+                               "ON s.semester = c.semester AND s.coursecode = c.coursecode AND s.status = 'waitlisted' " +
+                               "GROUP BY c.semester";
+        Map<String, long[]> counts = new TreeMap<>(); // Semester -> {scheduled, waitlisted}
+        Connection conn = null;
+        try {
+            conn = DBConnection.getConnection("metricsStatusCounts");
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlScheduled); ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.computeIfAbsent(rs.getString(1), k -> new long[2])[0] = rs.getLong(2);
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlWaitlisted); ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    counts.computeIfAbsent(rs.getString(1), k -> new long[2])[1] = rs.getLong(2);
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            LOG.warn("Could not count enrollments for metrics: {}", e.getMessage());
+            return statusCounts;
+        } finally {
+            DBConnection.release(conn);
+        }
+        StringBuilder section = new StringBuilder();
+        header(section, "scheduler_schedule_entries", "gauge", "Current enrollments by semester and status.");
+        for (Map.Entry<String, long[]> entry : counts.entrySet()) {
+            String semester = escape(entry.getKey());
+            section.append("scheduler_schedule_entries{semester=\"").append(semester)
+                    .append("\",status=\"scheduled\"} ").append(entry.getValue()[0]).append('\n');
+            section.append("scheduler_schedule_entries{semester=\"").append(semester)
+                    .append("\",status=\"waitlisted\"} ").append(entry.getValue()[1]).append('\n');
+        }
+        statusCounts = section.toString();
+        return statusCounts;
+    }
+
+    private static void writeQueries(StringBuilder out) {
+        Iterable<QueryMetrics.OperationStats> operations = QueryMetrics.getOperations();
+        header(out, "scheduler_query_calls_total", "counter", "Database operations by name.");
+        for (QueryMetrics.OperationStats stats : operations) {
+            sample(out, "scheduler_query_calls_total", "operation", stats.getName(), stats.getCalls());
+        }
+        header(out, "scheduler_query_errors_total", "counter", "Database operations that rolled back or failed to commit.");
+        for (QueryMetrics.OperationStats stats : operations) {
+            sample(out, "scheduler_query_errors_total", "operation", stats.getName(), stats.getErrors());
+        }
+        header(out, "scheduler_query_duration_seconds", "histogram",
+                "Time a database operation held its connection.");
+        for (QueryMetrics.OperationStats stats : operations) {
+            histogram(out, "scheduler_query_duration_seconds", "operation", stats.getName(), stats.getExecutionTime());
+        }
+        header(out, "scheduler_query_connection_wait_seconds", "histogram",
+                "Time a database operation waited for a pooled connection.");
+        for (QueryMetrics.OperationStats stats : operations) {
+            histogram(out, "scheduler_query_connection_wait_seconds", "operation", stats.getName(),
+                    stats.getConnectionWait());
+        }
+        header(out, "scheduler_slow_queries_total", "counter", "Statements slower than the slow-query threshold.");
+        sample(out, "scheduler_slow_queries_total", QueryMetrics.getSlowQueryCount());
+        header(out, "scheduler_lock_errors_total", "counter", "Statements that failed on a Derby lock timeout or deadlock.");
+        sample(out, "scheduler_lock_errors_total", "type", "timeout", LockDiagnostics.getLockTimeoutCount());
+        sample(out, "scheduler_lock_errors_total", "type", "deadlock", LockDiagnostics.getDeadlockCount());
+    }
+
+    private static void writePool(StringBuilder out) {
+        ConnectionPool pool = DBConnection.getPoolIfOpen();
+        if (pool == null) {
+            return;
+        }
+        header(out, "scheduler_pool_connections", "gauge", "Pooled connections by state.");
+        sample(out, "scheduler_pool_connections", "state", "active", pool.getActiveCount());
+        sample(out, "scheduler_pool_connections", "state", "idle", pool.getIdleCount());
+        header(out, "scheduler_pool_max_connections", "gauge", "Most connections the pool lends out at once.");
+        sample(out, "scheduler_pool_max_connections", pool.getMaxSize());
+        header(out, "scheduler_pool_waiting_threads", "gauge", "Threads waiting for a pooled connection.");
+        sample(out, "scheduler_pool_waiting_threads", pool.getWaitingThreads());
+        header(out, "scheduler_pool_borrows_total", "counter", "Connections borrowed from the pool.");
+        sample(out, "scheduler_pool_borrows_total", pool.getBorrowCount());
+        header(out, "scheduler_pool_borrow_timeouts_total", "counter", "Borrows that timed out waiting for a connection.");
+        sample(out, "scheduler_pool_borrow_timeouts_total", pool.getBorrowTimeouts());
+        header(out, "scheduler_pool_connections_created_total", "counter", "Physical connections opened.");
+        sample(out, "scheduler_pool_connections_created_total", pool.getConnectionsCreated());
+        header(out, "scheduler_pool_connections_discarded_total", "counter",
+                "Physical connections closed after failing validation or reset.");
+        sample(out, "scheduler_pool_connections_discarded_total", pool.getConnectionsDiscarded());
+        header(out, "scheduler_pool_wait_seconds", "histogram", "Time borrowers waited for a connection.");
+        histogram(out, "scheduler_pool_wait_seconds", null, null, pool.getWaitHistogram());
+    }
+
+    private static void writeJvm(StringBuilder out) {
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        MemoryUsage nonHeap = ManagementFactory.getMemoryMXBean().getNonHeapMemoryUsage();
+        header(out, "jvm_memory_used_bytes", "gauge", "Memory in use.");
+        sample(out, "jvm_memory_used_bytes", "area", "heap", heap.getUsed());
+        sample(out, "jvm_memory_used_bytes", "area", "nonheap", nonHeap.getUsed());
+        header(out, "jvm_memory_committed_bytes", "gauge", "Memory reserved by the JVM.");
+        sample(out, "jvm_memory_committed_bytes", "area", "heap", heap.getCommitted());
+        sample(out, "jvm_memory_committed_bytes", "area", "nonheap", nonHeap.getCommitted());
+        header(out, "jvm_memory_max_bytes", "gauge", "Largest the heap may grow.");
+        sample(out, "jvm_memory_max_bytes", "area", "heap", heap.getMax());
+        header(out, "jvm_gc_collections_total", "counter", "Garbage collections by collector.");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "jvm_gc_collections_total", "gc", gc.getName(), Math.max(0, gc.getCollectionCount()));
+        }
+        header(out, "jvm_gc_collection_seconds_total", "counter", "Time spent in garbage collection by collector.");
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            sample(out, "jvm_gc_collection_seconds_total", "gc", gc.getName(), Math.max(0, gc.getCollectionTime()) / 1000.0);
+        }
+        header(out, "jvm_threads_current", "gauge", "Live threads.");
+        sample(out, "jvm_threads_current", ManagementFactory.getThreadMXBean().getThreadCount());
+    }
+
+    // --- Formatting ---
+
+    private static void header(StringBuilder out, String name, String type, String help) {
+        out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, double value) {
+        out.append(name).append(' ').append(number(value)).append('\n');
+    }
+
+    private static void sample(StringBuilder out, String name, String label, String labelValue, double value) {
+        out.append(name).append('{').append(label).append("=\"").append(escape(labelValue)).append("\"} ")
+                .append(number(value)).append('\n');
+    }
+
+    /** Cumulative buckets, then _sum and _count; the label may be null. */
+    private static void histogram(StringBuilder out, String name, String label, String labelValue,
+                                  LatencyHistogram histogram) {
+        String labels = label == null ? "" : label + "=\"" + escape(labelValue) + "\",";
+        for (double bound : BUCKETS) {
+            long count = histogram.getCountAtOrBelow((long) (bound * 1e9));
+            out.append(name).append("_bucket{").append(labels).append("le=\"").append(number(bound)).append("\"} ")
+                    .append(count).append('\n');
+        }
+        // Taken from the buckets, so +Inf is never below a finite bucket while recording continues
+        long total = histogram.getCountAtOrBelow(Long.MAX_VALUE);
+        out.append(name).append("_bucket{").append(labels).append("le=\"+Inf\"} ").append(total).append('\n');
+        String suffixLabels = label == null ? "" : "{" + label + "=\"" + escape(labelValue) + "\"}";
+        out.append(name).append("_sum").append(suffixLabels).append(' ')
+                .append(number(histogram.getTotalNanos() / 1e9)).append('\n');
+        out.append(name).append("_count").append(suffixLabels).append(' ').append(total).append('\n');
+    }
+
+    /** Plain decimal notation: 0.0005 rather than 5.0E-4, 3 rather than 3.0. */
+    private static String number(double value) {
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return new BigDecimal(Double.toString(value)).stripTrailingZeros().toPlainString();
+    }
+
+    private static String escape(String value) {
+        return value == null ? "" : value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
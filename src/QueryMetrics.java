@@ -0,0 +1,381 @@
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.CallableStatement;
+import java.sql.PreparedStatement;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-operation latency metrics and slow-query log for the database layer.
+ *
+ * An operation is one borrow of a pooled connection tagged with a name, e.g.
+ * {@code DBConnection.getConnection("scheduleClass")}; every SemesterQueries method
+ * that reaches the database tags its connection with its own name. Reads served from
+ * the reference cache or the seat ledger do not borrow a connection and are not
+ * counted here. For each operation the pool records:
+ * <ul>
+ * <li>calls and errors. An error is a call that rolled back, failed to commit, or
+ * returned its connection with uncommitted work.</li>
+ * <li>connection wait: time spent waiting for a free pooled connection.</li>
+ * <li>execution time: from getting the connection until it is returned.</li>
+ * </ul>
+ * Times are kept in {@link LatencyHistogram}s, so recording never allocates or locks.
+ *
+ * Statements prepared on a tagged connection are timed individually. One whose
+ * execution takes at least the slow-query threshold is logged at WARN with its
+ * SQL, bind parameters, elapsed time and operation. For executeQuery the time runs
+ * until the first rows are ready, not until the caller has read them all.
+ *
+ * Each statement execution is also a Flight Recorder event; see {@link Tracing}.
+ * Lock timeouts and deadlocks are counted, and waiting statements captured, by
+ * {@link LockDiagnostics}.
+ *
+ * Settings: -Dscheduler.metrics.enabled=false turns all of this off, and untagged
+ * connections are never instrumented. -Dscheduler.metrics.slowQueryMs=N sets the
+ * slow-query threshold (default 250; 0 disables the slow-query log, and bind capture
+ * unless lock diagnostics are on).
+ */
+public final class QueryMetrics {
+
+    private static final Log LOG = Log.get(QueryMetrics.class);
+
+    private static final boolean ENABLED =
+            !"false".equalsIgnoreCase(System.getProperty("scheduler.metrics.enabled", "true").trim());
+    private static final long SLOW_QUERY_NANOS =
+            TimeUnit.MILLISECONDS.toNanos(Math.max(0L, Long.getLong("scheduler.metrics.slowQueryMs", 250L)));
+    private static final boolean CAPTURE_BINDS = SLOW_QUERY_NANOS > 0 || LockDiagnostics.isEnabled();
+    private static final int MAX_BIND_LENGTH = 100;
+
+    // Proxy classes are looked up once; creating one per statement would cost more than the statement
+    private static final Constructor<?> STATEMENT_PROXY = proxyConstructor(Statement.class);
+    private static final Constructor<?> PREPARED_PROXY = proxyConstructor(PreparedStatement.class);
+    private static final Constructor<?> CALLABLE_PROXY = proxyConstructor(CallableStatement.class);
+
+    private static final ConcurrentHashMap<String, OperationStats> OPERATIONS = new ConcurrentHashMap<>();
+    private static final LongAdder SLOW_QUERIES = new LongAdder();
+    private static volatile long intervalStartNanos = System.nanoTime();
+
+    private QueryMetrics() {
+    }
+
+    /** Counters and histograms for one operation name. */
+    public static final class OperationStats {
+        private final String name;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder errors = new LongAdder();
+        private final LatencyHistogram connectionWait = new LatencyHistogram();
+        private final LatencyHistogram executionTime = new LatencyHistogram();
+
+        OperationStats(String name) {
+            this.name = name;
+        }
+
+        public String getName() { return name; }
+        public long getCalls() { return calls.sum(); }
+        public long getErrors() { return errors.sum(); }
+        public LatencyHistogram getConnectionWait() { return connectionWait; }
+        public LatencyHistogram getExecutionTime() { return executionTime; }
+
+        void reset() {
+            calls.reset();
+            errors.reset();
+            connectionWait.reset();
+            executionTime.reset();
+        }
+    }
+
+    // --- Recording, called by ConnectionPool ---
+
+    /**
+     * Starts recording an operation on a freshly borrowed connection.
+     * @param operation The operation name, or null for an untagged borrow.
+     * @param waitNanos Time spent waiting for the connection.
+     * @return The call to notify of connection activity, or null if it is not recorded.
+     */
+    static Call begin(String operation, long waitNanos) {
+        if (!ENABLED || operation == null) {
+            return null;
+        }
+        OperationStats stats = OPERATIONS.get(operation);
+        if (stats == null) {
+            stats = OPERATIONS.computeIfAbsent(operation, OperationStats::new);
+        }
+        stats.connectionWait.record(waitNanos);
+        return new Call(stats);
+    }
+
+    /**
+     * One operation in progress: the connection's owner thread reports its
+     * statements, commits and rollbacks, and {@link #finish()} records the result.
+     */
+    static final class Call {
+        private final OperationStats stats;
+        private final long startNanos = System.nanoTime();
+        private boolean dirty;   // Statements executed since the last commit
+        private boolean failed;  // Rolled back, or a commit failed
+
+        Call(OperationStats stats) {
+            this.stats = stats;
+        }
+
+        /**
+         * Observes a call the borrower made on the connection.
+         * @return The result to hand to the borrower: statements come back instrumented.
+         */
+        Object connectionCall(String method, Object[] args, Object result) {
+            switch (method) {
+                case "commit":
+                    dirty = false;
+                    return result;
+                case "rollback":
+                    if (args == null || args.length == 0) { // Not a rollback to a savepoint
+                        failed = true;
+                        dirty = false;
+                    }
+                    return result;
+                case "prepareStatement":
+                case "prepareCall":
+                    return meter((Statement) result, (String) args[0]);
+                case "createStatement":
+                    return meter((Statement) result, null);
+                default:
+                    return result;
+            }
+        }
+
+        /** A call on the connection threw. A failed commit fails the operation. */
+        void connectionCallFailed(String method) {
+            if ("commit".equals(method)) {
+                failed = true;
+            }
+        }
+
+        /** Records the operation when its connection is returned to the pool. */
+        void finish() {
+            stats.calls.increment();
+            if (failed || dirty) {
+                stats.errors.increment();
+            }
+            stats.executionTime.record(System.nanoTime() - startNanos);
+        }
+
+        private Statement meter(Statement statement, String sql) {
+            Constructor<?> proxy = statement instanceof CallableStatement ? CALLABLE_PROXY
+                    : statement instanceof PreparedStatement ? PREPARED_PROXY
+                    : STATEMENT_PROXY;
+            try {
+                return (Statement) proxy.newInstance(new MeteredStatement(this, statement, sql));
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("Cannot instrument statement", e);
+            }
+        }
+    }
+
+    /**
+     * Times a statement's executions and remembers its bind parameters for the
+     * slow-query log and lock diagnostics.
+     */
+    private static final class MeteredStatement implements InvocationHandler {
+        private final Call call;
+        private final Statement statement;
+        private final String sql;
+        private Object[] binds; // Index i holds parameter i + 1; only kept while someone reports them
+        private int batchRows;
+
+        MeteredStatement(Call call, Statement statement, String sql) {
+            this.call = call;
+            this.statement = statement;
+            this.sql = sql;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            String name = method.getName();
+            if (name.startsWith("execute")) {
+                return execute(method, args);
+            }
+            if (CAPTURE_BINDS) {
+                if (name.startsWith("set") && args != null && args.length >= 2 && args[0] instanceof Integer) {
+                    bind((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                } else if (name.equals("clearParameters")) {
+                    binds = null;
+                } else if (name.equals("addBatch")) {
+                    batchRows++;
+                }
+            }
+            switch (name) {
+                case "equals":
+                    return proxy == args[0];
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "toString":
+                    return "MeteredStatement[" + statement + "]";
+                default:
+                    return invokeTarget(method, args);
+            }
+        }
+
+        private Object execute(Method method, Object[] args) throws Throwable {
+            String executedSql = args != null && args.length > 0 && args[0] instanceof String ? (String) args[0] : sql;
+            call.dirty = true;
+            Object event = Tracing.beginStatement();
+            Object watch = LockDiagnostics.watch(call.stats.name, method.getName(), executedSql, binds, batchRows);
+            Throwable failure = null;
+            long start = System.nanoTime();
+            try {
+                return invokeTarget(method, args);
+            } catch (Throwable t) {
+                failure = t;
+                throw t;
+            } finally {
+                long elapsed = System.nanoTime() - start;
+                LockDiagnostics.finished(watch, failure);
+                Tracing.endStatement(event, call.stats.name, method.getName(), executedSql, failure != null);
+                if (SLOW_QUERY_NANOS > 0 && elapsed >= SLOW_QUERY_NANOS) {
+                    slowQuery(executedSql, method.getName(), elapsed);
+                }
+                if (method.getName().contains("Batch")) {
+                    batchRows = 0;
+                }
+            }
+        }
+
+        private Object invokeTarget(Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(statement, args);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+
+        private void bind(int index, Object value) {
+            if (index < 1) {
+                return;
+            }
+            if (binds == null) {
+                binds = new Object[Math.max(4, index)];
+            } else if (index > binds.length) {
+                binds = Arrays.copyOf(binds, Math.max(index, binds.length * 2));
+            }
+            binds[index - 1] = value;
+        }
+
+        /** Formats the parameters now: the statement may be re-bound before the log line is written. */
+        private void slowQuery(String executedSql, String method, long elapsed) {
+            SLOW_QUERIES.increment();
+            LOG.warn("Slow query: {} ms in {} ({}): {} {}",
+                    String.format("%.1f", elapsed / 1e6), call.stats.name, method, executedSql,
+                    formatBinds(binds, batchRows));
+        }
+    }
+
+    /**
+     * Formats bind parameters for a log line, e.g. "[1='Fall 2024', 2=NULL]".
+     * @param binds Index i holds parameter i + 1; may be null.
+     * @param batchRows Rows added to the batch, or 0.
+     */
+    static String formatBinds(Object[] binds, int batchRows) {
+        int count = 0;
+        for (int i = 0; binds != null && i < binds.length; i++) {
+            if (binds[i] != null) {
+                count = i + 1;
+            }
+        }
+        StringBuilder params = new StringBuilder("[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                params.append(", ");
+            }
+            params.append(i + 1).append('=').append(formatBind(binds[i]));
+        }
+        params.append(']');
+        if (batchRows > 0) {
+            params.append(" (last of ").append(batchRows).append(" batched rows)");
+        }
+        return params.toString();
+    }
+
+    private static String formatBind(Object value) {
+        if (value == null) {
+            return "NULL";
+        }
+        if (value instanceof String) {
+            String s = (String) value;
+            return "'" + (s.length() > MAX_BIND_LENGTH ? s.substring(0, MAX_BIND_LENGTH) + "..." : s) + "'";
+        }
+        return String.valueOf(value);
+    }
+
+    @SuppressWarnings("deprecation") // getProxyClass: the constructor is cached, so no per-call lookup
+    private static Constructor<?> proxyConstructor(Class<?> type) {
+        try {
+            return Proxy.getProxyClass(type.getClassLoader(), type).getConstructor(InvocationHandler.class);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // --- Reading ---
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /** @return The slow-query threshold in milliseconds; 0 if the slow-query log is off. */
+    public static long getSlowQueryThresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(SLOW_QUERY_NANOS);
+    }
+
+    public static long getSlowQueryCount() {
+        return SLOW_QUERIES.sum();
+    }
+
+    /** @return Seconds since recording started or was last reset. */
+    public static double getIntervalSeconds() {
+        return (System.nanoTime() - intervalStartNanos) / 1e9;
+    }
+
+    /** @return The operations recorded so far, ordered by name. */
+    public static List<OperationStats> getOperations() {
+        List<OperationStats> operations = new ArrayList<>(OPERATIONS.values());
+        operations.sort((a, b) -> a.name.compareTo(b.name));
+        return operations;
+    }
+
+    /** Clears all counters and histograms, e.g. between benchmark phases. */
+    public static void reset() {
+        for (OperationStats stats : OPERATIONS.values()) {
+            stats.reset();
+        }
+        SLOW_QUERIES.reset();
+        intervalStartNanos = System.nanoTime();
+    }
+
+    /** @return A table of all operations, one line each, with times in microseconds. */
+    public static String report() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-30s %9s %7s %11s %11s %10s %10s %10s %10s%n", "Operation", "calls", "errors",
+                "wait p99", "mean(us)", "p50(us)", "p90(us)", "p99(us)", "max(us)"));
+        for (OperationStats stats : getOperations()) {
+            LatencyHistogram h = stats.executionTime;
+            sb.append(String.format("%-30s %9d %7d %11d %11.1f %10d %10d %10d %10d%n", stats.name,
+                    stats.getCalls(), stats.getErrors(),
+                    TimeUnit.NANOSECONDS.toMicros(stats.connectionWait.getPercentileNanos(99.0)),
+                    h.getMeanNanos() / 1000.0,
+                    TimeUnit.NANOSECONDS.toMicros(h.getPercentileNanos(50.0)),
+                    TimeUnit.NANOSECONDS.toMicros(h.getPercentileNanos(90.0)),
+                    TimeUnit.NANOSECONDS.toMicros(h.getPercentileNanos(99.0)),
+                    TimeUnit.NANOSECONDS.toMicros(h.getMaxNanos())));
+        }
+        sb.append("Slow queries (>= ").append(getSlowQueryThresholdMillis()).append(" ms): ").append(getSlowQueryCount());
+        return sb.toString();
+    }
+}
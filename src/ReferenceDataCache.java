@@ -0,0 +1,164 @@
+import java.sql.SQLException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A small read-through cache for reference data that rarely changes (semesters,
+ * courses, the classes offered in a semester). Entries are evicted least recently
+ * used once the cache is full, expire after a fixed time to live, and are dropped
+ * explicitly by the write paths that change them.
+ *
+ * A load that overlaps an invalidation is returned to its caller but not cached,
+ * so a write is never hidden by a stale value that was read just before it.
+ * Cached values are shared between callers and must not be modified.
+ */
+public class ReferenceDataCache {
+
+    /** Reads the value for a key from the database on a cache miss. */
+    public interface Loader<T> {
+        T load() throws SQLException;
+    }
+
+    private static final class CachedValue {
+        final Object value;
+        final long expiresAtNanos;
+
+        CachedValue(Object value, long expiresAtNanos) {
+            this.value = value;
+            this.expiresAtNanos = expiresAtNanos;
+        }
+    }
+
+    private final int maxEntries;
+    private final long ttlNanos;
+    private final LinkedHashMap<String, CachedValue> entries; // Guarded by this
+    private long generation; // Guarded by this; bumped by every invalidation
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    /**
+     * @param maxEntries Maximum number of cached keys; 0 disables caching.
+     * @param ttlMillis  How long an entry stays valid; 0 disables caching.
+     */
+    public ReferenceDataCache(int maxEntries, long ttlMillis) {
+        this.maxEntries = (ttlMillis > 0) ? Math.max(0, maxEntries) : 0;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(0L, ttlMillis));
+        this.entries = new LinkedHashMap<String, CachedValue>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CachedValue> eldest) {
+                if (size() > ReferenceDataCache.this.maxEntries) {
+                    evictions.increment();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached value for key, loading and caching it on a miss.
+     * The loader runs without holding the cache lock; concurrent misses for the
+     * same key may each load it.
+     * @throws SQLException if the loader fails; nothing is cached in that case
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Loader<T> loader) throws SQLException {
+        long loadGeneration;
+        synchronized (this) {
+            CachedValue entry = entries.get(key);
+            if (entry != null) {
+                if (System.nanoTime() - entry.expiresAtNanos < 0) {
+                    hits.increment();
+                    return (T) entry.value;
+                }
+                entries.remove(key);
+                expirations.increment();
+            }
+            loadGeneration = generation;
+        }
+        misses.increment();
+        T value = loader.load();
+        if (maxEntries > 0) {
+            synchronized (this) {
+                if (generation == loadGeneration) {
+                    entries.put(key, new CachedValue(value, System.nanoTime() + ttlNanos));
+                }
+            }
+        }
+        return value;
+    }
+
+    /** Drops one key. Call after the write that changes it has committed. */
+    public synchronized void invalidate(String key) {
+        generation++;
+        entries.remove(key);
+        invalidations.increment();
+    }
+
+    /** Drops every key that starts with the given prefix. */
+    public synchronized void invalidatePrefix(String prefix) {
+        generation++;
+        entries.keySet().removeIf(key -> key.startsWith(prefix));
+        invalidations.increment();
+    }
+
+    /** Drops everything, e.g. after bulk changes made outside SemesterQueries. */
+    public synchronized void invalidateAll() {
+        generation++;
+        entries.clear();
+        invalidations.increment();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getTtlMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(ttlNanos);
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getExpirationCount() {
+        return expirations.sum();
+    }
+
+    public long getInvalidationCount() {
+        return invalidations.sum();
+    }
+
+    /** Fraction of lookups served from memory, 0.0 if there were none. */
+    public double getHitRatio() {
+        long h = getHitCount();
+        long total = h + getMissCount();
+        return total == 0 ? 0.0 : (double) h / total;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ReferenceDataCache[size=%d/%d, ttl=%ds, hits=%d, misses=%d, hitRatio=%.2f, " +
+                             "evictions=%d, expirations=%d, invalidations=%d]",
+                size(), maxEntries, TimeUnit.NANOSECONDS.toSeconds(ttlNanos), getHitCount(), getMissCount(),
+                getHitRatio(), getEvictionCount(), getExpirationCount(), getInvalidationCount());
+    }
+}
@@ -0,0 +1,49 @@
+/**
+ * One student on a class roster, with their enrollment status. Immutable.
+ * The "lastname, firstname" display name is built on demand, not stored.
+ */
+public final class RosterEntry implements TableRow {
+
+    private final String lastName;
+    private final String firstName;
+    private final String status;
+
+    public RosterEntry(String lastName, String firstName, String status) {
+        this.lastName = lastName;
+        this.firstName = firstName;
+        this.status = status;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    /** @return "lastname, firstname" */
+    public String getDisplayName() {
+        return lastName + ", " + firstName;
+    }
+
+    /** Columns: student name, status. */
+    @Override
+    public Object getColumnValue(int column) {
+        switch (column) {
+            case 0: return getDisplayName();
+            case 1: return status;
+            default: throw new IndexOutOfBoundsException("Column " + column);
+        }
+    }
+
+    /** @return "lastname, firstname (status)" */
+    @Override
+    public String toString() {
+        return getDisplayName() + " (" + status + ")";
+    }
+}
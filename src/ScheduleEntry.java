@@ -0,0 +1,43 @@
+/**
+ * One class on a student's schedule, with its enrollment status
+ * ("scheduled" or "waitlisted"). Immutable.
+ */
+public final class ScheduleEntry implements TableRow {
+
+    private final String semester;
+    private final String courseCode;
+    private final String status;
+
+    public ScheduleEntry(String semester, String courseCode, String status) {
+        this.semester = semester;
+        this.courseCode = courseCode;
+        this.status = status;
+    }
+
+    public String getSemester() {
+        return semester;
+    }
+
+    public String getCourseCode() {
+        return courseCode;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    /** Columns: course code, status. */
+    @Override
+    public Object getColumnValue(int column) {
+        switch (column) {
+            case 0: return courseCode;
+            case 1: return status;
+            default: throw new IndexOutOfBoundsException("Column " + column);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return courseCode + " (" + status + ")";
+    }
+}
@@ -0,0 +1,443 @@
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import javax.management.Attribute;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+
+/**
+ * JMX MXBeans for watching the database layer live from JConsole, VisualVM or any
+ * other JMX client, registered on the platform MBean server under the
+ * CourseScheduler domain:
+ * <ul>
+ * <li>CourseScheduler:type=ConnectionPool - sessions in use and idle, borrow waits,
+ * timeouts, and connections opened and discarded.</li>
+ * <li>CourseScheduler:type=QueryMetrics - per-operation throughput, errors and latency
+ * percentiles from {@link QueryMetrics}.</li>
+ * <li>CourseScheduler:type=ReferenceCache and CourseScheduler:type=SeatLedger - the
+ * in-memory caches behind {@link SemesterQueries}.</li>
+ * <li>CourseScheduler:type=Derby - current locks, lock waits and transactions from
+ * the SYSCS_DIAG tables, lock timeouts and deadlocks seen by {@link LockDiagnostics},
+ * and Derby's page cache hit counts.</li>
+ * </ul>
+ * The beans read the live objects on every access; nothing is sampled in the
+ * background. They are registered when the connection pool is created and removed
+ * when it is closed. Registration also sets derby.system.jmx=true, unless set
+ * otherwise, so that the embedded engine publishes its own cache MBeans.
+ *
+ * Settings: -Dscheduler.jmx.enabled=false turns registration off. A local JConsole
+ * can attach to the process directly; remote access needs the usual
+ * com.sun.management.jmxremote.* options.
+ */
+public final class SchedulerMBeans {
+
+    private static final Log LOG = Log.get(SchedulerMBeans.class);
+
+    private static final boolean ENABLED =
+            !"false".equalsIgnoreCase(System.getProperty("scheduler.jmx.enabled", "true").trim());
+    private static final String DOMAIN = "CourseScheduler";
+
+    private static final List<ObjectName> registered = new ArrayList<>(); // Guarded by SchedulerMBeans.class
+
+    private SchedulerMBeans() {
+    }
+
+    // --- Bean interfaces ---
+
+    /**
+     * The connection pool. Counters are zero while no pool is open. Connections
+     * created beyond the pool's minimum size, and connections discarded after failing
+     * validation or reset, show the pool reconnecting.
+     */
+    public interface ConnectionPoolMXBean {
+        String getDatabaseUrl();
+        String getMode();
+        boolean isOpen();
+        int getMinSize();
+        int getMaxSize();
+        int getActiveCount();
+        int getIdleCount();
+        int getWaitingThreads();
+        long getBorrowCount();
+        long getBorrowTimeouts();
+        long getConnectionsCreated();
+        long getConnectionsDiscarded();
+        long getLeaksDetected();
+        long getTotalBorrowWaitMillis();
+        double getMeanBorrowWaitMicros();
+        long getBorrowWaitP99Micros();
+        long getMaxBorrowWaitMicros();
+    }
+
+    /** Per-operation statistics; see {@link QueryMetrics}. */
+    public interface QueryMetricsMXBean {
+        boolean isEnabled();
+        long getSlowQueryThresholdMillis();
+        long getSlowQueryCount();
+        /** @return Seconds covered by the counters: since start-up or the last reset. */
+        double getIntervalSeconds();
+        List<OperationSnapshot> getOperations();
+        String getReport();
+        void reset();
+    }
+
+    public interface ReferenceCacheMXBean {
+        int getSize();
+        int getMaxEntries();
+        long getTtlSeconds();
+        long getHitCount();
+        long getMissCount();
+        double getHitRatio();
+        long getEvictionCount();
+        long getExpirationCount();
+        long getInvalidationCount();
+        void invalidateAll();
+    }
+
+    public interface SeatLedgerMXBean {
+        int getLoadedSemesterCount();
+        long getLoadCount();
+        long getReconcileCount();
+        long getCorrectionCount();
+        void reconcile() throws SQLException;
+    }
+
+    /**
+     * Derby engine state. The lock and transaction attributes query the SYSCS_DIAG
+     * tables through a connection of the bean's own, outside the pool, so they still
+     * answer when lock waits have tied up every pooled connection. They return -1
+     * while no pool is open. The
+     * page cache attributes sum Derby's own CacheManager MBeans over all databases
+     * booted in this process and return -1 when there are none, e.g. in client mode.
+     */
+    public interface DerbyMXBean {
+        int getLockCount();
+        int getWaitingLockCount();
+        int getTransactionCount();
+        /** @return One line per lock, waiting locks first. */
+        List<String> getLocks();
+        /** @return One line per transaction that is not idle, with its current statement. */
+        List<String> getActiveTransactions();
+        long getLockTimeoutCount();
+        long getDeadlockCount();
+        /** @return Snapshots written by {@link LockDiagnostics}; 0 unless it is enabled. */
+        long getLockSnapshotCount();
+        long getPageCacheHitCount();
+        long getPageCacheMissCount();
+        double getPageCacheHitRatio();
+        long getPageCacheUsedEntries();
+        long getPageCacheMaxEntries();
+    }
+
+    /** One operation's statistics, shown as a row in JMX clients. */
+    public static final class OperationSnapshot {
+        private final String name;
+        private final long calls;
+        private final long errors;
+        private final double callsPerSecond;
+        private final double meanMicros;
+        private final long p50Micros;
+        private final long p90Micros;
+        private final long p99Micros;
+        private final long maxMicros;
+        private final long waitP99Micros;
+
+        OperationSnapshot(QueryMetrics.OperationStats stats, double intervalSeconds) {
+            LatencyHistogram time = stats.getExecutionTime();
+            this.name = stats.getName();
+            this.calls = stats.getCalls();
+            this.errors = stats.getErrors();
+            this.callsPerSecond = intervalSeconds > 0 ? calls / intervalSeconds : 0.0;
+            this.meanMicros = time.getMeanNanos() / 1000.0;
+            this.p50Micros = micros(time.getPercentileNanos(50.0));
+            this.p90Micros = micros(time.getPercentileNanos(90.0));
+            this.p99Micros = micros(time.getPercentileNanos(99.0));
+            this.maxMicros = micros(time.getMaxNanos());
+            this.waitP99Micros = micros(stats.getConnectionWait().getPercentileNanos(99.0));
+        }
+
+        public String getName() { return name; }
+        public long getCalls() { return calls; }
+        public long getErrors() { return errors; }
+        public double getCallsPerSecond() { return callsPerSecond; }
+        public double getMeanMicros() { return meanMicros; }
+        public long getP50Micros() { return p50Micros; }
+        public long getP90Micros() { return p90Micros; }
+        public long getP99Micros() { return p99Micros; }
+        public long getMaxMicros() { return maxMicros; }
+        public long getWaitP99Micros() { return waitP99Micros; }
+    }
+
+    // --- Registration ---
+
+    /**
+     * Registers the beans if they are not registered yet. Call before the database
+     * engine boots so Derby's own MBeans are published too.
+     */
+    static synchronized void register() {
+        if (!ENABLED || !registered.isEmpty()) {
+            return;
+        }
+        if (System.getProperty("derby.system.jmx") == null) {
+            System.setProperty("derby.system.jmx", "true");
+        }
+        register("ConnectionPool", new PoolBean(), ConnectionPoolMXBean.class);
+        register("QueryMetrics", new QueryMetricsBean(), QueryMetricsMXBean.class);
+        register("ReferenceCache", new ReferenceCacheBean(), ReferenceCacheMXBean.class);
+        register("SeatLedger", new SeatLedgerBean(), SeatLedgerMXBean.class);
+        register("Derby", new DerbyBean(), DerbyMXBean.class);
+        LOG.info("Registered {} JMX beans in domain {}", registered.size(), DOMAIN);
+    }
+
+    /** Removes the beans registered by {@link #register()}. */
+    static synchronized void unregister() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered) {
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                LOG.warn("Could not unregister JMX bean {}: {}", name, e.toString());
+            }
+        }
+        registered.clear();
+        DerbyBean.closeConnection();
+    }
+
+    private static <T> void register(String type, T bean, Class<T> mxbeanInterface) {
+        try {
+            ObjectName name = new ObjectName(DOMAIN, "type", type);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) { // Left behind by another copy of these classes
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(new StandardMBean(bean, mxbeanInterface, true), name);
+            registered.add(name);
+        } catch (JMException e) {
+            LOG.warn("Could not register JMX bean {}: {}", type, e.toString());
+        }
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    // --- Bean implementations ---
+
+    private static final class PoolBean implements ConnectionPoolMXBean {
+        @Override public String getDatabaseUrl() { return DBConnection.getDatabaseUrl(); }
+        @Override public String getMode() { return DBConnection.getMode(); }
+        @Override public boolean isOpen() { return pool() != null; }
+        @Override public int getMinSize() { ConnectionPool p = pool(); return p == null ? 0 : p.getMinSize(); }
+        @Override public int getMaxSize() { ConnectionPool p = pool(); return p == null ? 0 : p.getMaxSize(); }
+        @Override public int getActiveCount() { ConnectionPool p = pool(); return p == null ? 0 : p.getActiveCount(); }
+        @Override public int getIdleCount() { ConnectionPool p = pool(); return p == null ? 0 : p.getIdleCount(); }
+        @Override public int getWaitingThreads() { ConnectionPool p = pool(); return p == null ? 0 : p.getWaitingThreads(); }
+        @Override public long getBorrowCount() { ConnectionPool p = pool(); return p == null ? 0 : p.getBorrowCount(); }
+        @Override public long getBorrowTimeouts() { ConnectionPool p = pool(); return p == null ? 0 : p.getBorrowTimeouts(); }
+        @Override public long getConnectionsCreated() { ConnectionPool p = pool(); return p == null ? 0 : p.getConnectionsCreated(); }
+        @Override public long getConnectionsDiscarded() { ConnectionPool p = pool(); return p == null ? 0 : p.getConnectionsDiscarded(); }
+        @Override public long getLeaksDetected() { ConnectionPool p = pool(); return p == null ? 0 : p.getLeaksDetected(); }
+        @Override public long getTotalBorrowWaitMillis() { ConnectionPool p = pool(); return p == null ? 0 : p.getTotalBorrowWaitMillis(); }
+
+        @Override
+        public double getMeanBorrowWaitMicros() {
+            ConnectionPool p = pool();
+            return p == null ? 0.0 : p.getWaitHistogram().getMeanNanos() / 1000.0;
+        }
+
+        @Override
+        public long getBorrowWaitP99Micros() {
+            ConnectionPool p = pool();
+            return p == null ? 0 : micros(p.getWaitHistogram().getPercentileNanos(99.0));
+        }
+
+        @Override
+        public long getMaxBorrowWaitMicros() {
+            ConnectionPool p = pool();
+            return p == null ? 0 : micros(p.getWaitHistogram().getMaxNanos());
+        }
+
+        private static ConnectionPool pool() {
+            return DBConnection.getPoolIfOpen();
+        }
+    }
+
+    private static final class QueryMetricsBean implements QueryMetricsMXBean {
+        @Override public boolean isEnabled() { return QueryMetrics.isEnabled(); }
+        @Override public long getSlowQueryThresholdMillis() { return QueryMetrics.getSlowQueryThresholdMillis(); }
+        @Override public long getSlowQueryCount() { return QueryMetrics.getSlowQueryCount(); }
+        @Override public double getIntervalSeconds() { return QueryMetrics.getIntervalSeconds(); }
+        @Override public String getReport() { return QueryMetrics.report(); }
+        @Override public void reset() { QueryMetrics.reset(); }
+
+        @Override
+        public List<OperationSnapshot> getOperations() {
+            double interval = QueryMetrics.getIntervalSeconds();
+            List<OperationSnapshot> snapshots = new ArrayList<>();
+            for (QueryMetrics.OperationStats stats : QueryMetrics.getOperations()) {
+                snapshots.add(new OperationSnapshot(stats, interval));
+            }
+            return snapshots;
+        }
+    }
+
+    // SemesterQueries is looked up on each call so registering does not load it
+    private static final class ReferenceCacheBean implements ReferenceCacheMXBean {
+        @Override public int getSize() { return SemesterQueries.getReferenceCache().size(); }
+        @Override public int getMaxEntries() { return SemesterQueries.getReferenceCache().getMaxEntries(); }
+        @Override public long getTtlSeconds() { return TimeUnit.MILLISECONDS.toSeconds(SemesterQueries.getReferenceCache().getTtlMillis()); }
+        @Override public long getHitCount() { return SemesterQueries.getReferenceCache().getHitCount(); }
+        @Override public long getMissCount() { return SemesterQueries.getReferenceCache().getMissCount(); }
+        @Override public double getHitRatio() { return SemesterQueries.getReferenceCache().getHitRatio(); }
+        @Override public long getEvictionCount() { return SemesterQueries.getReferenceCache().getEvictionCount(); }
+        @Override public long getExpirationCount() { return SemesterQueries.getReferenceCache().getExpirationCount(); }
+        @Override public long getInvalidationCount() { return SemesterQueries.getReferenceCache().getInvalidationCount(); }
+        @Override public void invalidateAll() { SemesterQueries.getReferenceCache().invalidateAll(); }
+    }
+
+    private static final class SeatLedgerBean implements SeatLedgerMXBean {
+        @Override public int getLoadedSemesterCount() { return SemesterQueries.getSeatLedger().getLoadedSemesterCount(); }
+        @Override public long getLoadCount() { return SemesterQueries.getSeatLedger().getLoadCount(); }
+        @Override public long getReconcileCount() { return SemesterQueries.getSeatLedger().getReconcileCount(); }
+        @Override public long getCorrectionCount() { return SemesterQueries.getSeatLedger().getCorrectionCount(); }
+        @Override public void reconcile() throws SQLException { SemesterQueries.getSeatLedger().reconcile(); }
+    }
+
+    private static final class DerbyBean implements DerbyMXBean {
+        private static final String PAGE_CACHE = "org.apache.derby:type=CacheManager,name=PageCache,*";
+
+        @Override
+        public int getLockCount() {
+            return count("SELECT COUNT(*) FROM SYSCS_DIAG.LOCK_TABLE");
+        }
+
+        @Override
+        public int getWaitingLockCount() {
+            return count("SELECT COUNT(*) FROM SYSCS_DIAG.LOCK_TABLE WHERE state = 'WAIT'");
+        }
+
+        @Override
+        public int getTransactionCount() {
+            return count("SELECT COUNT(*) FROM SYSCS_DIAG.TRANSACTION_TABLE");
+        }
+
+        @Override
+        public List<String> getLocks() {
+            return rows("SELECT state, xid, type, mode, tablename, lockname, indexname FROM SYSCS_DIAG.LOCK_TABLE"
+                    + " ORDER BY state DESC, tablename, xid");
+        }
+
+        @Override
+        public List<String> getActiveTransactions() {
+            return rows("SELECT xid, username, type, status, sql_text FROM SYSCS_DIAG.TRANSACTION_TABLE"
+                    + " WHERE status <> 'IDLE' ORDER BY xid");
+        }
+
+        @Override public long getLockTimeoutCount() { return LockDiagnostics.getLockTimeoutCount(); }
+        @Override public long getDeadlockCount() { return LockDiagnostics.getDeadlockCount(); }
+        @Override public long getLockSnapshotCount() { return LockDiagnostics.getSnapshotCount(); }
+
+        @Override public long getPageCacheHitCount() { return pageCacheSum("HitCount"); }
+        @Override public long getPageCacheMissCount() { return pageCacheSum("MissCount"); }
+        @Override public long getPageCacheUsedEntries() { return pageCacheSum("UsedEntries"); }
+        @Override public long getPageCacheMaxEntries() { return pageCacheSum("MaxEntries"); }
+
+        @Override
+        public double getPageCacheHitRatio() {
+            long hits = pageCacheSum("HitCount");
+            long misses = pageCacheSum("MissCount");
+            return hits + misses <= 0 ? 0.0 : (double) hits / (hits + misses);
+        }
+
+        /**
+         * Derby counts cache hits only once asked to, so counting is switched on at
+         * the first read; earlier accesses are not included.
+         */
+        private static long pageCacheSum(String attribute) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            long sum = -1;
+            try {
+                for (ObjectName name : server.queryNames(new ObjectName(PAGE_CACHE), null)) {
+                    if (!Boolean.TRUE.equals(server.getAttribute(name, "CollectAccessCounts"))) {
+                        server.setAttribute(name, new Attribute("CollectAccessCounts", Boolean.TRUE));
+                    }
+                    sum = Math.max(sum, 0) + ((Number) server.getAttribute(name, attribute)).longValue();
+                }
+            } catch (JMException e) {
+                LOG.warn("Could not read Derby page cache {}: {}", attribute, e.toString());
+            }
+            return sum;
+        }
+
+        // Diagnostics are read when the pool may be exhausted, so they never borrow from it
+        private static Connection connection; // Guarded by DerbyBean.class
+
+        /** @return The bean's unpooled connection, opened on first use; autocommit is on. */
+        private static Connection connection() throws SQLException {
+            if (connection == null) {
+                connection = DBConnection.openUnpooledConnection();
+            }
+            return connection;
+        }
+
+        /** Closes the bean's connection; called when the beans are unregistered or a query fails. */
+        static synchronized void closeConnection() {
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    LOG.debug("Error closing Derby diagnostics connection: {}", e.getMessage());
+                }
+                connection = null;
+            }
+        }
+
+        private static synchronized int count(String sql) {
+            if (DBConnection.getPoolIfOpen() == null) {
+                return -1;
+            }
+            try (PreparedStatement ps = connection().prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+                rs.next();
+                return rs.getInt(1);
+            } catch (SQLException e) {
+                LOG.warn("Could not query Derby diagnostics: {}", e.getMessage());
+                closeConnection();
+                return -1;
+            }
+        }
+
+        private static synchronized List<String> rows(String sql) {
+            List<String> rows = new ArrayList<>();
+            if (DBConnection.getPoolIfOpen() == null) {
+                return rows;
+            }
+            try (PreparedStatement ps = connection().prepareStatement(sql); ResultSet rs = ps.executeQuery()) {
+                int columns = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    StringBuilder row = new StringBuilder();
+                    for (int i = 1; i <= columns; i++) {
+                        String value = rs.getString(i);
+                        if (value != null) {
+                            if (row.length() > 0) {
+                                row.append(' ');
+                            }
+                            row.append(value.trim());
+                        }
+                    }
+                    rows.add(row.toString());
+                }
+            } catch (SQLException e) {
+                LOG.warn("Could not query Derby diagnostics: {}", e.getMessage());
+                closeConnection();
+            }
+            return rows;
+        }
+    }
+}
@@ -0,0 +1,361 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * In-memory view of seats and scheduled counts per class, so seat lookups and
+ * "classes with open seats" are memory reads instead of queries.
+ *
+ * The database stays authoritative: seats are only ever claimed by the conditional
+ * update of APP.CLASSES.enrolled in SemesterQueries, and the ledger is never used to
+ * decide a registration. A semester is loaded from APP.CLASSES the first time it is
+ * read. After that, every enrollment write publishes the class's new figures once it
+ * has committed, and a background task reconciles all loaded semesters against the
+ * database periodically.
+ *
+ * Ordering: a writer takes a stamp from {@link #nextStamp()} while it holds the class
+ * row lock, so stamps for one class follow commit order. Reloads take their stamp
+ * before reading. Each class keeps the figures with the highest stamp, so updates
+ * that are published late never overwrite newer ones.
+ */
+public class SeatLedger {
+
+    private static final Log LOG = Log.get(SeatLedger.class);
+
+    // Statements whose plans `ant indexcheck` verifies (see bench/IndexCheck.java)
+    static final String SEMESTER_SQL = "SELECT coursecode, seats, enrolled FROM app.classes WHERE semester = ?";
+    static final String CLASS_SQL = "SELECT seats, enrolled FROM app.classes WHERE semester = ? AND coursecode = ?";
+
+    /** Figures for one class as of a stamp. seats < 0 marks a dropped class. */
+    private static final class ClassSeats {
+        final int seats;
+        final int scheduled;
+        final long stamp;
+
+        ClassSeats(int seats, int scheduled, long stamp) {
+            this.seats = seats;
+            this.scheduled = scheduled;
+            this.stamp = stamp;
+        }
+
+        boolean exists() {
+            return seats >= 0;
+        }
+    }
+
+    private static final class SemesterSeats {
+        final ConcurrentHashMap<String, ClassSeats> classes = new ConcurrentHashMap<>();
+        volatile boolean loaded;
+    }
+
+    /**
+     * Figures read inside a write transaction, to be published with
+     * {@link #publish(Update)} after that transaction commits.
+     */
+    public static final class Update {
+        final String semester;
+        final String courseCode;
+        final int seats;
+        final int scheduled;
+        final long stamp;
+
+        Update(String semester, String courseCode, int seats, int scheduled, long stamp) {
+            this.semester = semester;
+            this.courseCode = courseCode;
+            this.seats = seats;
+            this.scheduled = scheduled;
+            this.stamp = stamp;
+        }
+    }
+
+    private final ConcurrentHashMap<String, SemesterSeats> semesters = new ConcurrentHashMap<>();
+    private final AtomicLong stamps = new AtomicLong();
+    private final long reconcileMillis;
+    private ScheduledExecutorService reconciler; // Guarded by this
+
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder reconciles = new LongAdder();
+    private final LongAdder corrections = new LongAdder();
+
+    /**
+     * @param reconcileMillis Interval between reconciliations of all loaded semesters; 0 disables them.
+     */
+    public SeatLedger(long reconcileMillis) {
+        this.reconcileMillis = reconcileMillis;
+        // Stop background reconciliation before the pool goes away; start clean if it is reopened
+        DBConnection.addCloseListener(this::shutdown);
+    }
+
+    // --- Reads ---
+
+    /** @return The seat limit of a class, or 0 if it does not exist. */
+    public int getSeats(String semester, String courseCode) throws SQLException {
+        ClassSeats figures = lookup(semester, courseCode);
+        return figures == null ? 0 : figures.seats;
+    }
+
+    /** @return The number of scheduled (not waitlisted) students in a class, or 0 if it does not exist. */
+    public int getScheduledCount(String semester, String courseCode) throws SQLException {
+        ClassSeats figures = lookup(semester, courseCode);
+        return figures == null ? 0 : figures.scheduled;
+    }
+
+    /** @return Free seats in a class, or 0 if it is full or does not exist. */
+    public int getOpenSeats(String semester, String courseCode) throws SQLException {
+        ClassSeats figures = lookup(semester, courseCode);
+        return figures == null ? 0 : Math.max(0, figures.seats - figures.scheduled);
+    }
+
+    /** @return Course codes of the semester's classes that have at least one free seat, unordered. */
+    public List<String> getClassesWithOpenSeats(String semester) throws SQLException {
+        List<String> open = new ArrayList<>();
+        for (Map.Entry<String, ClassSeats> entry : loadedSemester(semester).classes.entrySet()) {
+            ClassSeats figures = entry.getValue();
+            if (figures.exists() && figures.scheduled < figures.seats) {
+                open.add(entry.getKey());
+            }
+        }
+        return open;
+    }
+
+    private ClassSeats lookup(String semester, String courseCode) throws SQLException {
+        ClassSeats figures = loadedSemester(semester).classes.get(courseCode);
+        return figures != null && figures.exists() ? figures : null;
+    }
+
+    private SemesterSeats loadedSemester(String semester) throws SQLException {
+        SemesterSeats seats = semesters.computeIfAbsent(semester, k -> new SemesterSeats());
+        if (!seats.loaded) {
+            synchronized (seats) {
+                if (!seats.loaded) {
+                    reload(semester, seats);
+                    seats.loaded = true;
+                    loads.increment();
+                    startReconciler();
+                }
+            }
+        }
+        return seats;
+    }
+
+    // --- Writes ---
+
+    /**
+     * Takes the next stamp. Call while holding the class row lock, i.e. after the
+     * transaction's last update of that APP.CLASSES row and before commit.
+     */
+    public long nextStamp() {
+        return stamps.incrementAndGet();
+    }
+
+    /**
+     * Reads a class's current figures inside a write transaction, for publishing
+     * after commit. The caller must hold the class row lock.
+     * @return The update, or a removal if the class no longer exists.
+     */
+    public Update capture(Connection conn, String semester, String courseCode) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(CLASS_SQL)) {
+            pstmt.setString(1, semester);
+            pstmt.setString(2, courseCode);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                long stamp = nextStamp();
+                return rs.next()
+                        ? new Update(semester, courseCode, rs.getInt("seats"), rs.getInt("enrolled"), stamp)
+                        : removal(semester, courseCode, stamp);
+            }
+        }
+    }
+
+    /**
+     * An update for a class inserted by the caller's transaction, when reading it
+     * back with {@link #capture} would cost a query per row. Take the stamp before commit.
+     */
+    public Update added(String semester, String courseCode, int seats, long stamp) {
+        return new Update(semester, courseCode, seats, 0, stamp);
+    }
+
+    /** An update recording that a class was dropped. Take the stamp while holding the row lock. */
+    public Update removal(String semester, String courseCode, long stamp) {
+        return new Update(semester, courseCode, -1, 0, stamp);
+    }
+
+    /**
+     * Applies figures captured by a committed transaction. Semesters that have not
+     * been loaded yet are skipped; they are read from the database on first use.
+     */
+    public void publish(Update update) {
+        SemesterSeats seats = semesters.get(update.semester);
+        if (seats != null) {
+            apply(seats, update.courseCode, new ClassSeats(update.seats, update.scheduled, update.stamp));
+        }
+    }
+
+    /** Publishes several updates, e.g. from one transaction that touched several classes. */
+    public void publishAll(List<Update> updates) {
+        for (Update update : updates) {
+            publish(update);
+        }
+    }
+
+    /**
+     * Drops a semester's figures so the next read loads them again, for set-based
+     * writes that change many of its classes at once. Call after the write has committed.
+     */
+    public void evict(String semester) {
+        semesters.remove(semester);
+    }
+
+    /** @return true if the figures were newer than the ones held and replaced them */
+    private static boolean apply(SemesterSeats seats, String courseCode, ClassSeats figures) {
+        boolean[] applied = new boolean[1];
+        seats.classes.compute(courseCode, (k, current) -> {
+            if (current != null && current.stamp >= figures.stamp) {
+                return current;
+            }
+            applied[0] = true;
+            return figures;
+        });
+        return applied[0];
+    }
+
+    // --- Loading and reconciliation ---
+
+    /**
+     * Re-reads every loaded semester from the database and corrects any figures
+     * that differ. Normally called by the background reconciler.
+     */
+    public void reconcile() throws SQLException {
+        for (Map.Entry<String, SemesterSeats> entry : semesters.entrySet()) {
+            if (entry.getValue().loaded) {
+                reload(entry.getKey(), entry.getValue());
+            }
+        }
+        reconciles.increment();
+    }
+
+    private void reload(String semester, SemesterSeats seats) throws SQLException {
+        long stamp = nextStamp(); // Before reading: anything committed later is published with a higher stamp
+        Set<String> present = new HashSet<>();
+        Connection conn = null;
+        try {
+            conn = DBConnection.getConnection("seatLedgerReload");
+            try (PreparedStatement pstmt = conn.prepareStatement(SEMESTER_SQL)) {
+                pstmt.setString(1, semester);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        String courseCode = Interner.intern(rs.getString("coursecode"));
+                        present.add(courseCode);
+                        ClassSeats before = seats.classes.get(courseCode);
+                        ClassSeats figures = new ClassSeats(rs.getInt("seats"), rs.getInt("enrolled"), stamp);
+                        if (apply(seats, courseCode, figures) && seats.loaded && differs(before, figures)) {
+                            corrections.increment();
+                        }
+                    }
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            LOG.error("Error loading seat ledger for semester {}: {}", semester, e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rbEx) {
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
+                }
+            }
+            throw e;
+        } finally {
+            DBConnection.release(conn);
+        }
+
+        // Classes that are gone from the database, and tombstones older than this read
+        for (Map.Entry<String, ClassSeats> entry : seats.classes.entrySet()) {
+            ClassSeats figures = entry.getValue();
+            if (!present.contains(entry.getKey()) && figures.stamp < stamp) {
+                if (seats.classes.remove(entry.getKey(), figures) && figures.exists() && seats.loaded) {
+                    corrections.increment();
+                }
+            }
+        }
+    }
+
+    private static boolean differs(ClassSeats before, ClassSeats after) {
+        return before == null || !before.exists() || before.seats != after.seats || before.scheduled != after.scheduled;
+    }
+
+    private synchronized void startReconciler() {
+        if (reconciler != null || reconcileMillis <= 0) {
+            return;
+        }
+        reconciler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "SeatLedger-reconciler");
+            t.setDaemon(true);
+            return t;
+        });
+        reconciler.scheduleWithFixedDelay(() -> {
+            long before = corrections.sum();
+            try {
+                reconcile();
+            } catch (SQLException e) {
+                LOG.error("Seat ledger reconciliation failed: {}", e.getMessage());
+            } catch (RuntimeException e) {
+                LOG.error("Seat ledger reconciliation failed: {}", e.toString());
+            }
+            long corrected = corrections.sum() - before;
+            if (corrected > 0) {
+                LOG.warn("Seat ledger reconciliation corrected {} class(es): {}", corrected, toString());
+            }
+        }, reconcileMillis, reconcileMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops the background reconciler and forgets all loaded semesters, which are
+     * read again on next use.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (reconciler != null) {
+                reconciler.shutdownNow();
+                reconciler = null;
+            }
+        }
+        semesters.clear();
+    }
+
+    // --- Statistics ---
+
+    public int getLoadedSemesterCount() {
+        return semesters.size();
+    }
+
+    public long getLoadCount() {
+        return loads.sum();
+    }
+
+    public long getReconcileCount() {
+        return reconciles.sum();
+    }
+
+    /** Classes whose figures a reload found out of date. Should stay at 0. */
+    public long getCorrectionCount() {
+        return corrections.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "SeatLedger[semesters=" + getLoadedSemesterCount() + ", loads=" + getLoadCount()
+                + ", reconciles=" + getReconcileCount() + ", corrections=" + getCorrectionCount() + "]";
+    }
+}
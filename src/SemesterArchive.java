@@ -0,0 +1,510 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Retires a semester from the live tables and brings it back.
+ *
+ * Archiving streams the semester's classes and schedule rows to two gzip-compressed
+ * CSV files, then deletes them in chunks: each chunk is one DELETE over a range of
+ * the schedule primary key (semester, studentid) in its own transaction, so the
+ * lock table stays small and other semesters' registrations are not held up for long.
+ * Every chunk must delete exactly the rows that were exported for its range; if the
+ * semester changed since the export, the chunk is rolled back and archiving stops
+ * with the archive files kept. Finally the classes and the semester itself are
+ * deleted, and APP.SCHEDULE and APP.CLASSES are compressed to return the freed space.
+ *
+ * Restoring reads the two files back in one transaction. Classes keep their
+ * enrollment counters and waitlisted rows keep their sequence numbers, which are
+ * only compared within a class (see {@link Waitlist}).
+ *
+ * If archiving fails after it started deleting (the semester changed, a lock timed
+ * out, the process died), the semester is left partly deleted and the archive files
+ * are kept. Run restore with the same --semester and --dir: it puts back only the
+ * classes and schedule rows that are missing, keeping the rows still in the database,
+ * which may be newer than the archive. Then archive again once the semester is quiet.
+ *
+ * Archive only semesters that are closed for registration: a student whose
+ * enrollment changes while archiving runs may be archived in either state.
+ *
+ * Files, in --dir (default "archive"), named after the semester:
+ * <pre>
+ * SEMESTER.classes.csv.gz   semester,coursecode,seats,enrolled
+ * SEMESTER.schedule.csv.gz  semester,studentid,coursecode,status,timestamp,waitseq
+ * </pre>
+ *
+ * Usage (see the "archive" target in build.xml):
+ * <pre>
+ * java -cp ... SemesterArchive archive --semester=NAME [--dir=DIR] [--chunk=5000] [--skipCompress]
+ * java -cp ... SemesterArchive restore --semester=NAME [--dir=DIR]
+ * </pre>
+ */
+public class SemesterArchive {
+
+    private static final String CLASSES_HEADER = "semester,coursecode,seats,enrolled";
+    private static final String SCHEDULE_HEADER = "semester,studentid,coursecode,status,timestamp,waitseq";
+    private static final int INSERT_BATCH_SIZE = 1000;
+
+    private final String semester;
+    private final File classesFile;
+    private final File scheduleFile;
+
+    /** @param dir Directory holding the archive files. */
+    public SemesterArchive(String semester, File dir) {
+        this.semester = semester;
+        String name = semester.replaceAll("[^A-Za-z0-9._-]", "_");
+        this.classesFile = new File(dir, name + ".classes.csv.gz");
+        this.scheduleFile = new File(dir, name + ".schedule.csv.gz");
+    }
+
+    /** Schedule rows exported for one delete chunk: studentid in (lowerBound, upperBound]. */
+    private static final class Chunk {
+        final String lowerBound; // null for the first chunk
+        final String upperBound;
+        final int rows;
+
+        Chunk(String lowerBound, String upperBound, int rows) {
+            this.lowerBound = lowerBound;
+            this.upperBound = upperBound;
+            this.rows = rows;
+        }
+    }
+
+    // --- Archive ---
+
+    /**
+     * Exports the semester and removes it from the database.
+     * @param chunkSize Schedule rows deleted per transaction (a student's rows are never split).
+     * @param compress  Compress APP.SCHEDULE and APP.CLASSES afterwards.
+     * @throws SQLException if the semester does not exist or changed while archiving
+     */
+    public void archive(int chunkSize, boolean compress) throws IOException, SQLException {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        if (classesFile.exists() || scheduleFile.exists()) {
+            throw new IOException("Archive files for " + semester + " already exist in " + classesFile.getParent()
+                    + "; if an earlier archive of it failed, restore it first");
+        }
+        File dir = classesFile.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Cannot create " + dir);
+        }
+
+        long start = System.nanoTime();
+        int classes;
+        List<Chunk> chunks;
+        Connection conn = null;
+        try {
+            conn = DBConnection.getConnection();
+            if (!exists(conn, "SELECT 1 FROM app.semester WHERE semester = ?")) {
+                throw new SQLException("No such semester: " + semester);
+            }
+            classes = exportClasses(conn);
+            chunks = exportSchedule(conn, chunkSize);
+            conn.commit();
+        } catch (SQLException | IOException e) {
+            System.err.println("Error exporting semester " + semester + ": " + e.getMessage());
+            rollback(conn);
+            deleteArchiveFiles();
+            throw e;
+        } finally {
+            DBConnection.release(conn);
+        }
+        long rows = 0;
+        for (Chunk chunk : chunks) {
+            rows += chunk.rows;
+        }
+        System.out.printf("Exported %d classes and %d schedule rows of %s in %.1f s%n",
+                classes, rows, semester, (System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        for (Chunk chunk : chunks) {
+            deleteChunk(chunk);
+        }
+        deleteClassesAndSemester(classes);
+        SemesterQueries.getReferenceCache().invalidateAll();
+        SemesterQueries.getSeatLedger().evict(semester);
+        System.out.printf("Deleted %s in %d chunks in %.1f s%n", semester, chunks.size(), (System.nanoTime() - start) / 1e9);
+
+        if (compress) {
+            start = System.nanoTime();
+            for (String table : new String[]{"SCHEDULE", "CLASSES"}) {
+                BulkLoader.callForTable("CALL SYSCS_UTIL.SYSCS_COMPRESS_TABLE('APP', ?, 1)", table);
+            }
+            System.out.printf("Compressed APP.SCHEDULE and APP.CLASSES in %.1f s%n", (System.nanoTime() - start) / 1e9);
+        }
+    }
+
+    private int exportClasses(Connection conn) throws IOException, SQLException {
+        String sql = "SELECT coursecode, seats, enrolled FROM app.classes WHERE semester = ? ORDER BY coursecode";
+        int rows = 0;
+        try (Writer out = gzipWriter(classesFile);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            out.write(CLASSES_HEADER + "\n");
+            pstmt.setString(1, semester);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    writeRow(out, semester, rs.getString("coursecode"), rs.getString("seats"), rs.getString("enrolled"));
+                    rows++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    /** Exports in primary key order and splits the rows into delete chunks at student boundaries. */
+    private List<Chunk> exportSchedule(Connection conn, int chunkSize) throws IOException, SQLException {
+        String sql = "SELECT studentid, coursecode, status, timestamp, waitseq FROM app.schedule " +
+                     "WHERE semester = ? ORDER BY studentid, coursecode";
+        List<Chunk> chunks = new ArrayList<>();
+        String lowerBound = null;
+        String previous = null;
+        int rows = 0;
+        try (Writer out = gzipWriter(scheduleFile);
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            out.write(SCHEDULE_HEADER + "\n");
+            pstmt.setString(1, semester);
+            pstmt.setFetchSize(1000);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    String studentId = rs.getString("studentid");
+                    if (rows >= chunkSize && !studentId.equals(previous)) {
+                        chunks.add(new Chunk(lowerBound, previous, rows));
+                        lowerBound = previous;
+                        rows = 0;
+                    }
+                    Timestamp timestamp = rs.getTimestamp("timestamp");
+                    writeRow(out, semester, studentId, rs.getString("coursecode"), rs.getString("status"),
+                            timestamp == null ? null : timestamp.toString(), rs.getString("waitseq"));
+                    previous = studentId;
+                    rows++;
+                }
+            }
+        }
+        if (rows > 0) {
+            chunks.add(new Chunk(lowerBound, previous, rows));
+        }
+        return chunks;
+    }
+
+    private void deleteChunk(Chunk chunk) throws SQLException {
+        String sql = chunk.lowerBound == null
+                ? "DELETE FROM app.schedule WHERE semester = ? AND studentid <= ?"
+                : "DELETE FROM app.schedule WHERE semester = ? AND studentid <= ? AND studentid > ?";
+        Connection conn = null;
+        try {
+            conn = DBConnection.getConnection();
+            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+                pstmt.setString(1, semester);
+                pstmt.setString(2, chunk.upperBound);
+                if (chunk.lowerBound != null) {
+                    pstmt.setString(3, chunk.lowerBound);
+                }
+                int deleted = pstmt.executeUpdate();
+                if (deleted != chunk.rows) {
+                    throw new SQLException("Semester " + semester + " changed while archiving: expected " + chunk.rows
+                            + " schedule rows up to student " + chunk.upperBound + " but found " + deleted);
+                }
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            System.err.println("Error deleting archived schedule rows: " + e.getMessage());
+            rollback(conn);
+            throw e;
+        } finally {
+            DBConnection.release(conn);
+        }
+    }
+
+    private void deleteClassesAndSemester(int classes) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DBConnection.getConnection();
+            if (exists(conn, "SELECT 1 FROM app.schedule WHERE semester = ?")) {
+                throw new SQLException("Semester " + semester + " changed while archiving: new schedule rows were added");
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM app.classes WHERE semester = ?")) {
+                pstmt.setString(1, semester);
+                int deleted = pstmt.executeUpdate();
+                if (deleted != classes) {
+                    throw new SQLException("Semester " + semester + " changed while archiving: expected "
+                            + classes + " classes but found " + deleted);
+                }
+            }
+            try (PreparedStatement pstmt = conn.prepareStatement("DELETE FROM app.semester WHERE semester = ?")) {
+                pstmt.setString(1, semester);
+                pstmt.executeUpdate();
+            }
+            conn.commit();
+        } catch (SQLException e) {
+            System.err.println("Error deleting archived classes: " + e.getMessage());
+            rollback(conn);
+            throw e;
+        } finally {
+            DBConnection.release(conn);
+        }
+    }
+
+    private void deleteArchiveFiles() {
+        for (File file : new File[]{classesFile, scheduleFile}) {
+            if (file.exists() && !file.delete()) {
+                System.err.println("Could not delete " + file);
+            }
+        }
+    }
+
+    // --- Restore ---
+
+    /**
+     * Loads an archived semester back in one transaction. If the semester is still in
+     * the database, because archiving it failed partway, only the classes and schedule
+     * rows it is missing are inserted.
+     * @return The number of schedule rows restored
+     * @throws SQLException if a student or course the archive refers to has been
+     *         deleted since it was archived
+     */
+    public long restore() throws IOException, SQLException {
+        if (!classesFile.exists() || !scheduleFile.exists()) {
+            throw new IOException("No archive of " + semester + " in " + classesFile.getAbsoluteFile().getParent());
+        }
+        String sqlSemester = "INSERT INTO app.semester (semester) VALUES (?)";
+        String sqlClass = "INSERT INTO app.classes (semester, coursecode, seats, enrolled) VALUES (?, ?, ?, ?)";
+        String sqlSchedule = "INSERT INTO app.schedule (semester, studentid, coursecode, status, timestamp, waitseq) " +
+                             "VALUES (?, ?, ?, ?, ?, ?)";
+        long start = System.nanoTime();
+        int classes = 0;
+        long rows = 0;
+        long kept = 0;
+        Connection conn = null;
+        try {
+            conn = DBConnection.getConnection();
+            Set<String> liveClasses = new HashSet<>();
+            Set<String> liveRows = new HashSet<>();
+            if (exists(conn, "SELECT 1 FROM app.semester WHERE semester = ?")) {
+                // A partly archived semester: its deletes went student by student, classes last
+                liveClasses = keys(conn, "SELECT coursecode FROM app.classes WHERE semester = ?");
+                liveRows = keys(conn, "SELECT studentid, coursecode FROM app.schedule WHERE semester = ?");
+                System.out.printf("%s is still in the database with %d classes and %d schedule rows;"
+                        + " restoring only what is missing%n", semester, liveClasses.size(), liveRows.size());
+            } else {
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlSemester)) {
+                    pstmt.setString(1, semester);
+                    pstmt.executeUpdate();
+                }
+            }
+
+            try (BufferedReader in = gzipReader(classesFile);
+                 PreparedStatement pstmt = conn.prepareStatement(sqlClass)) {
+                String[] fields;
+                while ((fields = readRow(in, CLASSES_HEADER)) != null) {
+                    if (liveClasses.contains(fields[1])) {
+                        continue; // Its enrollment counter still counts the rows restored below
+                    }
+                    pstmt.setString(1, semester);
+                    pstmt.setString(2, fields[1]);
+                    pstmt.setInt(3, Integer.parseInt(fields[2]));
+                    pstmt.setInt(4, Integer.parseInt(fields[3]));
+                    pstmt.addBatch();
+                    classes++;
+                }
+                pstmt.executeBatch();
+            }
+
+            try (BufferedReader in = gzipReader(scheduleFile);
+                 PreparedStatement pstmt = conn.prepareStatement(sqlSchedule)) {
+                String[] fields;
+                while ((fields = readRow(in, SCHEDULE_HEADER)) != null) {
+                    if (liveRows.contains(fields[1] + '\u0000' + fields[2])) {
+                        kept++;
+                        continue;
+                    }
+                    pstmt.setString(1, semester);
+                    pstmt.setString(2, fields[1]);
+                    pstmt.setString(3, fields[2]);
+                    pstmt.setString(4, fields[3]);
+                    pstmt.setTimestamp(5, fields[4].isEmpty() ? null : Timestamp.valueOf(fields[4]));
+                    if (fields[5].isEmpty()) {
+                        pstmt.setNull(6, Types.BIGINT);
+                    } else {
+                        pstmt.setLong(6, Long.parseLong(fields[5]));
+                    }
+                    pstmt.addBatch();
+                    if (++rows % INSERT_BATCH_SIZE == 0) {
+                        pstmt.executeBatch();
+                    }
+                }
+                pstmt.executeBatch();
+            }
+            conn.commit();
+        } catch (SQLException | IOException | RuntimeException e) {
+            System.err.println("Error restoring semester " + semester + ": " + e.getMessage());
+            rollback(conn);
+            throw e;
+        } finally {
+            DBConnection.release(conn);
+        }
+        SemesterQueries.getReferenceCache().invalidateAll();
+        SemesterQueries.getSeatLedger().evict(semester);
+        System.out.printf("Restored %d classes and %d schedule rows of %s in %.1f s%s%n",
+                classes, rows, semester, (System.nanoTime() - start) / 1e9,
+                kept > 0 ? " (" + kept + " rows were still in the database)" : "");
+        return rows;
+    }
+
+    /** @return The next row's fields after the header, or null at the end of the file. */
+    private String[] readRow(BufferedReader in, String header) throws IOException {
+        String line = in.readLine();
+        if (line != null && line.equals(header)) {
+            line = in.readLine();
+        }
+        if (line == null) {
+            return null;
+        }
+        String[] fields = CsvImporter.parseLine(line);
+        int columns = header.split(",").length;
+        if (fields == null || fields.length != columns || !semester.equals(fields[0])) {
+            throw new IOException("Unexpected archive line: " + line);
+        }
+        return fields;
+    }
+
+    // --- Helpers ---
+
+    /** @return One key per row, the row's columns joined with '\u0000'. */
+    private Set<String> keys(Connection conn, String sql) throws SQLException {
+        Set<String> keys = new HashSet<>();
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, semester);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                int columns = rs.getMetaData().getColumnCount();
+                while (rs.next()) {
+                    StringBuilder key = new StringBuilder(rs.getString(1));
+                    for (int i = 2; i <= columns; i++) {
+                        key.append('\u0000').append(rs.getString(i));
+                    }
+                    keys.add(key.toString());
+                }
+            }
+        }
+        return keys;
+    }
+
+    private boolean exists(Connection conn, String sql) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, semester);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static void writeRow(Writer out, String... values) throws IOException {
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                out.write(',');
+            }
+            if (values[i] != null) { // An empty field is NULL
+                out.write(CsvImporter.quote(values[i]));
+            }
+        }
+        out.write('\n');
+    }
+
+    private static Writer gzipWriter(File file) throws IOException {
+        return new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(new FileOutputStream(file), 1 << 16), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static BufferedReader gzipReader(File file) throws IOException {
+        return new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new FileInputStream(file), 1 << 16), StandardCharsets.UTF_8), 1 << 16);
+    }
+
+    private static void rollback(Connection conn) {
+        if (conn != null) {
+            try {
+                conn.rollback();
+            } catch (SQLException rbEx) {
+                System.err.println("Error during rollback: " + rbEx.getMessage());
+            }
+        }
+    }
+
+    // --- Command line ---
+
+    public static void main(String[] args) {
+        if (args.length == 0 || !Arrays.asList("archive", "restore").contains(args[0])) {
+            usage("Expected archive or restore");
+        }
+        Map<String, String> options = new HashMap<>();
+        for (String arg : Arrays.asList(args).subList(1, args.length)) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--")) {
+                usage("Unrecognized argument: " + arg);
+            }
+            options.put(eq < 0 ? arg.substring(2) : arg.substring(2, eq), eq < 0 ? "true" : arg.substring(eq + 1));
+        }
+        if (!Arrays.asList("semester", "dir", "chunk", "skipCompress").containsAll(options.keySet())) {
+            usage("Unknown option");
+        }
+        if (options.get("semester") == null) {
+            usage("--semester is required");
+        }
+
+        // Restore holds one connection for the whole semester
+        if (System.getProperty("scheduler.pool.leakThresholdMs") == null) {
+            System.setProperty("scheduler.pool.leakThresholdMs", "0");
+        }
+
+        int exitCode = 0;
+        try {
+            SemesterArchive archive = new SemesterArchive(options.get("semester"),
+                    new File(options.getOrDefault("dir", "archive")));
+            DBInitializer.initializeDatabase();
+            if (args[0].equals("archive")) {
+                archive.archive(Integer.parseInt(options.getOrDefault("chunk", "5000")),
+                        !options.containsKey("skipCompress"));
+            } else {
+                archive.restore();
+            }
+        } catch (IOException | SQLException e) {
+            System.err.println(args[0] + " failed: " + e.getMessage());
+            exitCode = 1;
+        } catch (IllegalArgumentException e) {
+            usage(e.getMessage());
+        } finally {
+            DBConnection.closeConnection();
+        }
+        System.exit(exitCode);
+    }
+
+    private static void usage(String problem) {
+        System.err.println(problem);
+        System.err.println("Usage: SemesterArchive archive --semester=NAME [--dir=DIR] [--chunk=5000] [--skipCompress]");
+        System.err.println("       SemesterArchive restore --semester=NAME [--dir=DIR]");
+        System.exit(2);
+    }
+}
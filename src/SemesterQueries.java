@@ -3,8 +3,15 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Timestamp;
+import java.sql.Types;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List; // Use List interface
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Contains static methods for querying the course scheduler database.
@@ -15,91 +22,206 @@ import java.util.List; // Use List interface
  */
 public class SemesterQueries {
 
+    private static final Log LOG = Log.get(SemesterQueries.class);
+
+    /**
+     * Rows fetched per round trip by the streaming queries. Embedded Derby treats this
+     * as a hint; it matters most when the database is accessed over the network.
+     * Override with -Dscheduler.query.fetchSize=N.
+     */
+    private static final int FETCH_SIZE = Integer.getInteger("scheduler.query.fetchSize", 200);
+
+    /**
+     * Cache for semesters, course codes, course descriptions and per-semester class
+     * lists. These change a few times per term but are re-read on every combo box
+     * rebuild. Size and lifetime: -Dscheduler.cache.maxEntries (default 256) and
+     * -Dscheduler.cache.ttlSeconds (default 300); either set to 0 disables caching.
+     */
+    private static final ReferenceDataCache REFERENCE_CACHE = new ReferenceDataCache(
+            Integer.getInteger("scheduler.cache.maxEntries", 256),
+            TimeUnit.SECONDS.toMillis(Long.getLong("scheduler.cache.ttlSeconds", 300L)));
+
+    /**
+     * Seats and scheduled counts per class, kept in memory for reads. Enrollment
+     * writes publish their committed figures to it. All loaded semesters are
+     * reconciled with the database every -Dscheduler.ledger.reconcileSeconds
+     * (default 60; 0 disables).
+     */
+    private static final SeatLedger SEAT_LEDGER = new SeatLedger(
+            TimeUnit.SECONDS.toMillis(Long.getLong("scheduler.ledger.reconcileSeconds", 60L)));
+
+    /**
+     * Students enrolled per transaction by scheduleClasses. Larger batches mean fewer
+     * commits but hold the class row lock longer, delaying single registrations for
+     * that class. Override with -Dscheduler.enroll.batchSize=N.
+     */
+    private static final int ENROLL_BATCH_SIZE = Math.max(1, Integer.getInteger("scheduler.enroll.batchSize", 100));
+
+    /**
+     * SQLState of the errors raised here when the semester, class or enrollment an
+     * operation names does not exist ("no data"), so callers can tell them apart
+     * from database failures.
+     */
+    public static final String NOT_FOUND_STATE = "02000";
+
+    // Statements whose plans `ant indexcheck` verifies (see bench/IndexCheck.java)
+    static final String STUDENTS_BY_NAME_SQL =
+            "SELECT studentid, firstname, lastname FROM app.students ORDER BY lastname, firstname";
+    static final String STUDENT_CLASSES_SQL =
+            "SELECT semester, coursecode FROM app.schedule WHERE studentid = ? ORDER BY semester, coursecode";
+    static final String STUDENT_SCHEDULE_SQL =
+            "SELECT semester, coursecode, status FROM app.schedule WHERE studentid = ? FOR UPDATE";
+    static final String ROSTER_SQL = "SELECT s.lastname, s.firstname, sc.status " +
+                                     "FROM app.schedule sc " +
+                                     "JOIN app.students s ON sc.studentid = s.studentid " +
+                                     "WHERE sc.semester = ? AND sc.coursecode = ? " +
+                                     "ORDER BY sc.status, sc.waitseq, sc.timestamp";
+
+    private static final String SEMESTERS_KEY = "semesters";
+    private static final String COURSES_KEY = "courses";
+    private static final String DESCRIPTION_KEY_PREFIX = "description:";
+    private static final String CLASSES_KEY_PREFIX = "classes:";
+
+    /**
+     * Receives query results one row at a time, while the result set is still open.
+     * Nothing is buffered between rows, so memory use does not grow with the result size.
+     * The handler runs on the calling thread and holds a pooled connection, so it
+     * should not block for long. It is meant for in-process consumers; code that sends
+     * rows to a network client uses the list-returning queries, so the connection is
+     * back in the pool before the first byte is written.
+     */
+    public interface RowHandler<T> {
+        void handleRow(T row) throws SQLException;
+    }
+
+    /** Converts the current result set row into the row object passed to a {@link RowHandler}. */
+    private interface RowMapper<T> {
+        T map(ResultSet rs) throws SQLException;
+    }
+
+    /**
+     * The cache behind getSemesterList, getAllCourseCodes, getCourseDescription and
+     * getAllCourseCodesBySemester, for statistics or invalidation after changes
+     * made outside this class.
+     */
+    public static ReferenceDataCache getReferenceCache() {
+        return REFERENCE_CACHE;
+    }
+
+    /** The in-memory seat ledger behind the seat and open-seat lookups. */
+    public static SeatLedger getSeatLedger() {
+        return SEAT_LEDGER;
+    }
+
     public static void addSemester(String name) throws SQLException {
         String sql = "INSERT INTO app.semester (semester) VALUES (?)";
-        try (Connection conn = DBConnection.getConnection();
+        try (Connection conn = DBConnection.getConnection("addSemester");
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, name);
             pstmt.executeUpdate();
+            conn.commit();
+            REFERENCE_CACHE.invalidate(SEMESTERS_KEY);
         } catch (SQLException e) {
-            System.err.println("Error adding semester: " + e.getMessage());
+            LOG.error("Error adding semester: {}", e.getMessage());
             throw e;
         }
     }
 
+    /** Cached; see {@link #getReferenceCache()}. */
     public static ArrayList<String> getSemesterList() throws SQLException {
+        return new ArrayList<>(REFERENCE_CACHE.get(SEMESTERS_KEY, SemesterQueries::loadSemesterList));
+    }
+
+    private static List<String> loadSemesterList() throws SQLException {
         ArrayList<String> semesters = new ArrayList<>();
         String sql = "SELECT semester FROM app.semester ORDER BY semester";
         Connection conn = null;
         try {
-            conn = DBConnection.getConnection();
+            conn = DBConnection.getConnection("getSemesterList");
             try (PreparedStatement pstmt = conn.prepareStatement(sql);
                  ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    semesters.add(rs.getString("semester"));
+                    semesters.add(Interner.intern(rs.getString("semester")));
                 }
             }
             conn.commit();
         } catch (SQLException e) {
-            System.err.println("Error getting semester list: " + e.getMessage());
+            LOG.error("Error getting semester list: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rbEx) {
-                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
                 }
             }
             throw e;
+        } finally {
+            DBConnection.release(conn);
         }
-        return semesters;
+        return Collections.unmodifiableList(semesters);
     }
 
     public static void addCourse(String courseCode, String description) throws SQLException {
         String sql = "INSERT INTO app.courses (coursecode, description) VALUES (?, ?)";
-        try (Connection conn = DBConnection.getConnection();
+        try (Connection conn = DBConnection.getConnection("addCourse");
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, courseCode);
             pstmt.setString(2, description);
             pstmt.executeUpdate();
+            conn.commit();
+            REFERENCE_CACHE.invalidate(COURSES_KEY);
+            REFERENCE_CACHE.invalidate(DESCRIPTION_KEY_PREFIX + courseCode);
         } catch (SQLException e) {
-            System.err.println("Error adding course: " + e.getMessage());
+            LOG.error("Error adding course: {}", e.getMessage());
             throw e;
         }
     }
 
+    /** Cached; see {@link #getReferenceCache()}. */
     public static ArrayList<String> getAllCourseCodes() throws SQLException {
+        return new ArrayList<>(REFERENCE_CACHE.get(COURSES_KEY, SemesterQueries::loadAllCourseCodes));
+    }
+
+    private static List<String> loadAllCourseCodes() throws SQLException {
         ArrayList<String> courseList = new ArrayList<>();
         String sql = "SELECT coursecode FROM app.courses ORDER BY coursecode";
         Connection conn = null;
         try {
-            conn = DBConnection.getConnection();
+            conn = DBConnection.getConnection("getAllCourseCodes");
             try (PreparedStatement pstmt = conn.prepareStatement(sql);
                  ResultSet rs = pstmt.executeQuery()) {
                 while (rs.next()) {
-                    courseList.add(rs.getString("coursecode"));
+                    courseList.add(Interner.intern(rs.getString("coursecode")));
                 }
             }
             conn.commit();
         } catch (SQLException e) {
-            System.err.println("Error getting all course codes: " + e.getMessage());
+            LOG.error("Error getting all course codes: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rbEx) {
-                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
                 }
             }
             throw e;
+        } finally {
+            DBConnection.release(conn);
         }
-        return courseList;
+        return Collections.unmodifiableList(courseList);
     }
 
+    /** Cached; see {@link #getReferenceCache()}. */
     public static String getCourseDescription(String courseCode) throws SQLException {
+        return REFERENCE_CACHE.get(DESCRIPTION_KEY_PREFIX + courseCode, () -> loadCourseDescription(courseCode));
+    }
+
+    private static String loadCourseDescription(String courseCode) throws SQLException {
         String desc = "";
         String sql = "SELECT description FROM app.courses WHERE coursecode = ?";
         Connection conn = null;
         try {
-            conn = DBConnection.getConnection();
+            conn = DBConnection.getConnection("getCourseDescription");
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                 pstmt.setString(1, courseCode);
                 try (ResultSet rs = pstmt.executeQuery()) {
@@ -110,196 +232,320 @@ public class SemesterQueries {
             }
             conn.commit();
         } catch (SQLException e) {
-            System.err.println("Error getting course description: " + e.getMessage());
+            LOG.error("Error getting course description: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rbEx) {
-                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
                 }
             }
             throw e;
+        } finally {
+            DBConnection.release(conn);
         }
         return desc;
     }
 
     public static void addClass(String semester, String courseCode, int seats) throws SQLException {
         String sql = "INSERT INTO app.classes (semester, coursecode, seats) VALUES (?, ?, ?)";
-        try (Connection conn = DBConnection.getConnection();
+        try (Connection conn = DBConnection.getConnection("addClass");
              PreparedStatement pstmt = conn.prepareStatement(sql)) {
             pstmt.setString(1, semester);
             pstmt.setString(2, courseCode);
             pstmt.setInt(3, seats);
             pstmt.executeUpdate();
+            SeatLedger.Update seatUpdate = SEAT_LEDGER.capture(conn, semester, courseCode);
+            conn.commit();
+            REFERENCE_CACHE.invalidate(CLASSES_KEY_PREFIX + semester);
+            SEAT_LEDGER.publish(seatUpdate);
         } catch (SQLException e) {
-            System.err.println("Error adding class: " + e.getMessage());
+            LOG.error("Error adding class: {}", e.getMessage());
             throw e;
         }
     }
 
-    public static ArrayList<String> getAllCourseCodesBySemester(String semester) throws SQLException {
-        ArrayList<String> classList = new ArrayList<>();
-        String sql = "SELECT coursecode FROM app.classes WHERE semester = ? ORDER BY coursecode";
+    /**
+     * Offers every class of one semester in another, copied by a single INSERT ... SELECT
+     * in one transaction. The target semester is created if it does not exist, and
+     * classes it already offers are left as they are.
+     * @param seatFactor Multiplies each class's seats, rounded to the nearest seat (1.0 copies them unchanged).
+     * @return The number of classes copied
+     */
+    public static int cloneSemester(String source, String target, double seatFactor) throws SQLException {
+        if (!(seatFactor >= 0)) {
+            throw new IllegalArgumentException("seatFactor must not be negative");
+        }
+        String sqlSemester = "INSERT INTO app.semester (semester) VALUES (?)";
+        String sqlCopy = "INSERT INTO app.classes (semester, coursecode, seats) " +
+                         "SELECT CAST(? AS VARCHAR(50)), s.coursecode, CAST(FLOOR(s.seats * CAST(? AS DOUBLE) + 0.5) AS INTEGER) " +
+                         "FROM app.classes s WHERE s.semester = ? " +
+                         "AND NOT EXISTS (SELECT 1 FROM app.classes t WHERE t.semester = ? AND t.coursecode = s.coursecode)";
+        int copied;
+        boolean created;
         Connection conn = null;
         try {
-            conn = DBConnection.getConnection();
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setString(1, semester);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    while (rs.next()) {
-                        classList.add(rs.getString("coursecode"));
-                    }
+            conn = DBConnection.getConnection("cloneSemester");
+            if (!semesterExists(conn, source)) {
+                throw new SQLException("No such semester: " + source, NOT_FOUND_STATE);
+            }
+            created = !semesterExists(conn, target);
+            if (created) {
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlSemester)) {
+                    pstmt.setString(1, target);
+                    pstmt.executeUpdate();
                 }
             }
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlCopy)) {
+                pstmt.setString(1, target);
+                pstmt.setDouble(2, seatFactor);
+                pstmt.setString(3, source);
+                pstmt.setString(4, target);
+                copied = pstmt.executeUpdate();
+            }
             conn.commit();
         } catch (SQLException e) {
-            System.err.println("Error getting course codes by semester: " + e.getMessage());
+            LOG.error("Error cloning semester: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rbEx) {
-                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
                 }
             }
             throw e;
+        } finally {
+            DBConnection.release(conn);
         }
-        return classList;
+        if (created) {
+            REFERENCE_CACHE.invalidate(SEMESTERS_KEY);
+        }
+        REFERENCE_CACHE.invalidate(CLASSES_KEY_PREFIX + target);
+        SEAT_LEDGER.evict(target);
+        return copied;
     }
 
-    public static int getClassSeats(String semester, String courseCode) throws SQLException {
-        int seats = 0;
-        String sql = "SELECT seats FROM app.classes WHERE semester = ? AND coursecode = ?";
+    private static boolean semesterExists(Connection conn, String semester) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement("SELECT 1 FROM app.semester WHERE semester = ?")) {
+            pstmt.setString(1, semester);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    /** Cached; see {@link #getReferenceCache()}. */
+    public static ArrayList<String> getAllCourseCodesBySemester(String semester) throws SQLException {
+        return new ArrayList<>(REFERENCE_CACHE.get(CLASSES_KEY_PREFIX + semester,
+                () -> loadAllCourseCodesBySemester(semester)));
+    }
+
+    private static List<String> loadAllCourseCodesBySemester(String semester) throws SQLException {
+        ArrayList<String> classList = new ArrayList<>();
+        String sql = "SELECT coursecode FROM app.classes WHERE semester = ? ORDER BY coursecode";
         Connection conn = null;
         try {
-            conn = DBConnection.getConnection();
+            conn = DBConnection.getConnection("getAllCourseCodesBySemester");
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
                 pstmt.setString(1, semester);
-                pstmt.setString(2, courseCode);
                 try (ResultSet rs = pstmt.executeQuery()) {
-                    if (rs.next()) {
-                        seats = rs.getInt("seats");
+                    while (rs.next()) {
+                        classList.add(Interner.intern(rs.getString("coursecode")));
                     }
                 }
             }
             conn.commit();
         } catch (SQLException e) {
-            System.err.println("Error getting class seats: " + e.getMessage());
+            LOG.error("Error getting course codes by semester: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rbEx) {
-                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
                 }
             }
             throw e;
+        } finally {
+            DBConnection.release(conn);
         }
-        return seats;
+        return Collections.unmodifiableList(classList);
     }
 
+    /**
+     * Seat limit of a class, from the in-memory seat ledger.
+     * @return the number of seats, or 0 if the class does not exist
+     */
+    public static int getClassSeats(String semester, String courseCode) throws SQLException {
+        return SEAT_LEDGER.getSeats(semester, courseCode);
+    }
+
+    /**
+     * Number of scheduled (not waitlisted) students in a class, from the in-memory seat ledger.
+     */
     public static int getScheduledStudentCount(String semester, String courseCode) throws SQLException {
-        int count = 0;
-        String sql = "SELECT COUNT(*) AS total FROM app.schedule WHERE semester = ? AND coursecode = ? AND status='scheduled'";
+        return SEAT_LEDGER.getScheduledCount(semester, courseCode);
+    }
+
+    /**
+     * Free seats in a class, from the in-memory seat ledger.
+     * @return the number of open seats, or 0 if the class is full or does not exist
+     */
+    public static int getOpenSeats(String semester, String courseCode) throws SQLException {
+        return SEAT_LEDGER.getOpenSeats(semester, courseCode);
+    }
+
+    /**
+     * Course codes of the classes in a semester that still have a free seat, in
+     * course code order, from the in-memory seat ledger.
+     */
+    public static ArrayList<String> getClassesWithOpenSeats(String semester) throws SQLException {
+        ArrayList<String> open = new ArrayList<>(SEAT_LEDGER.getClassesWithOpenSeats(semester));
+        Collections.sort(open);
+        return open;
+    }
+
+    /**
+     * Changes the seat limit of a class. If seats free up, that many students are
+     * promoted from the head of the waitlist in the same transaction. Lowering the
+     * limit below the current enrollment unseats nobody; the class simply stays
+     * full until enough students drop.
+     * @return IDs of the students promoted from the waitlist, in waitlist order
+     */
+    public static List<String> setClassSeats(String semester, String courseCode, int seats) throws SQLException {
+        String sql = "UPDATE app.classes SET seats = ? WHERE semester = ? AND coursecode = ?";
+        List<String> promoted;
         Connection conn = null;
         try {
-            conn = DBConnection.getConnection();
+            conn = DBConnection.getConnection("setClassSeats");
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setString(1, semester);
-                pstmt.setString(2, courseCode);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    if (rs.next()) {
-                        count = rs.getInt("total");
-                    }
+                pstmt.setInt(1, seats);
+                pstmt.setString(2, semester);
+                pstmt.setString(3, courseCode);
+                if (pstmt.executeUpdate() == 0) {
+                    throw new SQLException("Class " + courseCode + " is not offered in " + semester, NOT_FOUND_STATE);
                 }
             }
+            promoted = Waitlist.promote(conn, semester, courseCode);
+            SeatLedger.Update seatUpdate = SEAT_LEDGER.capture(conn, semester, courseCode);
             conn.commit();
+            SEAT_LEDGER.publish(seatUpdate);
+            EnrollmentMetrics.promoted(promoted.size());
         } catch (SQLException e) {
-            System.err.println("Error getting scheduled student count: " + e.getMessage());
+            LOG.error("Error changing class seats: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rbEx) {
-                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
                 }
             }
             throw e;
+        } finally {
+            DBConnection.release(conn);
         }
-        return count;
+        return promoted;
     }
 
-    public static void addStudent(String studentID, String firstName, String lastName) throws SQLException {
-        String sql = "INSERT INTO app.students (studentid, firstname, lastname) VALUES (?, ?, ?)";
-        try (Connection conn = DBConnection.getConnection();
-             PreparedStatement pstmt = conn.prepareStatement(sql)) {
-            pstmt.setString(1, studentID);
-            pstmt.setString(2, firstName);
-            pstmt.setString(3, lastName);
-            pstmt.executeUpdate();
+    /**
+     * A student's place in a class's waitlist, counted over the waitlist index.
+     * @return 1 for the head of the waitlist, or 0 if the student is not waitlisted
+     */
+    public static int getWaitlistPosition(String semester, String studentId, String courseCode) throws SQLException {
+        Connection conn = null;
+        try {
+            conn = DBConnection.getConnection("getWaitlistPosition");
+            int position = Waitlist.position(conn, semester, studentId, courseCode);
+            conn.commit();
+            return position;
         } catch (SQLException e) {
-            System.err.println("Error adding student: " + e.getMessage());
+            LOG.error("Error getting waitlist position: {}", e.getMessage());
+            if (conn != null) {
+                try {
+                    conn.rollback();
+                } catch (SQLException rbEx) {
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
+                }
+            }
             throw e;
+        } finally {
+            DBConnection.release(conn);
         }
     }
 
-    public static ArrayList<String> getAllStudents() throws SQLException {
-        ArrayList<String> students = new ArrayList<>();
-        String sql = "SELECT studentid, firstname, lastname FROM app.students ORDER BY lastname, firstname";
+    /** @return The number of students waitlisted for a class. */
+    public static int getWaitlistLength(String semester, String courseCode) throws SQLException {
         Connection conn = null;
         try {
-            conn = DBConnection.getConnection();
-            try (PreparedStatement pstmt = conn.prepareStatement(sql);
-                 ResultSet rs = pstmt.executeQuery()) {
-                while (rs.next()) {
-                    String fullName = String.format("%s, %s (%s)",
-                            rs.getString("lastname"),
-                            rs.getString("firstname"),
-                            rs.getString("studentid"));
-                    students.add(fullName);
-                }
-            }
+            conn = DBConnection.getConnection("getWaitlistLength");
+            int length = Waitlist.length(conn, semester, courseCode);
             conn.commit();
+            return length;
         } catch (SQLException e) {
-            System.err.println("Error getting all students: " + e.getMessage());
+            LOG.error("Error getting waitlist length: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rbEx) {
-                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
                 }
             }
             throw e;
+        } finally {
+            DBConnection.release(conn);
+        }
+    }
+
+    public static void addStudent(String studentID, String firstName, String lastName) throws SQLException {
+        String sql = "INSERT INTO app.students (studentid, firstname, lastname) VALUES (?, ?, ?)";
+        try (Connection conn = DBConnection.getConnection("addStudent");
+             PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, studentID);
+            pstmt.setString(2, firstName);
+            pstmt.setString(3, lastName);
+            pstmt.executeUpdate();
+            conn.commit();
+        } catch (SQLException e) {
+            LOG.error("Error adding student: {}", e.getMessage());
+            throw e;
         }
+    }
+
+    public static ArrayList<Student> getAllStudents() throws SQLException {
+        ArrayList<Student> students = new ArrayList<>();
+        forEachStudent(students::add);
         return students;
     }
 
-    public static String getStudentIDFromComboBox(String comboBoxString) {
-        if (comboBoxString == null || !comboBoxString.contains("(") || !comboBoxString.contains(")")) {
-            return null;
-        }
-        try {
-            int startIndex = comboBoxString.lastIndexOf('(');
-            int endIndex = comboBoxString.lastIndexOf(')');
-            if (startIndex != -1 && endIndex != -1 && startIndex < endIndex) {
-                return comboBoxString.substring(startIndex + 1, endIndex);
-            }
-        } catch (IndexOutOfBoundsException e) {
-            System.err.println("Error parsing student ID from string: " + comboBoxString);
-        }
-        return null;
+    /**
+     * Streams all students ordered by last name, then first name.
+     */
+    public static void forEachStudent(RowHandler<? super Student> handler) throws SQLException {
+        forEachRow("forEachStudent", STUDENTS_BY_NAME_SQL, "getting all students", handler,
+                rs -> new Student(rs.getString("studentid"), rs.getString("firstname"), rs.getString("lastname")));
     }
 
+    /**
+     * Schedules a student into a class, or waitlists them if the class is full.
+     * The seat decision is a single conditional update of the class's enrollment
+     * counter, which row-locks the class until commit. Concurrent registrations
+     * for the same class therefore cannot overbook it, and the whole reservation
+     * takes one transaction and one commit. A waitlisted student gets the class's
+     * next waitlist number (see {@link Waitlist}); the update holds the class row
+     * lock even when the class is full, which serializes the numbering.
+     *
+     * @return "scheduled" or "waitlisted".
+     */
     public static String scheduleClass(String semester, String studentid, String courseCode) throws SQLException {
         String status;
-        String sqlInsert = "INSERT INTO app.schedule (semester, studentid, coursecode, status, timestamp) VALUES (?, ?, ?, ?, ?)";
-
-        try (Connection conn = DBConnection.getConnection()) {
-            int scheduledCount = getScheduledStudentCount(semester, courseCode);
-            int seats = getClassSeats(semester, courseCode);
+        String sqlInsert = "INSERT INTO app.schedule (semester, studentid, coursecode, status, timestamp, waitseq) " +
+                           "VALUES (?, ?, ?, ?, ?, ?)";
+        SeatLedger.Update seatUpdate = null;
+        Connection conn = null;
 
-            if (scheduledCount < seats) {
-                status = "scheduled";
-            } else {
-                status = "waitlisted";
-            }
+        try {
+            conn = DBConnection.getConnection("scheduleClass");
+            boolean seated = reserveSeat(conn, semester, courseCode);
+            status = seated ? "scheduled" : "waitlisted";
 
             try (PreparedStatement pstmtInsert = conn.prepareStatement(sqlInsert)) {
                 pstmtInsert.setString(1, semester);
@@ -307,126 +553,311 @@ public class SemesterQueries {
                 pstmtInsert.setString(3, courseCode);
                 pstmtInsert.setString(4, status);
                 pstmtInsert.setTimestamp(5, new Timestamp(System.currentTimeMillis()));
+                if (seated) {
+                    pstmtInsert.setNull(6, Types.BIGINT);
+                } else {
+                    pstmtInsert.setLong(6, Waitlist.nextNumber(conn, semester, courseCode));
+                }
                 pstmtInsert.executeUpdate();
             }
-        } catch (SQLException e) {
-            System.err.println("Error scheduling class: " + e.getMessage());
-            throw e;
-        }
-        return status;
-    }
-
-    public static List<List<Object>> getClassesBySemester(String semester) throws SQLException {
-        List<List<Object>> data = new ArrayList<>();
-        String sql = "SELECT c.coursecode, cr.description, c.seats " +
-                     "FROM app.classes c JOIN app.courses cr ON c.coursecode = cr.coursecode " +
-                     "WHERE c.semester = ? ORDER BY c.coursecode";
-
-        Connection conn = null;
-        try {
-            conn = DBConnection.getConnection();
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setString(1, semester);
-                try (ResultSet rs = pstmt.executeQuery()) {
-                    while (rs.next()) {
-                        List<Object> row = new ArrayList<>();
-                        row.add(rs.getString("coursecode"));
-                        row.add(rs.getString("description"));
-                        row.add(rs.getInt("seats"));
-                        data.add(row);
-                    }
-                }
+            if (seated) {
+                seatUpdate = SEAT_LEDGER.capture(conn, semester, courseCode);
             }
             conn.commit();
+            if (seatUpdate != null) {
+                SEAT_LEDGER.publish(seatUpdate);
+            }
+            EnrollmentMetrics.enrolled(status);
         } catch (SQLException e) {
-            System.err.println("Error getting classes by semester: " + e.getMessage());
+            EnrollmentMetrics.failed(1);
+            LOG.error("Error scheduling class: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rbEx) {
-                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
                 }
             }
             throw e;
+        } finally {
+            DBConnection.release(conn);
         }
-        return data;
+        return status;
     }
 
-    public static List<List<Object>> getScheduleByStudent(String semester, String studentid) throws SQLException {
-        List<List<Object>> data = new ArrayList<>();
-        String sql = "SELECT coursecode, status FROM app.schedule " +
-                     "WHERE semester = ? AND studentid = ? ORDER BY timestamp";
+    /**
+     * Enrolls a list of students in one class, e.g. a whole cohort into a required
+     * course. Students are seated in list order while seats last and waitlisted
+     * after that, as if scheduleClass had been called for each in turn. Every
+     * -Dscheduler.enroll.batchSize students form one transaction: the class row is
+     * locked once, the schedule rows are inserted as a JDBC batch, and the
+     * transaction commits once.
+     *
+     * A problem with one student (unknown ID, already enrolled, listed twice) is
+     * reported in that student's outcome and does not affect the others. If a batch
+     * fails in the database it is rolled back and its students are reported as
+     * failed; batches that already committed stay committed.
+     *
+     * @return One outcome per entry of studentIds, in the same order.
+     */
+    public static List<EnrollmentOutcome> scheduleClasses(String semester, String courseCode, List<String> studentIds) {
+        List<EnrollmentOutcome> outcomes = new ArrayList<>(studentIds.size());
+        Set<String> seen = new HashSet<>();
+        for (int from = 0; from < studentIds.size(); from += ENROLL_BATCH_SIZE) {
+            List<String> batch = studentIds.subList(from, Math.min(studentIds.size(), from + ENROLL_BATCH_SIZE));
+            try {
+                outcomes.addAll(scheduleBatch(semester, courseCode, batch, seen));
+            } catch (SQLException e) {
+                for (String studentId : batch) {
+                    outcomes.add(EnrollmentOutcome.failed(studentId, courseCode, e.getMessage()));
+                }
+            }
+        }
+        EnrollmentMetrics.enrolled(outcomes);
+        return outcomes;
+    }
 
+    /**
+     * Enrolls every listed student in each of several classes, one class after the
+     * other; see {@link #scheduleClasses(String, String, List)}.
+     * @return Outcomes grouped by class in the order of courseCodes, students in list order within each.
+     */
+    public static List<EnrollmentOutcome> scheduleClasses(String semester, List<String> courseCodes, List<String> studentIds) {
+        List<EnrollmentOutcome> outcomes = new ArrayList<>(courseCodes.size() * studentIds.size());
+        for (String courseCode : courseCodes) {
+            outcomes.addAll(scheduleClasses(semester, courseCode, studentIds));
+        }
+        return outcomes;
+    }
+
+    /**
+     * One transaction of scheduleClasses.
+     * @param seen Students already handled for this class by earlier batches; updated.
+     */
+    private static List<EnrollmentOutcome> scheduleBatch(String semester, String courseCode, List<String> batch,
+                                                         Set<String> seen) throws SQLException {
+        String sqlFree = "SELECT seats - enrolled FROM app.classes WHERE semester = ? AND coursecode = ?";
+        // IN lists are probed key by key, so both lookups cost the same however large the class is
+        String inList = "(" + String.join(", ", Collections.nCopies(batch.size(), "?")) + ")";
+        String sqlStudents = "SELECT studentid FROM app.students WHERE studentid IN " + inList;
+        String sqlEnrolled = "SELECT studentid, status FROM app.schedule " +
+                             "WHERE semester = ? AND coursecode = ? AND studentid IN " + inList;
+        String sqlInsert = "INSERT INTO app.schedule (semester, studentid, coursecode, status, timestamp, waitseq) " +
+                           "VALUES (?, ?, ?, ?, ?, ?)";
+        String sqlEnroll = "UPDATE app.classes SET enrolled = enrolled + ? WHERE semester = ? AND coursecode = ?";
+        List<EnrollmentOutcome> outcomes = new ArrayList<>(batch.size());
         Connection conn = null;
+
         try {
-            conn = DBConnection.getConnection();
-            try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            conn = DBConnection.getConnection("scheduleClasses");
+            lockClassRow(conn, semester, courseCode);
+
+            int free = -1;
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlFree)) {
+                pstmt.setString(1, semester);
+                pstmt.setString(2, courseCode);
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    if (rs.next()) {
+                        free = Math.max(0, rs.getInt(1));
+                    }
+                }
+            }
+            if (free < 0) {
+                throw new SQLException("Class " + courseCode + " is not offered in " + semester, NOT_FOUND_STATE);
+            }
+
+            Set<String> existing = new HashSet<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlStudents)) {
+                for (int i = 0; i < batch.size(); i++) {
+                    pstmt.setString(i + 1, batch.get(i));
+                }
+                try (ResultSet rs = pstmt.executeQuery()) {
+                    while (rs.next()) {
+                        existing.add(rs.getString("studentid"));
+                    }
+                }
+            }
+            Map<String, String> enrolled = new HashMap<>();
+            try (PreparedStatement pstmt = conn.prepareStatement(sqlEnrolled)) {
                 pstmt.setString(1, semester);
-                pstmt.setString(2, studentid);
+                pstmt.setString(2, courseCode);
+                for (int i = 0; i < batch.size(); i++) {
+                    pstmt.setString(i + 3, batch.get(i));
+                }
                 try (ResultSet rs = pstmt.executeQuery()) {
                     while (rs.next()) {
-                        List<Object> row = new ArrayList<>();
-                        row.add(rs.getString("coursecode"));
-                        row.add(rs.getString("status"));
-                        data.add(row);
+                        enrolled.put(rs.getString("studentid"), rs.getString("status"));
                     }
                 }
             }
+
+            int seated = 0;
+            long nextWaitseq = 0; // Read when the first student of the batch is waitlisted
+            Timestamp now = new Timestamp(System.currentTimeMillis());
+            try (PreparedStatement insert = conn.prepareStatement(sqlInsert)) {
+                for (String studentId : batch) {
+                    if (!seen.add(studentId)) {
+                        outcomes.add(EnrollmentOutcome.failed(studentId, courseCode, "Listed more than once"));
+                    } else if (!existing.contains(studentId)) {
+                        outcomes.add(EnrollmentOutcome.failed(studentId, courseCode, "No such student"));
+                    } else if (enrolled.containsKey(studentId)) {
+                        outcomes.add(EnrollmentOutcome.failed(studentId, courseCode, "Already " + enrolled.get(studentId)));
+                    } else {
+                        boolean seat = seated < free;
+                        String status = seat ? "scheduled" : "waitlisted";
+                        insert.setString(1, semester);
+                        insert.setString(2, studentId);
+                        insert.setString(3, courseCode);
+                        insert.setString(4, status);
+                        insert.setTimestamp(5, now);
+                        if (seat) {
+                            insert.setNull(6, Types.BIGINT);
+                        } else {
+                            if (nextWaitseq == 0) {
+                                nextWaitseq = Waitlist.nextNumber(conn, semester, courseCode);
+                            }
+                            insert.setLong(6, nextWaitseq++);
+                        }
+                        insert.addBatch();
+                        if (seat) {
+                            seated++;
+                        }
+                        outcomes.add(EnrollmentOutcome.enrolled(studentId, courseCode, status));
+                    }
+                }
+                insert.executeBatch();
+            }
+
+            SeatLedger.Update seatUpdate = null;
+            if (seated > 0) {
+                try (PreparedStatement pstmt = conn.prepareStatement(sqlEnroll)) {
+                    pstmt.setInt(1, seated);
+                    pstmt.setString(2, semester);
+                    pstmt.setString(3, courseCode);
+                    pstmt.executeUpdate();
+                }
+                seatUpdate = SEAT_LEDGER.capture(conn, semester, courseCode);
+            }
             conn.commit();
+            if (seatUpdate != null) {
+                SEAT_LEDGER.publish(seatUpdate);
+            }
         } catch (SQLException e) {
-            System.err.println("Error getting schedule by student: " + e.getMessage());
+            LOG.error("Error scheduling classes: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rbEx) {
-                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
                 }
             }
             throw e;
+        } finally {
+            DBConnection.release(conn);
         }
+        return outcomes;
+    }
+
+    public static List<ClassOffering> getClassesBySemester(String semester) throws SQLException {
+        List<ClassOffering> data = new ArrayList<>();
+        forEachClassInSemester(semester, data::add);
+        return data;
+    }
+
+    /**
+     * Streams the classes offered in a semester, ordered by course code.
+     */
+    public static void forEachClassInSemester(String semester, RowHandler<? super ClassOffering> handler) throws SQLException {
+        String sql = "SELECT c.coursecode, cr.description, c.seats " +
+                     "FROM app.classes c JOIN app.courses cr ON c.coursecode = cr.coursecode " +
+                     "WHERE c.semester = ? ORDER BY c.coursecode";
+        String sem = Interner.intern(semester);
+        forEachRow("forEachClassInSemester", sql, "getting classes by semester", handler,
+                rs -> new ClassOffering(sem, Interner.intern(rs.getString("coursecode")),
+                        rs.getString("description"), rs.getInt("seats")),
+                semester);
+    }
+
+    public static List<ScheduleEntry> getScheduleByStudent(String semester, String studentid) throws SQLException {
+        List<ScheduleEntry> data = new ArrayList<>();
+        forEachScheduleEntry(semester, studentid, data::add);
+        return data;
+    }
+
+    /**
+     * Streams a student's schedule for a semester in registration order.
+     */
+    public static void forEachScheduleEntry(String semester, String studentid,
+                                            RowHandler<? super ScheduleEntry> handler) throws SQLException {
+        String sql = "SELECT coursecode, status FROM app.schedule " +
+                     "WHERE semester = ? AND studentid = ? ORDER BY timestamp";
+        String sem = Interner.intern(semester);
+        forEachRow("forEachScheduleEntry", sql, "getting schedule by student", handler,
+                rs -> new ScheduleEntry(sem, Interner.intern(rs.getString("coursecode")),
+                        Interner.intern(rs.getString("status"))),
+                semester, studentid);
+    }
+
+    public static List<RosterEntry> getStudentsInClass(String semester, String courseCode) throws SQLException {
+        List<RosterEntry> data = new ArrayList<>();
+        forEachStudentInClass(semester, courseCode, data::add);
         return data;
     }
 
-    public static List<List<Object>> getStudentsInClass(String semester, String courseCode) throws SQLException {
-        List<List<Object>> data = new ArrayList<>();
-        String sql = "SELECT s.lastname, s.firstname, sc.status " +
-                     "FROM app.schedule sc " +
-                     "JOIN app.students s ON sc.studentid = s.studentid " +
-                     "WHERE sc.semester = ? AND sc.coursecode = ? " +
-                     "ORDER BY sc.status, sc.timestamp";
+    /**
+     * Streams the roster of a class: scheduled students first, then the waitlist,
+     * each in registration order (the waitlist by sequence number).
+     */
+    public static void forEachStudentInClass(String semester, String courseCode,
+                                             RowHandler<? super RosterEntry> handler) throws SQLException {
+        forEachRow("forEachStudentInClass", ROSTER_SQL, "getting students in class", handler, SemesterQueries::mapRosterEntry,
+                semester, courseCode);
+    }
+
+    private static RosterEntry mapRosterEntry(ResultSet rs) throws SQLException {
+        return new RosterEntry(rs.getString("lastname"), rs.getString("firstname"),
+                Interner.intern(rs.getString("status")));
+    }
 
+    /**
+     * Runs a read-only query and hands each row to the handler as it is fetched.
+     * An exception thrown by the handler stops the query and is rethrown.
+     * @param operation The name its metrics are recorded under; see {@link QueryMetrics}.
+     */
+    private static <T> void forEachRow(String operation, String sql, String description, RowHandler<? super T> handler,
+                                       RowMapper<T> mapper, String... params) throws SQLException {
         Connection conn = null;
         try {
-            conn = DBConnection.getConnection();
+            conn = DBConnection.getConnection(operation);
             try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
-                pstmt.setString(1, semester);
-                pstmt.setString(2, courseCode);
+                pstmt.setFetchSize(FETCH_SIZE);
+                for (int i = 0; i < params.length; i++) {
+                    pstmt.setString(i + 1, params[i]);
+                }
                 try (ResultSet rs = pstmt.executeQuery()) {
                     while (rs.next()) {
-                        List<Object> row = new ArrayList<>();
-                        row.add(String.format("%s, %s", rs.getString("lastname"), rs.getString("firstname")));
-                        row.add(rs.getString("status"));
-                        data.add(row);
+                        handler.handleRow(mapper.map(rs));
                     }
                 }
             }
             conn.commit();
         } catch (SQLException e) {
-            System.err.println("Error getting students in class: " + e.getMessage());
+            LOG.error("Error {}: {}", description, e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rbEx) {
-                    System.err.println("Error during rollback: " + rbEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rbEx.getMessage());
                 }
             }
             throw e;
+        } finally {
+            DBConnection.release(conn);
         }
-        return data;
     }
 
-    public static ArrayList<String> dropClass(String semester, String courseCode) throws SQLException {
-        ArrayList<String> droppedStudents = new ArrayList<>();
+    public static ArrayList<RosterEntry> dropClass(String semester, String courseCode) throws SQLException {
+        ArrayList<RosterEntry> droppedStudents = new ArrayList<>();
         String sqlGetStudents = "SELECT s.lastname, s.firstname, sc.status " +
                                 "FROM app.schedule sc JOIN app.students s ON sc.studentid = s.studentid " +
                                 "WHERE sc.semester = ? AND sc.coursecode = ?";
@@ -434,22 +865,18 @@ public class SemesterQueries {
         String sqlDeleteClass = "DELETE FROM app.classes WHERE semester = ? AND coursecode = ?";
 
         Connection conn = null;
-        boolean originalAutoCommit = true;
 
         try {
-            conn = DBConnection.getConnection();
-            originalAutoCommit = conn.getAutoCommit();
-            conn.setAutoCommit(false);
+            conn = DBConnection.getConnection("dropClass");
+
+            lockClassRow(conn, semester, courseCode);
 
             try (PreparedStatement pstmtGet = conn.prepareStatement(sqlGetStudents)) {
                 pstmtGet.setString(1, semester);
                 pstmtGet.setString(2, courseCode);
                 try (ResultSet rs = pstmtGet.executeQuery()) {
                     while (rs.next()) {
-                        droppedStudents.add(String.format("%s, %s (%s)",
-                                rs.getString("lastname"),
-                                rs.getString("firstname"),
-                                rs.getString("status")));
+                        droppedStudents.add(mapRosterEntry(rs));
                     }
                 }
             }
@@ -465,57 +892,69 @@ public class SemesterQueries {
                 pstmtDelClass.setString(2, courseCode);
                 pstmtDelClass.executeUpdate();
             }
+            SeatLedger.Update seatUpdate = SEAT_LEDGER.removal(semester, courseCode, SEAT_LEDGER.nextStamp());
 
             conn.commit();
+            REFERENCE_CACHE.invalidate(CLASSES_KEY_PREFIX + semester);
+            SEAT_LEDGER.publish(seatUpdate);
+            EnrollmentMetrics.dropped(droppedStudents.size());
 
         } catch (SQLException e) {
-            System.err.println("Error dropping class: " + e.getMessage());
+            LOG.error("Error dropping class: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rollbackEx) {
-                    System.err.println("Error during rollback: " + rollbackEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rollbackEx.getMessage());
                 }
             }
             throw e;
         } finally {
-            try {
-                if (conn != null) {
-                    conn.setAutoCommit(originalAutoCommit);
-                }
-            } catch (SQLException finalEx) {
-                System.err.println("Error resetting auto-commit: " + finalEx.getMessage());
-            }
+            DBConnection.release(conn);
         }
         return droppedStudents;
     }
 
     public static void dropStudent(String studentId) throws SQLException {
-        String sqlGetScheduledClasses = "SELECT semester, coursecode FROM app.schedule WHERE studentid = ? AND status = 'scheduled'";
-        String sqlDeleteSchedule = "DELETE FROM app.schedule WHERE studentid = ?";
+        // Rows are deleted through an updatable cursor so the status we act on is
+        // the status of the row we actually removed.
         String sqlDeleteStudent = "DELETE FROM app.students WHERE studentid = ?";
 
         List<String[]> scheduledClasses = new ArrayList<>();
+        List<SeatLedger.Update> seatUpdates = new ArrayList<>();
+        int dropped = 0;
+        int promoted = 0;
         Connection conn = null;
-        boolean originalAutoCommit = true;
 
         try {
-            conn = DBConnection.getConnection();
-            originalAutoCommit = conn.getAutoCommit();
-            conn.setAutoCommit(false);
+            conn = DBConnection.getConnection("dropStudent");
 
-            try (PreparedStatement pstmtGetSched = conn.prepareStatement(sqlGetScheduledClasses)) {
-                pstmtGetSched.setString(1, studentId);
-                try (ResultSet rs = pstmtGetSched.executeQuery()) {
+            // Lock the affected classes first, in a fixed order, like every other enrollment write
+            List<String[]> classes = new ArrayList<>();
+            try (PreparedStatement pstmtGetClasses = conn.prepareStatement(STUDENT_CLASSES_SQL)) {
+                pstmtGetClasses.setString(1, studentId);
+                try (ResultSet rs = pstmtGetClasses.executeQuery()) {
                     while (rs.next()) {
-                        scheduledClasses.add(new String[]{rs.getString("semester"), rs.getString("coursecode")});
+                        classes.add(new String[]{rs.getString("semester"), rs.getString("coursecode")});
                     }
                 }
             }
+            for (String[] classInfo : classes) {
+                lockClassRow(conn, classInfo[0], classInfo[1]);
+            }
 
-            try (PreparedStatement pstmtDelSched = conn.prepareStatement(sqlDeleteSchedule)) {
-                pstmtDelSched.setString(1, studentId);
-                pstmtDelSched.executeUpdate();
+            try (PreparedStatement pstmtGetSched = conn.prepareStatement(STUDENT_SCHEDULE_SQL,
+                    ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_UPDATABLE)) {
+                pstmtGetSched.setString(1, studentId);
+                try (ResultSet rs = pstmtGetSched.executeQuery()) {
+                    while (rs.next()) {
+                        if ("scheduled".equals(rs.getString("status"))) {
+                            scheduledClasses.add(new String[]{rs.getString("semester"), rs.getString("coursecode")});
+                        }
+                        rs.deleteRow();
+                        dropped++;
+                    }
+                }
             }
 
             try (PreparedStatement pstmtDelStud = conn.prepareStatement(sqlDeleteStudent)) {
@@ -524,115 +963,132 @@ public class SemesterQueries {
             }
 
             for (String[] classInfo : scheduledClasses) {
-                promoteWaitlistedStudent(conn, classInfo[0], classInfo[1]);
+                promoted += releaseSeat(conn, classInfo[0], classInfo[1]);
+                seatUpdates.add(SEAT_LEDGER.capture(conn, classInfo[0], classInfo[1]));
             }
 
             conn.commit();
+            SEAT_LEDGER.publishAll(seatUpdates);
+            EnrollmentMetrics.dropped(dropped);
+            EnrollmentMetrics.promoted(promoted);
 
         } catch (SQLException e) {
-            System.err.println("Error dropping student: " + e.getMessage());
+            LOG.error("Error dropping student: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rollbackEx) {
-                    System.err.println("Error during rollback: " + rollbackEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rollbackEx.getMessage());
                 }
             }
             throw e;
         } finally {
-            try {
-                if (conn != null) {
-                    conn.setAutoCommit(originalAutoCommit);
-                }
-            } catch (SQLException finalEx) {
-                System.err.println("Error resetting auto-commit: " + finalEx.getMessage());
-            }
+            DBConnection.release(conn);
         }
     }
 
     public static void studentDropClass(String semester, String studentId, String courseCode) throws SQLException {
-        String sqlCheckStatus = "SELECT status FROM app.schedule WHERE semester = ? AND studentid = ? AND coursecode = ?";
+        // Deleting by status tells us atomically whether a seat was freed,
+        // even if a concurrent promotion changed the row since it was displayed.
+        String sqlDropScheduled = "DELETE FROM app.schedule WHERE semester = ? AND studentid = ? AND coursecode = ? AND status = 'scheduled'";
         String sqlDropClass = "DELETE FROM app.schedule WHERE semester = ? AND studentid = ? AND coursecode = ?";
-        String currentStatus = null;
         Connection conn = null;
-        boolean originalAutoCommit = true;
 
         try {
-            conn = DBConnection.getConnection();
-            originalAutoCommit = conn.getAutoCommit();
-            conn.setAutoCommit(false);
-
-            try (PreparedStatement pstmtCheck = conn.prepareStatement(sqlCheckStatus)) {
-                pstmtCheck.setString(1, semester);
-                pstmtCheck.setString(2, studentId);
-                pstmtCheck.setString(3, courseCode);
-                try (ResultSet rs = pstmtCheck.executeQuery()) {
-                    if (rs.next()) {
-                        currentStatus = rs.getString("status");
-                    } else {
-                        throw new SQLException("Student not enrolled in this class");
-                    }
-                }
-            }
+            conn = DBConnection.getConnection("studentDropClass");
+            lockClassRow(conn, semester, courseCode);
 
-            try (PreparedStatement pstmtDrop = conn.prepareStatement(sqlDropClass)) {
+            int scheduledRows;
+            int promoted = 0;
+            SeatLedger.Update seatUpdate = null;
+            try (PreparedStatement pstmtDrop = conn.prepareStatement(sqlDropScheduled)) {
                 pstmtDrop.setString(1, semester);
                 pstmtDrop.setString(2, studentId);
                 pstmtDrop.setString(3, courseCode);
-                int rowsAffected = pstmtDrop.executeUpdate();
+                scheduledRows = pstmtDrop.executeUpdate();
+            }
 
-                if ("scheduled".equals(currentStatus) && rowsAffected > 0) {
-                    promoteWaitlistedStudent(conn, semester, courseCode);
+            if (scheduledRows > 0) {
+                promoted = releaseSeat(conn, semester, courseCode);
+                seatUpdate = SEAT_LEDGER.capture(conn, semester, courseCode);
+            } else {
+                try (PreparedStatement pstmtDrop = conn.prepareStatement(sqlDropClass)) {
+                    pstmtDrop.setString(1, semester);
+                    pstmtDrop.setString(2, studentId);
+                    pstmtDrop.setString(3, courseCode);
+                    if (pstmtDrop.executeUpdate() == 0) {
+                        throw new SQLException("Student not enrolled in this class", NOT_FOUND_STATE);
+                    }
                 }
             }
 
             conn.commit();
+            if (seatUpdate != null) {
+                SEAT_LEDGER.publish(seatUpdate);
+            }
+            EnrollmentMetrics.dropped(1);
+            EnrollmentMetrics.promoted(promoted);
 
         } catch (SQLException e) {
-            System.err.println("Error for student dropping class: " + e.getMessage());
+            LOG.error("Error for student dropping class: {}", e.getMessage());
             if (conn != null) {
                 try {
                     conn.rollback();
                 } catch (SQLException rollbackEx) {
-                    System.err.println("Error during rollback: " + rollbackEx.getMessage());
+                    LOG.warn("Error during rollback: {}", rollbackEx.getMessage());
                 }
             }
             throw e;
         } finally {
-            try {
-                if (conn != null) {
-                    conn.setAutoCommit(originalAutoCommit);
-                }
-            } catch (SQLException finalEx) {
-                System.err.println("Error resetting auto-commit: " + finalEx.getMessage());
-            }
+            DBConnection.release(conn);
         }
     }
 
-    private static void promoteWaitlistedStudent(Connection conn, String semester, String courseCode) throws SQLException {
-        String sqlFindWaitlisted = "SELECT studentid FROM app.schedule " +
-                                   "WHERE semester = ? AND coursecode = ? AND status = 'waitlisted' " +
-                                   "ORDER BY timestamp";
-        String sqlUpdateStatus = "UPDATE app.schedule SET status = 'scheduled' WHERE semester = ? AND coursecode = ? AND studentid = ?";
-        String studentToPromote = null;
+    /**
+     * Takes the class row's exclusive lock for the rest of the transaction.
+     * Every enrollment write locks the class row before touching its schedule
+     * rows, so writers on the same class queue up instead of deadlocking.
+     */
+    private static void lockClassRow(Connection conn, String semester, String courseCode) throws SQLException {
+        String sql = "UPDATE app.classes SET enrolled = enrolled WHERE semester = ? AND coursecode = ?";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, semester);
+            pstmt.setString(2, courseCode);
+            pstmt.executeUpdate();
+        }
+    }
 
-        try (PreparedStatement pstmtFind = conn.prepareStatement(sqlFindWaitlisted)) {
-            pstmtFind.setString(1, semester);
-            pstmtFind.setString(2, courseCode);
-            try (ResultSet rs = pstmtFind.executeQuery()) {
-                if (rs.next()) {
-                    studentToPromote = rs.getString("studentid");
-                }
-            }
+    /**
+     * Claims a seat by incrementing the class's enrollment counter, but only if
+     * it is still below the seat limit. The update row-locks the class until the
+     * caller commits or rolls back, also when the class is full and no row changes,
+     * so concurrent reservations and waitlist appends are serialized.
+     *
+     * @return true if a seat was claimed, false if the class is full or does not exist.
+     */
+    private static boolean reserveSeat(Connection conn, String semester, String courseCode) throws SQLException {
+        String sql = "UPDATE app.classes SET enrolled = enrolled + 1 " +
+                     "WHERE semester = ? AND coursecode = ? AND enrolled < seats";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, semester);
+            pstmt.setString(2, courseCode);
+            return pstmt.executeUpdate() == 1;
         }
+    }
 
-        if (studentToPromote != null) {
-            try (PreparedStatement pstmtUpdate = conn.prepareStatement(sqlUpdateStatus)) {
-                pstmtUpdate.setString(1, semester);
-                pstmtUpdate.setString(2, courseCode);
-                pstmtUpdate.setString(3, studentToPromote);
-                pstmtUpdate.executeUpdate();
-            }
+    /**
+     * Gives back a scheduled seat and hands it to the head of the waitlist, if any.
+     * The caller must hold the class row lock.
+     * @return The number of students promoted from the waitlist.
+     */
+    private static int releaseSeat(Connection conn, String semester, String courseCode) throws SQLException {
+        String sql = "UPDATE app.classes SET enrolled = enrolled - 1 " +
+                     "WHERE semester = ? AND coursecode = ? AND enrolled > 0";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, semester);
+            pstmt.setString(2, courseCode);
+            pstmt.executeUpdate();
         }
+        return Waitlist.promote(conn, semester, courseCode).size();
     }
 }
@@ -0,0 +1,56 @@
+/**
+ * A registered student. Immutable. Students are equal when their IDs are equal.
+ * {@link #toString()} gives the "lastname, firstname (id)" form shown in selection
+ * lists; it is built on demand when a list renders the student.
+ */
+public final class Student implements TableRow {
+
+    private final String studentId;
+    private final String firstName;
+    private final String lastName;
+
+    public Student(String studentId, String firstName, String lastName) {
+        this.studentId = studentId;
+        this.firstName = firstName;
+        this.lastName = lastName;
+    }
+
+    public String getStudentId() {
+        return studentId;
+    }
+
+    public String getFirstName() {
+        return firstName;
+    }
+
+    public String getLastName() {
+        return lastName;
+    }
+
+    /** Columns: student ID, last name, first name. */
+    @Override
+    public Object getColumnValue(int column) {
+        switch (column) {
+            case 0: return studentId;
+            case 1: return lastName;
+            case 2: return firstName;
+            default: throw new IndexOutOfBoundsException("Column " + column);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof Student && studentId.equals(((Student) o).studentId);
+    }
+
+    @Override
+    public int hashCode() {
+        return studentId.hashCode();
+    }
+
+    /** @return "lastname, firstname (id)" */
+    @Override
+    public String toString() {
+        return lastName + ", " + firstName + " (" + studentId + ")";
+    }
+}
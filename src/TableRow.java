@@ -0,0 +1,13 @@
+/**
+ * A query result row that a JTable can display directly, without first copying
+ * it into an Object[]. Values are produced when a cell is rendered, so display
+ * formatting costs nothing for rows that are never shown.
+ */
+public interface TableRow {
+
+    /**
+     * @param column Zero-based column index, in the order of the table's headers.
+     * @return The value to display in that column.
+     */
+    Object getColumnValue(int column);
+}
@@ -0,0 +1,65 @@
+import javax.swing.SwingWorker;
+
+/**
+ * A SwingWorker that carries the correlation ID of the action that created it into
+ * its background and done phases, and records both as Flight Recorder events (see
+ * {@link Tracing}). Subclasses implement {@link #runInBackground()} and
+ * {@link #whenDone()} in place of doInBackground() and done(), which are final here.
+ *
+ * @param <T> The result type.
+ * @param <V> The type of intermediate results passed to publish/process.
+ */
+public abstract class TracedWorker<T, V> extends SwingWorker<T, V> {
+
+    private final Tracing.Context context;
+    private final long createdNanos = System.nanoTime();
+    private volatile long backgroundEndNanos;
+
+    /** A worker that belongs to the action running on the current thread, if any. */
+    protected TracedWorker() {
+        this.context = Tracing.current();
+    }
+
+    /**
+     * A worker that starts a correlation of its own, for work no user action started.
+     * @param action A short name for the work, e.g. "startup".
+     */
+    protected TracedWorker(String action) {
+        this.context = Tracing.newContext(action);
+    }
+
+    /** The work to run on a SwingWorker thread; see {@link SwingWorker#doInBackground()}. */
+    protected abstract T runInBackground() throws Exception;
+
+    /** Runs on the EDT once the work is finished; see {@link SwingWorker#done()}. */
+    protected void whenDone() {
+    }
+
+    @Override
+    protected final T doInBackground() throws Exception {
+        long queuedNanos = System.nanoTime() - createdNanos;
+        Tracing.Context previous = Tracing.enter(context);
+        Object event = Tracing.beginWorker();
+        try {
+            return runInBackground();
+        } finally {
+            backgroundEndNanos = System.nanoTime();
+            Tracing.endWorker(event, "doInBackground", queuedNanos);
+            Tracing.enter(previous);
+        }
+    }
+
+    @Override
+    protected final void done() {
+        long backgroundEnd = backgroundEndNanos;
+        long queuedNanos = backgroundEnd == 0 ? 0 : System.nanoTime() - backgroundEnd; // 0 if cancelled before it ran
+        Tracing.Context previous = Tracing.enter(context);
+        Object event = Tracing.beginWorker();
+        try {
+            whenDone();
+        } finally {
+            Tracing.endWorker(event, "done", queuedNanos);
+            Tracing.enter(previous);
+        }
+    }
+}
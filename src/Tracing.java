@@ -0,0 +1,154 @@
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Java Flight Recorder events that break one user action down end to end: the
+ * button handler on the EDT, the SwingWorker it starts, the connection borrow and
+ * every statement executed, all tagged with the same correlation ID. In JDK Mission
+ * Control, filter the Course Scheduler event types on one correlationId to see where
+ * the time went:
+ * <ul>
+ * <li>CourseScheduler.UiAction - the action handler; queuedMillis is the time the click
+ * waited for the EDT.</li>
+ * <li>CourseScheduler.Worker - doInBackground or done of a {@link TracedWorker};
+ * queuedNanos is the wait for a SwingWorker thread (background) or for the EDT (done).</li>
+ * <li>CourseScheduler.GetConnection - a {@link DBConnection#getConnection()} call,
+ * including any wait for a pooled connection.</li>
+ * <li>CourseScheduler.Statement - one statement execution on a connection tagged with
+ * an operation name (see {@link QueryMetrics}); Derby lock waits fall inside it.</li>
+ * </ul>
+ * Events cost one check when no recording is running. Record with e.g.
+ * {@code -XX:StartFlightRecording=filename=scheduler.jfr,settings=profile}, or start a
+ * recording in JMC against the running process.
+ *
+ * The events themselves live in {@link FlightEvents}, which is only loaded when the
+ * JVM has Flight Recorder, so this class is safe to call on any JVM.
+ * -Dscheduler.jfr.enabled=false turns the events off.
+ */
+public final class Tracing {
+
+    private static final boolean ENABLED =
+            !"false".equalsIgnoreCase(System.getProperty("scheduler.jfr.enabled", "true").trim())
+            && hasFlightRecorder();
+
+    private static final AtomicLong NEXT_ID = new AtomicLong();
+
+    /** The user action the current thread is working for. */
+    static final class Context {
+        final long id;
+        final String action;
+
+        Context(long id, String action) {
+            this.id = id;
+            this.action = action;
+        }
+    }
+
+    private static final Context NONE = new Context(0, null);
+    private static final ThreadLocal<Context> CURRENT = new ThreadLocal<>();
+
+    private Tracing() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    private static boolean hasFlightRecorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
+
+    // --- Correlation ---
+
+    /** @return The current thread's context; never null. */
+    static Context current() {
+        Context context = CURRENT.get();
+        return context == null ? NONE : context;
+    }
+
+    /** @return A context with a new correlation ID, not yet current on any thread. */
+    static Context newContext(String action) {
+        return new Context(NEXT_ID.incrementAndGet(), action);
+    }
+
+    /**
+     * Makes {@code context} the current thread's context.
+     * @return The previous context, to restore with another call when done.
+     */
+    static Context enter(Context context) {
+        Context previous = current();
+        if (context == NONE) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+        return previous;
+    }
+
+    /**
+     * Wraps a Swing action listener so each event starts a new correlation ID and is
+     * recorded as a UiAction event. Workers created by the listener carry the ID on.
+     *
+     * @param action   A short name for the action, e.g. "scheduleClass".
+     * @param listener The handler.
+     * @return The wrapped listener, or {@code listener} itself when tracing is off.
+     */
+    public static ActionListener action(String action, ActionListener listener) {
+        if (!ENABLED) {
+            return listener;
+        }
+        return (ActionEvent e) -> {
+            Context previous = enter(newContext(action));
+            Object event = FlightEvents.beginUiAction();
+            try {
+                listener.actionPerformed(e);
+            } finally {
+                if (event != null) {
+                    long queued = e.getWhen() > 0 ? Math.max(0, System.currentTimeMillis() - e.getWhen()) : 0;
+                    FlightEvents.endUiAction(event, current(), queued);
+                }
+                enter(previous);
+            }
+        };
+    }
+
+    // --- Events ---
+    // Each begin method returns null when the event is not being recorded; pass the
+    // result to the matching end method, which ignores null.
+
+    static Object beginWorker() {
+        return ENABLED ? FlightEvents.beginWorker() : null;
+    }
+
+    static void endWorker(Object event, String phase, long queuedNanos) {
+        if (event != null) {
+            FlightEvents.endWorker(event, current(), phase, queuedNanos);
+        }
+    }
+
+    static Object beginGetConnection() {
+        return ENABLED ? FlightEvents.beginGetConnection() : null;
+    }
+
+    static void endGetConnection(Object event, String operation) {
+        if (event != null) {
+            FlightEvents.endGetConnection(event, current(), operation);
+        }
+    }
+
+    static Object beginStatement() {
+        return ENABLED ? FlightEvents.beginStatement() : null;
+    }
+
+    static void endStatement(Object event, String operation, String method, String sql, boolean failed) {
+        if (event != null) {
+            FlightEvents.endStatement(event, current(), operation, method, sql, failed);
+        }
+    }
+}
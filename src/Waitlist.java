@@ -0,0 +1,141 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Waitlist bookkeeping for SemesterQueries.
+ *
+ * Every waitlisted APP.SCHEDULE row carries a sequence number (waitseq), one more
+ * than the class's last waitlisted row when it is inserted ({@link #nextNumber}).
+ * Every writer that appends to a class's waitlist holds the class row lock, so the
+ * numbers are unique within the class and increase in registration order, even when
+ * several students register in the same millisecond. Classes do not share a counter,
+ * so registrations for different classes never wait on each other for a number.
+ * Numbers are only compared within one class; a class's numbers may have gaps.
+ * IDX_SCHEDULE_WAITLIST orders each class's waitlist by number, so the head of the
+ * queue and the last number are index lookups and a student's position is a count
+ * over the index entries ahead of them.
+ *
+ * Promoted rows have their waitseq cleared, so only waitlisted rows hold a number.
+ * All methods that change data take an open transaction and leave committing to the caller.
+ */
+public final class Waitlist {
+
+    // Statements whose plans `ant indexcheck` verifies (see bench/IndexCheck.java)
+    static final String LAST_NUMBER_SQL = "SELECT MAX(waitseq) FROM app.schedule " +
+                                          "WHERE semester = ? AND coursecode = ? AND status = 'waitlisted'";
+    static final String HEAD_SQL = "SELECT studentid FROM app.schedule " +
+                                   "WHERE semester = ? AND coursecode = ? AND status = 'waitlisted' " +
+                                   "ORDER BY waitseq FETCH FIRST ? ROWS ONLY";
+    static final String LENGTH_SQL =
+            "SELECT COUNT(*) FROM app.schedule WHERE semester = ? AND coursecode = ? AND status = 'waitlisted'";
+
+    private Waitlist() {
+    }
+
+    /**
+     * @return The number for a student joining the end of a class's waitlist: one more
+     *         than the last waitlisted student's, or 1 if nobody is waitlisted. The
+     *         caller must hold the class row lock until the row is inserted and committed.
+     */
+    static long nextNumber(Connection conn, String semester, String courseCode) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(LAST_NUMBER_SQL)) {
+            pstmt.setString(1, semester);
+            pstmt.setString(2, courseCode);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return (rs.next() ? rs.getLong(1) : 0) + 1; // MAX of no rows is NULL, read as 0
+            }
+        }
+    }
+
+    /**
+     * Fills every free seat of a class from the head of its waitlist: one query reads
+     * as many students as there are free seats, one batch promotes them and one
+     * update adds them to the enrollment counter. The caller must hold the class row lock.
+     * @return IDs of the promoted students, in waitlist order
+     */
+    static List<String> promote(Connection conn, String semester, String courseCode) throws SQLException {
+        String sqlFree = "SELECT seats - enrolled FROM app.classes WHERE semester = ? AND coursecode = ?";
+        String sqlPromote = "UPDATE app.schedule SET status = 'scheduled', waitseq = NULL " +
+                            "WHERE semester = ? AND coursecode = ? AND studentid = ? AND status = 'waitlisted'";
+        String sqlEnroll = "UPDATE app.classes SET enrolled = enrolled + ? WHERE semester = ? AND coursecode = ?";
+        List<String> promoted = new ArrayList<>();
+
+        int free = 0;
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlFree)) {
+            pstmt.setString(1, semester);
+            pstmt.setString(2, courseCode);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                if (rs.next()) {
+                    free = rs.getInt(1);
+                }
+            }
+        }
+        if (free <= 0) {
+            return promoted;
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement(HEAD_SQL)) {
+            pstmt.setString(1, semester);
+            pstmt.setString(2, courseCode);
+            pstmt.setInt(3, free);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                while (rs.next()) {
+                    promoted.add(rs.getString("studentid"));
+                }
+            }
+        }
+        if (promoted.isEmpty()) {
+            return promoted;
+        }
+
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlPromote)) {
+            for (String studentId : promoted) {
+                pstmt.setString(1, semester);
+                pstmt.setString(2, courseCode);
+                pstmt.setString(3, studentId);
+                pstmt.addBatch();
+            }
+            pstmt.executeBatch();
+        }
+        try (PreparedStatement pstmt = conn.prepareStatement(sqlEnroll)) {
+            pstmt.setInt(1, promoted.size());
+            pstmt.setString(2, semester);
+            pstmt.setString(3, courseCode);
+            pstmt.executeUpdate();
+        }
+        return promoted;
+    }
+
+    /**
+     * @return The student's 1-based place in the class's waitlist, or 0 if they are not waitlisted.
+     */
+    static int position(Connection conn, String semester, String studentId, String courseCode) throws SQLException {
+        String sql = "SELECT COUNT(*) FROM app.schedule me, app.schedule w " +
+                     "WHERE me.semester = ? AND me.studentid = ? AND me.coursecode = ? AND me.status = 'waitlisted' " +
+                     "AND w.semester = me.semester AND w.coursecode = me.coursecode " +
+                     "AND w.status = 'waitlisted' AND w.waitseq <= me.waitseq";
+        try (PreparedStatement pstmt = conn.prepareStatement(sql)) {
+            pstmt.setString(1, semester);
+            pstmt.setString(2, studentId);
+            pstmt.setString(3, courseCode);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+
+    /** @return The number of students waitlisted for a class. */
+    static int length(Connection conn, String semester, String courseCode) throws SQLException {
+        try (PreparedStatement pstmt = conn.prepareStatement(LENGTH_SQL)) {
+            pstmt.setString(1, semester);
+            pstmt.setString(2, courseCode);
+            try (ResultSet rs = pstmt.executeQuery()) {
+                return rs.next() ? rs.getInt(1) : 0;
+            }
+        }
+    }
+}